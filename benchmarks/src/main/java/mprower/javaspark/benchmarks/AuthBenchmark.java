@@ -0,0 +1,46 @@
+package mprower.javaspark.benchmarks;
+
+import mprower.javaspark.util.Auth;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Emisión y verificación de JWT. verifyTokenAndGetId tiene una caché de tokens ya verificados:
+ * {@link #verificarCacheado} mide el caso común (el mismo token en cada petición) y
+ * {@link #generarYVerificar} el primer uso de un token (firma HMAC y verificación completa);
+ * restándole {@link #generar} queda el costo de la verificación sin caché.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class AuthBenchmark {
+
+    private String token;
+    private int siguienteId;
+
+    @Setup
+    public void preparar() {
+        token = Auth.generateToken(1, "cliente1");
+        Auth.verifyTokenAndGetId(token);
+    }
+
+    @Benchmark
+    public String generar() {
+        return Auth.generateToken(7, "cliente7");
+    }
+
+    @Benchmark
+    public int verificarCacheado() {
+        return Auth.verifyTokenAndGetId(token);
+    }
+
+    @Benchmark
+    public int generarYVerificar() {
+        // Un ID distinto en cada llamada: el token nunca está en la caché
+        return Auth.verifyTokenAndGetId(Auth.generateToken(++siguienteId, "cliente"));
+    }
+}
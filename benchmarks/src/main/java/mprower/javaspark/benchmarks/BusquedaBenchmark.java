@@ -0,0 +1,39 @@
+package mprower.javaspark.benchmarks;
+
+import mprower.javaspark.search.IndiceBusqueda;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Búsqueda del catálogo (/catalog?q=...) sobre el índice invertido, sin la capa que lo
+ * sincroniza con la base de datos: una palabra exacta, varias palabras, un prefijo y una
+ * palabra con errores, que solo encuentra coincidencias parciales por n-gramas.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class BusquedaBenchmark {
+
+    @Param({"100", "10000"})
+    public int productos;
+
+    @Param({"gorra", "sudadera pumas roja", "selec", "camizeta amerika"})
+    public String consulta;
+
+    private IndiceBusqueda indice;
+
+    @Setup
+    public void preparar() {
+        indice = IndiceBusqueda.VACIO.actualizar(Datos.productos(productos), 1);
+    }
+
+    @Benchmark
+    public List<IndiceBusqueda.Coincidencia> buscar() {
+        return indice.buscar(consulta, 100); // search.maxResults por omisión
+    }
+}
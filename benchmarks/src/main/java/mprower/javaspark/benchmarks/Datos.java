@@ -0,0 +1,41 @@
+package mprower.javaspark.benchmarks;
+
+import mprower.javaspark.model.Producto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Catálogo sintético para los benchmarks. La semilla es fija: los mismos parámetros generan
+ * siempre los mismos productos, así que los resultados se pueden comparar entre commits.
+ */
+public final class Datos {
+
+    private static final String[] TIPOS = {"Gorra", "Playera", "Sudadera", "Taza", "Llavero", "Póster", "Figura", "Termo"};
+    private static final String[] TEMAS = {"Pumas", "América", "Chivas", "Tigres", "Selección", "Retro", "Edición especial", "Mundial"};
+    private static final String[] COLORES = {"roja", "azul", "negra", "blanca", "dorada", "verde"};
+
+    private Datos() {
+    }
+
+    public static List<Producto> productos(int cantidad) {
+        Random random = new Random(42);
+        List<Producto> productos = new ArrayList<>(cantidad);
+        for (int i = 1; i <= cantidad; i++) {
+            String tipo = TIPOS[random.nextInt(TIPOS.length)];
+            String tema = TEMAS[random.nextInt(TEMAS.length)];
+            String color = COLORES[random.nextInt(COLORES.length)];
+            Producto p = new Producto();
+            p.id = i;
+            p.nombre = tipo + " " + tema + " " + color;
+            p.precio = 99 + random.nextInt(90_000) / 100.0;
+            p.foto = tipo.toLowerCase() + i + ".jpg";
+            p.cantidad = random.nextInt(200);
+            p.descripcion = tipo + " oficial de " + tema + ", color " + color
+                    + ". Artículo de colección con certificado, edición " + (2000 + random.nextInt(25)) + ".";
+            productos.add(p);
+        }
+        return productos;
+    }
+}
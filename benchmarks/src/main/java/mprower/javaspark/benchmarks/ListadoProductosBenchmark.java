@@ -0,0 +1,69 @@
+package mprower.javaspark.benchmarks;
+
+import mprower.javaspark.config.Database;
+import mprower.javaspark.model.Producto;
+import mprower.javaspark.repository.ProductoRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code ProductoRepository.getAllProductos} contra una base H2 en memoria (en el mismo proceso):
+ * sin red, casi todo el tiempo es el recorrido del ResultSet y el mapeo de filas a Producto, por
+ * la API pública del repositorio.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g",
+        "-Ddb.driver=org.h2.Driver", "-Ddb.user=sa", "-Ddb.password=", "-Ddb.pool.jmx=false",
+        "-Ddb.url=jdbc:h2:mem:benchmarks;MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE"})
+@State(Scope.Thread)
+public class ListadoProductosBenchmark {
+
+    @Param({"100", "10000"})
+    public int filas;
+
+    private ProductoRepository repository;
+
+    @Setup
+    public void preparar() throws SQLException {
+        repository = new ProductoRepository();
+        try (Connection conn = Database.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("drop table if exists producto");
+            stmt.execute("drop table if exists descripcion");
+            stmt.execute("create table descripcion (id int primary key, descripcion varchar(1000))");
+            stmt.execute("create table producto (id int primary key, nombre varchar(255), prec decimal(10,2),"
+                    + " foto varchar(255), cantidad int, id_descr int)");
+            try (PreparedStatement descripcion = conn.prepareStatement("insert into descripcion values (?, ?)");
+                 PreparedStatement producto = conn.prepareStatement("insert into producto values (?, ?, ?, ?, ?, ?)")) {
+                for (Producto p : Datos.productos(filas)) {
+                    descripcion.setInt(1, p.id);
+                    descripcion.setString(2, p.descripcion);
+                    descripcion.addBatch();
+                    producto.setInt(1, p.id);
+                    producto.setString(2, p.nombre);
+                    producto.setDouble(3, p.precio);
+                    producto.setString(4, p.foto);
+                    producto.setInt(5, p.cantidad);
+                    producto.setInt(6, p.id);
+                    producto.addBatch();
+                }
+                descripcion.executeBatch();
+                producto.executeBatch();
+            }
+        }
+    }
+
+    @Benchmark
+    public void listar(Blackhole bh) throws SQLException {
+        bh.consume(repository.getAllProductos());
+    }
+}
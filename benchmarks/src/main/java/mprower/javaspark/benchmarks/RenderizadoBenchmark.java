@@ -0,0 +1,49 @@
+package mprower.javaspark.benchmarks;
+
+import mprower.javaspark.model.Producto;
+import mprower.javaspark.view.RenderCache;
+import mprower.javaspark.view.VistaProducto;
+import org.openjdk.jmh.annotations.*;
+import spark.ModelAndView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renderizado de catalog.mustache con el motor compartido de RenderCache, sin su caché de
+ * páginas: es lo que cuesta una página de catálogo nueva (búsqueda distinta o catálogo recargado).
+ * Sin RecursosEstaticos/Miniaturas iniciados, las imágenes salen sin huella ni srcset.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class RenderizadoBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int productos;
+
+    private RenderCache render;
+    private Map<String, Object> modelo;
+
+    @Setup
+    public void preparar() {
+        render = RenderCache.getInstance();
+        List<VistaProducto> items = new ArrayList<>(productos);
+        for (Producto p : Datos.productos(productos)) {
+            items.add(new VistaProducto(p, p.id % 4 == 0)); // Una cuarta parte en oferta
+        }
+        modelo = new HashMap<>();
+        modelo.put("items", items);
+    }
+
+    @Benchmark
+    public byte[] catalogo() {
+        return render.renderizar(new ModelAndView(modelo, "catalog.mustache"));
+    }
+}
@@ -0,0 +1,66 @@
+package mprower.javaspark.benchmarks;
+
+import com.google.gson.Gson;
+import mprower.javaspark.model.CarritoItem;
+import mprower.javaspark.model.Producto;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialización con Gson de lo que devuelve la API: el catálogo (GET /api/productos)
+ * y las líneas del carrito (GET /api/carrito).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class SerializacionBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int productos;
+
+    // Los controladores usan una instancia de Gson por controlador, como aquí
+    private final Gson gson = new Gson();
+    private Collection<Producto> catalogo;
+    private CarritoItem item;
+    private List<CarritoItem> carrito;
+
+    @Setup
+    public void preparar() {
+        catalogo = Datos.productos(productos);
+        carrito = new ArrayList<>();
+        int id = 1;
+        for (Producto p : catalogo) {
+            CarritoItem linea = new CarritoItem();
+            linea.id = id++;
+            linea.id_cli = 1;
+            linea.id_pro = p.id;
+            linea.cantidad = 1 + p.cantidad % 5;
+            linea.producto = p;
+            carrito.add(linea);
+        }
+        item = carrito.get(0);
+    }
+
+    @Benchmark
+    public String catalogo() {
+        return gson.toJson(catalogo);
+    }
+
+    @Benchmark
+    public String carrito() {
+        return gson.toJson(carrito);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String lineaCarrito() {
+        return gson.toJson(item);
+    }
+}
@@ -0,0 +1,223 @@
+package mprower.javaspark.loadtest;
+
+import mprower.javaspark.config.AppConfig;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Base de datos H2 en memoria (modo MySQL) que reemplaza a MySQL durante la prueba de carga.
+ * <p>
+ * El esquema y los datos de ejemplo salen de ecommerce_DB.txt, ejecutado en orden. Lo que solo
+ * tiene sentido en un servidor MySQL se omite: create database/use/desc, el trigger (que el
+ * propio script borra más abajo, porque el stock lo lleva el inventario en memoria) y las
+ * consultas que consolidan carritos duplicados (multi-tabla; en una base nueva no hay nada que
+ * consolidar). Después se agregan productos, ofertas y clientes sintéticos con una semilla fija.
+ */
+final class BaseEmbebida {
+
+    static final String URL = "jdbc:h2:mem:ecommerce;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    static final String PASSWORD_CLIENTES = "cargas123";
+
+    private static final String[] TIPOS = {"Gorra", "Playera", "Sudadera", "Taza", "Llavero", "Póster", "Figura", "Termo"};
+    private static final String[] ARTISTAS = {"Peso Pluma", "Rosalía", "Bad Bunny", "Coldplay", "Snoop Dogg", "Cardi B", "Shakira", "Karol G"};
+    private static final String[] FOTOS = {"gorraPP.jpg", "cascoRosalia.jpg", "chamarraBB.png", "guitarraFD.jpg",
+            "jerseySD.png", "playeraCB.png", "guitarraColdplay.png"};
+
+    private BaseEmbebida() {
+    }
+
+    /**
+     * Crea la base, ejecuta el script y agrega los datos sintéticos.
+     * @param script ecommerce_DB.txt, o null para usar la copia incluida en el jar.
+     * @return Cuántos productos y clientes sintéticos quedaron en la base.
+     */
+    static Datos crear(Path script, int productos, int clientes) throws SQLException, IOException {
+        try (Connection conn = DriverManager.getConnection(URL, "sa", "")) {
+            try (Statement stmt = conn.createStatement()) {
+                for (String sql : sentencias(leer(script))) {
+                    if (!omitir(sql)) {
+                        stmt.execute(adaptar(sql));
+                    }
+                }
+            }
+            return escalar(conn, productos, clientes);
+        }
+    }
+
+    private static String leer(Path script) throws IOException {
+        if (script != null) {
+            return Files.readString(script, StandardCharsets.UTF_8);
+        }
+        try (InputStream in = BaseEmbebida.class.getResourceAsStream("/ecommerce_DB.txt")) {
+            if (in == null) {
+                throw new IOException("No se encontró ecommerce_DB.txt en el classpath; usa --script");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Separa el script en sentencias: respeta las comillas, quita los comentarios "--" y
+     * trata los bloques "delimiter //" como una sola sentencia.
+     */
+    static List<String> sentencias(String script) {
+        List<String> resultado = new ArrayList<>();
+        StringBuilder actual = new StringBuilder();
+        String delimitador = ";";
+        for (String linea : script.split("\r?\n")) {
+            String limpia = quitarComentario(linea);
+            if (limpia.trim().toLowerCase(Locale.ROOT).startsWith("delimiter ")) {
+                delimitador = limpia.trim().substring("delimiter ".length()).trim();
+                continue;
+            }
+            actual.append(limpia).append('\n');
+            int fin;
+            while ((fin = finDeSentencia(actual, delimitador)) >= 0) {
+                String sql = actual.substring(0, fin).trim();
+                if (!sql.isEmpty()) {
+                    resultado.add(sql);
+                }
+                actual.delete(0, fin + delimitador.length());
+            }
+        }
+        if (!actual.toString().trim().isEmpty()) {
+            resultado.add(actual.toString().trim());
+        }
+        return resultado;
+    }
+
+    private static String quitarComentario(String linea) {
+        boolean enCadena = false;
+        for (int i = 0; i < linea.length(); i++) {
+            char c = linea.charAt(i);
+            if (c == '\'') {
+                enCadena = !enCadena;
+            } else if (!enCadena && linea.startsWith("--", i)) {
+                return linea.substring(0, i);
+            }
+        }
+        return linea;
+    }
+
+    private static int finDeSentencia(StringBuilder sb, String delimitador) {
+        boolean enCadena = false;
+        for (int i = 0; i + delimitador.length() <= sb.length(); i++) {
+            char c = sb.charAt(i);
+            if (c == '\'') {
+                enCadena = !enCadena;
+            } else if (!enCadena && delimitador.contentEquals(sb.subSequence(i, i + delimitador.length()))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean omitir(String sql) {
+        String s = sql.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        return s.startsWith("create database") || s.startsWith("use ") || s.startsWith("desc ")
+                || s.startsWith("create trigger")
+                || ((s.startsWith("update ") || s.startsWith("delete ")) && s.contains(" join "));
+    }
+
+    /** Sintaxis de MySQL que H2 no acepta tal cual. */
+    static String adaptar(String sql) {
+        return sql
+                // "constraint primary key(...)" sin nombre
+                .replaceAll("(?i)constraint\\s+(primary|foreign)\\s+key", "$1 key")
+                // float(M,D) de MySQL
+                .replaceAll("(?i)float\\s*\\(\\s*\\d+\\s*,\\s*\\d+\\s*\\)", "float");
+    }
+
+    /**
+     * Agrega productos (con stock alto, para que la prueba mida la aplicación y no el agotamiento
+     * del inventario), una oferta de cada diez y clientes "cargaN" con la misma contraseña.
+     */
+    private static Datos escalar(Connection conn, int productos, int clientes) throws SQLException {
+        Random random = new Random(42);
+        conn.setAutoCommit(false);
+        int existentes;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM producto")) {
+            rs.next();
+            existentes = rs.getInt(1);
+        }
+        try (PreparedStatement descr = conn.prepareStatement(
+                     "INSERT INTO descripcion (descripcion) VALUES (?)", Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement prod = conn.prepareStatement(
+                     "INSERT INTO producto (nombre, prec, foto, cantidad, id_descr) VALUES (?, ?, ?, ?, ?)");
+             PreparedStatement oferta = conn.prepareStatement("INSERT INTO oferta (id_pro) VALUES (?)")) {
+            for (int i = existentes + 1; i <= productos; i++) {
+                String tipo = TIPOS[random.nextInt(TIPOS.length)];
+                String artista = ARTISTAS[random.nextInt(ARTISTAS.length)];
+                descr.setString(1, tipo + " autografiada por " + artista + ", pieza de colección número " + i + ".");
+                descr.executeUpdate();
+                int idDescr;
+                try (ResultSet keys = descr.getGeneratedKeys()) {
+                    keys.next();
+                    idDescr = keys.getInt(1);
+                }
+                prod.setString(1, tipo + " de " + artista + " #" + i);
+                prod.setDouble(2, 99 + random.nextInt(90_000) / 100.0);
+                prod.setString(3, FOTOS[random.nextInt(FOTOS.length)]);
+                prod.setInt(4, 1_000_000);
+                prod.setInt(5, idDescr);
+                prod.addBatch();
+                if (i % 10 == 0) {
+                    oferta.setInt(1, i);
+                    oferta.addBatch();
+                }
+            }
+            prod.executeBatch();
+            oferta.executeBatch();
+        }
+        int primerCliente;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) + 1 FROM cliente")) {
+            rs.next();
+            primerCliente = rs.getInt(1); // Base recién creada: los IDs nuevos son consecutivos
+        }
+        // Un solo hash para todos: el costo de BCrypt se paga en el login, no al sembrar
+        String hash = BCrypt.hashpw(PASSWORD_CLIENTES, BCrypt.gensalt(AppConfig.getInt("security.bcrypt.cost", 10)));
+        try (PreparedStatement cli = conn.prepareStatement(
+                "INSERT INTO cliente (nombre, password, numero) VALUES (?, ?, ?)")) {
+            for (int i = 1; i <= clientes; i++) {
+                cli.setString(1, "carga" + i);
+                cli.setString(2, hash);
+                cli.setString(3, String.format("55%08d", i));
+                cli.addBatch();
+            }
+            cli.executeBatch();
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+        return new Datos(Math.max(existentes, productos), primerCliente, clientes);
+    }
+
+    /** Lo que los escenarios necesitan saber de la base sembrada. */
+    static final class Datos {
+        final int productos;
+        final int primerCliente;
+        final int clientes;
+
+        Datos(int productos, int primerCliente, int clientes) {
+            this.productos = productos;
+            this.primerCliente = primerCliente;
+            this.clientes = clientes;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package mprower.javaspark.loadtest;
+
+/**
+ * Flujos de la colección de Postman (Java-Spark.postman_collection.json) que repite cada
+ * usuario virtual. Cada paso se registra en el reporte con la plantilla de su ruta.
+ */
+enum Escenario {
+
+    /** Ver el catálogo, las ofertas, una página de la API, un producto y una búsqueda. */
+    NAVEGAR {
+        @Override
+        void ejecutar(Sesion s) throws InterruptedException {
+            s.get("GET /catalog", "/catalog");
+            s.get("GET /api/productos", "/api/productos");
+            s.get("GET /api/productos?limit", "/api/productos?limit=20&sort=-precio");
+            s.get("GET /api/productos/:id", "/api/productos/" + s.productoAlAzar());
+            s.get("GET /api/buscar", "/api/buscar?q=" + s.terminoAlAzar());
+            s.get("GET /offers", "/offers");
+        }
+    },
+
+    /** Agregar al carrito, verlo, cambiar la cantidad y quitar la línea. */
+    CARRITO {
+        @Override
+        void ejecutar(Sesion s) throws InterruptedException {
+            Integer linea = s.agregarAlCarrito(s.clientePropio(), s.productoAlAzar(), 1 + s.entero(3));
+            s.get("GET /api/carrito", "/api/carrito");
+            if (linea != null) {
+                s.enviar("PUT /api/carrito/:id", "PUT", "/api/carrito/" + linea, "{\"cantidad\": " + (1 + s.entero(5)) + "}");
+                s.enviar("DELETE /api/carrito/:id", "DELETE", "/api/carrito/" + linea, null);
+            }
+        }
+    },
+
+    /** Agregar un producto y comprar. El formulario de compra siempre usa el cliente 1. */
+    COMPRA {
+        @Override
+        void ejecutar(Sesion s) throws InterruptedException {
+            s.agregarAlCarrito(1, s.productoAlAzar(), 1);
+            s.comprar();
+        }
+    },
+
+    /** Registrar un cliente nuevo e iniciar sesión (BCrypt en ambos pasos). */
+    SESION {
+        @Override
+        void ejecutar(Sesion s) throws InterruptedException {
+            s.registrarEIniciarSesion();
+        }
+    };
+
+    abstract void ejecutar(Sesion s) throws InterruptedException;
+}
@@ -0,0 +1,170 @@
+package mprower.javaspark.loadtest;
+
+import mprower.javaspark.App;
+import spark.Spark;
+
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prueba de carga de punta a punta: levanta {@link App} contra una base H2 en memoria sembrada
+ * con ecommerce_DB.txt y la recorre con usuarios virtuales que repiten los flujos de la
+ * colección de Postman (navegar el catálogo, usar el carrito, comprar, registrarse e iniciar
+ * sesión). Al terminar imprime peticiones, req/s, errores y percentiles de latencia por ruta.
+ * <p>
+ * Parámetros (todos opcionales):
+ * <pre>
+ *   --usuarios=50          usuarios virtuales concurrentes
+ *   --duracion=60          segundos de medición
+ *   --calentamiento=15     segundos previos que no se cuentan (JIT, cachés, pool)
+ *   --pausa=0              milisegundos de espera entre escenarios de un usuario
+ *   --productos=1000       tamaño del catálogo tras agregar productos sintéticos
+ *   --clientes=200         clientes sintéticos (uno por usuario, repartidos en círculo)
+ *   --mezcla=navegar:70,carrito:20,compra:5,sesion:5
+ *   --script=ecommerce_DB.txt  otro script en lugar del incluido en el jar
+ * </pre>
+ * La aplicación corre en el mismo proceso, en el puerto 8080; conviene que no haya otra
+ * instancia levantada.
+ * <p>
+ * Los usuarios son de lazo cerrado: cada uno manda la siguiente petición cuando llega la
+ * respuesta anterior. Si el servidor se satura, los usuarios envían menos y no se mide lo que
+ * una petición habría esperado antes de salir (omisión coordinada), así que con --pausa=0 los
+ * percentiles subestiman la latencia bajo saturación. Conviene leerlos junto con req/s y
+ * comparar corridas con el mismo req/s, no con el mismo número de usuarios.
+ */
+public final class PruebaCarga {
+
+    private static final String BASE = "http://localhost:8080";
+
+    private PruebaCarga() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opciones = opciones(args);
+        int usuarios = entero(opciones, "usuarios", 50);
+        int duracion = entero(opciones, "duracion", 60);
+        int calentamiento = entero(opciones, "calentamiento", 15);
+        int pausa = entero(opciones, "pausa", 0);
+        int productos = entero(opciones, "productos", 1000);
+        int clientes = Math.max(1, entero(opciones, "clientes", 200));
+        Escenario[] mezcla = mezcla(opciones.getOrDefault("mezcla", "navegar:70,carrito:20,compra:5,sesion:5"));
+        Path script = opciones.containsKey("script") ? Path.of(opciones.get("script")) : null;
+
+        // Antes de tocar cualquier clase de la aplicación: AppConfig lee las propiedades una sola vez
+        System.setProperty("db.url", BaseEmbebida.URL);
+        System.setProperty("db.user", "sa");
+        System.setProperty("db.password", "");
+        System.setProperty("db.driver", "org.h2.Driver");
+
+        BaseEmbebida.Datos datos = BaseEmbebida.crear(script, productos, clientes);
+        System.out.println("Base embebida: " + datos.productos + " productos, " + datos.clientes + " clientes sintéticos.");
+
+        App.main(new String[0]);
+        Spark.awaitInitialization();
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1) // Como un navegador contra Jetty sin TLS
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        Reporte reporte = new Reporte();
+        AtomicLong fallos = new AtomicLong();
+        long fin = System.nanoTime() + Duration.ofSeconds(calentamiento + duracion).toNanos();
+
+        List<Thread> hilos = new ArrayList<>(usuarios);
+        for (int u = 0; u < usuarios; u++) {
+            Sesion sesion = new Sesion(http, BASE, reporte, datos, u);
+            Random eleccion = new Random(u);
+            Thread hilo = new Thread(() -> {
+                while (System.nanoTime() < fin) {
+                    try {
+                        mezcla[eleccion.nextInt(mezcla.length)].ejecutar(sesion);
+                        if (pausa > 0) {
+                            Thread.sleep(pausa);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (RuntimeException e) {
+                        // Una respuesta inesperada no detiene al usuario; se cuenta y sigue
+                        if (fallos.getAndIncrement() == 0) {
+                            System.err.println("Fallo en un escenario: " + e);
+                        }
+                    }
+                }
+            }, "usuario-" + u);
+            hilo.setDaemon(true);
+            hilos.add(hilo);
+        }
+        System.out.printf("%d usuarios, %d s de calentamiento y %d s de medición...%n", usuarios, calentamiento, duracion);
+        hilos.forEach(Thread::start);
+
+        Thread.sleep(calentamiento * 1000L);
+        reporte.iniciarMedicion();
+        Thread.sleep(duracion * 1000L);
+        reporte.terminarMedicion();
+        for (Thread hilo : hilos) {
+            hilo.join(Duration.ofSeconds(30).toMillis());
+        }
+
+        reporte.imprimir(System.out);
+        if (fallos.get() > 0) {
+            System.out.println("Escenarios interrumpidos por una excepción: " + fallos.get());
+        }
+        Spark.stop();
+        Spark.awaitStop();
+        System.exit(0);
+    }
+
+    /** Lee argumentos "--clave=valor". */
+    private static Map<String, String> opciones(String[] args) {
+        Map<String, String> opciones = new HashMap<>();
+        for (String arg : args) {
+            int igual = arg.indexOf('=');
+            if (!arg.startsWith("--") || igual < 0) {
+                throw new IllegalArgumentException("Argumento no válido: " + arg + " (se espera --clave=valor)");
+            }
+            opciones.put(arg.substring(2, igual), arg.substring(igual + 1));
+        }
+        return opciones;
+    }
+
+    private static int entero(Map<String, String> opciones, String clave, int porDefecto) {
+        String valor = opciones.get(clave);
+        return valor == null ? porDefecto : Integer.parseInt(valor.trim());
+    }
+
+    /**
+     * Convierte "navegar:70,carrito:20,..." en una tabla donde cada escenario aparece tantas
+     * veces como su peso; elegir una entrada al azar respeta la proporción.
+     */
+    static Escenario[] mezcla(String texto) {
+        Map<Escenario, Integer> pesos = new LinkedHashMap<>();
+        for (String parte : texto.split(",")) {
+            String[] kv = parte.trim().split(":");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Mezcla no válida: " + parte + " (se espera escenario:peso)");
+            }
+            pesos.put(Escenario.valueOf(kv[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(kv[1].trim()));
+        }
+        List<Escenario> tabla = new ArrayList<>();
+        pesos.forEach((escenario, peso) -> {
+            for (int i = 0; i < peso; i++) {
+                tabla.add(escenario);
+            }
+        });
+        if (tabla.isEmpty()) {
+            throw new IllegalArgumentException("La mezcla no tiene ningún escenario con peso mayor a cero");
+        }
+        return tabla.toArray(new Escenario[0]);
+    }
+}
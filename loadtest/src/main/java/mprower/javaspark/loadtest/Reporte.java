@@ -0,0 +1,72 @@
+package mprower.javaspark.loadtest;
+
+import mprower.javaspark.metrics.Histograma;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencia y errores por ruta, con el mismo histograma que exporta /metrics.
+ * Lo que se registra durante el calentamiento se descarta.
+ */
+final class Reporte {
+
+    private static final double[] CUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, Ruta> rutas = new ConcurrentHashMap<>();
+    private volatile boolean midiendo;
+    private volatile long inicioNanos;
+    private volatile long finNanos;
+
+    void iniciarMedicion() {
+        rutas.clear();
+        inicioNanos = System.nanoTime();
+        midiendo = true;
+    }
+
+    void terminarMedicion() {
+        midiendo = false;
+        finNanos = System.nanoTime();
+    }
+
+    /**
+     * @param error true si la respuesta no es la esperada (4xx/5xx, fallo de red o compra rechazada).
+     */
+    void registrar(String ruta, boolean error, long nanos) {
+        if (!midiendo) {
+            return;
+        }
+        Ruta r = rutas.computeIfAbsent(ruta, k -> new Ruta());
+        r.latencia.registrar(nanos);
+        if (error) {
+            r.errores.increment();
+        }
+    }
+
+    void imprimir(PrintStream salida) {
+        double segundos = (finNanos - inicioNanos) / 1e9;
+        salida.printf("%nDuración medida: %.1f s%n%n", segundos);
+        salida.printf("%-34s %10s %9s %8s %9s %9s %9s %9s%n",
+                "Ruta", "Peticiones", "req/s", "Errores", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms");
+        long total = 0;
+        long errores = 0;
+        for (Map.Entry<String, Ruta> e : new TreeMap<>(rutas).entrySet()) {
+            Ruta r = e.getValue();
+            long n = r.latencia.getCuenta();
+            double[] p = r.latencia.percentiles(CUANTILES);
+            salida.printf("%-34s %10d %9.1f %8d %9.2f %9.2f %9.2f %9.2f%n", e.getKey(), n, n / segundos,
+                    r.errores.sum(), p[0] * 1000, p[1] * 1000, p[2] * 1000, p[3] * 1000);
+            total += n;
+            errores += r.errores.sum();
+        }
+        salida.printf("%-34s %10d %9.1f %8d%n", "Total", total, total / segundos, errores);
+    }
+
+    private static final class Ruta {
+        final Histograma latencia = new Histograma();
+        final LongAdder errores = new LongAdder();
+    }
+}
@@ -0,0 +1,159 @@
+package mprower.javaspark.loadtest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import mprower.javaspark.util.Auth;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Un usuario virtual: hace las peticiones de los escenarios y registra la latencia y el
+ * resultado de cada una. Cada usuario tiene su propio Random con semilla fija, así que dos
+ * corridas con los mismos parámetros piden las mismas URLs.
+ */
+final class Sesion {
+
+    private static final String[] TERMINOS = {"gorra", "playera", "sudadera", "taza", "bad bunny", "coldplay",
+            "rosalía", "peso pluma", "autografiada", "colección"};
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final Gson GSON = new Gson();
+
+    private final HttpClient http;
+    private final String base;
+    private final Reporte reporte;
+    private final BaseEmbebida.Datos datos;
+    private final int usuario;
+    private final Random random;
+    private final Map<Integer, String> tokens = new HashMap<>();
+    private int registros;
+
+    Sesion(HttpClient http, String base, Reporte reporte, BaseEmbebida.Datos datos, int usuario) {
+        this.http = http;
+        this.base = base;
+        this.reporte = reporte;
+        this.datos = datos;
+        this.usuario = usuario;
+        this.random = new Random(1_000L + usuario);
+    }
+
+    int entero(int limite) {
+        return random.nextInt(limite);
+    }
+
+    int productoAlAzar() {
+        return 1 + random.nextInt(datos.productos);
+    }
+
+    String terminoAlAzar() {
+        return URLEncoder.encode(TERMINOS[random.nextInt(TERMINOS.length)], StandardCharsets.UTF_8);
+    }
+
+    /** Cliente sintético asignado a este usuario, para que los carritos no se pisen entre sí. */
+    int clientePropio() {
+        return datos.primerCliente + usuario % datos.clientes;
+    }
+
+    /** GET como lo haría un navegador (acepta gzip); el cuerpo se descarta. */
+    void get(String ruta, String path) throws InterruptedException {
+        HttpRequest peticion = peticion(path).header("Accept-Encoding", "gzip").GET().build();
+        medir(ruta, peticion, HttpResponse.BodyHandlers.discarding());
+    }
+
+    /** Petición de la API del carrito con el token del cliente propio. */
+    void enviar(String ruta, String metodo, String path, String json) throws InterruptedException {
+        HttpRequest.BodyPublisher cuerpo = json == null
+                ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(json);
+        HttpRequest peticion = peticion(path)
+                .header("Authorization", "Bearer " + token(clientePropio()))
+                .header("Content-Type", "application/json")
+                .method(metodo, cuerpo)
+                .build();
+        medir(ruta, peticion);
+    }
+
+    /**
+     * POST /api/carrito a nombre del cliente indicado.
+     * @return El ID de la línea del carrito, o null si la petición falló.
+     */
+    Integer agregarAlCarrito(int cliente, int producto, int cantidad) throws InterruptedException {
+        HttpRequest peticion = peticion("/api/carrito")
+                .header("Authorization", "Bearer " + token(cliente))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"idProducto\": " + producto + ", \"cantidad\": " + cantidad + "}"))
+                .build();
+        HttpResponse<String> respuesta = medir("POST /api/carrito", peticion);
+        if (respuesta == null || respuesta.statusCode() != 201) {
+            return null;
+        }
+        JsonObject linea = GSON.fromJson(respuesta.body(), JsonObject.class);
+        return linea.has("id") ? linea.get("id").getAsInt() : null;
+    }
+
+    /** POST /checkout sin seguir la redirección; la compra falló si redirige con "error=". */
+    void comprar() throws InterruptedException {
+        HttpRequest peticion = peticion("/checkout").POST(HttpRequest.BodyPublishers.noBody()).build();
+        long inicio = System.nanoTime();
+        boolean error = true;
+        try {
+            HttpResponse<Void> respuesta = http.send(peticion, HttpResponse.BodyHandlers.discarding());
+            String destino = respuesta.headers().firstValue("Location").orElse("");
+            error = respuesta.statusCode() >= 400 || destino.contains("error=");
+        } catch (IOException e) {
+            // Cuenta como error
+        }
+        reporte.registrar("POST /checkout", error, System.nanoTime() - inicio);
+    }
+
+    /** Registra un cliente con nombre único e inicia sesión con él, como los formularios HTML. */
+    void registrarEIniciarSesion() throws InterruptedException {
+        String nombre = "vu" + usuario + "-" + (++registros) + "-" + Long.toString(System.nanoTime(), 36);
+        String password = "clave" + random.nextInt(1_000_000);
+        medir("POST /api/register", formulario("/api/register",
+                "nombre=" + nombre + "&password=" + password + "&numero=5500000000"));
+        medir("POST /api/login", formulario("/api/login", "nombre=" + nombre + "&password=" + password));
+    }
+
+    private HttpRequest formulario(String path, String cuerpo) {
+        return peticion(path)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(cuerpo))
+                .build();
+    }
+
+    private HttpRequest.Builder peticion(String path) {
+        return HttpRequest.newBuilder(URI.create(base + path)).timeout(TIMEOUT);
+    }
+
+    private String token(int cliente) {
+        return tokens.computeIfAbsent(cliente, id -> Auth.generateToken(id, "carga" + id));
+    }
+
+    /** Envía la petición y registra su latencia; un fallo de red cuenta como error. */
+    private HttpResponse<String> medir(String ruta, HttpRequest peticion) throws InterruptedException {
+        return medir(ruta, peticion, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private <T> HttpResponse<T> medir(String ruta, HttpRequest peticion, HttpResponse.BodyHandler<T> cuerpo)
+            throws InterruptedException {
+        long inicio = System.nanoTime();
+        try {
+            HttpResponse<T> respuesta = http.send(peticion, cuerpo);
+            reporte.registrar(ruta, respuesta.statusCode() >= 400, System.nanoTime() - inicio);
+            return respuesta;
+        } catch (IOException e) {
+            reporte.registrar(ruta, true, System.nanoTime() - inicio);
+            return null;
+        }
+    }
+}
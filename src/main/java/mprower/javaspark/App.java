@@ -1,14 +1,20 @@
 package mprower.javaspark;
 
-import mprower.javaspark.config.Database;
+import mprower.javaspark.assets.Miniaturas;
+import mprower.javaspark.assets.RecursosEstaticos;
+import mprower.javaspark.cache.CatalogoCache;
+import mprower.javaspark.cache.CatalogoSnapshot;
+import mprower.javaspark.cache.NombresClientes;
+import mprower.javaspark.config.AppConfig;
+import mprower.javaspark.config.VirtualThreadPool;
 import mprower.javaspark.controller.ClienteController;
+import mprower.javaspark.controller.MetricasController;
 import mprower.javaspark.controller.ProductoController;
+import mprower.javaspark.controller.RecursosController;
 import mprower.javaspark.controller.CarritoController;
+import mprower.javaspark.inventory.Inventario;
 
-import java.sql.Connection;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.List;
 import java.util.*;
 import static spark.Spark.*;
@@ -16,30 +22,63 @@ import static spark.Spark.*;
 import static spark.Spark.*;
 
 import mprower.javaspark.model.CarritoItem;
+import mprower.javaspark.model.CarritoResumen;
 import mprower.javaspark.model.Producto;
 import mprower.javaspark.repository.CarritoRepository;
-import mprower.javaspark.repository.ProductoRepository;
+import mprower.javaspark.search.BuscadorCatalogo;
+import mprower.javaspark.search.ResultadoBusqueda;
+import mprower.javaspark.search.Tokenizador;
+import mprower.javaspark.util.Compresion;
+import mprower.javaspark.view.RenderCache;
+import mprower.javaspark.view.VistaProducto;
+import mprower.javaspark.view.VistasCatalogo;
 import spark.ModelAndView;
 import spark.template.mustache.MustacheTemplateEngine;
 
 
 public class App {
+    private static final int LIMITE_BUSQUEDA = AppConfig.getInt("search.maxResults", 100);
+
     public static void main(String[] args) {
         port(8080);
 
-        staticFiles.location("/public");
+        // Modo opcional: atender cada petición en un hilo virtual (requiere Java 21)
+        if (AppConfig.getBoolean("server.virtualThreads", false)) {
+            VirtualThreadPool.instalar();
+        }
+
+        // Métricas de cada petición en /metrics; va primero para medir también los demás filtros
+        if (AppConfig.getBoolean("metrics.enabled", true)) {
+            new MetricasController();
+        }
+
+        // Archivos de /public con huella y caché en disco; si no se pueden preparar, los sirve Spark
+        RecursosEstaticos recursos = RecursosEstaticos.getInstance();
+        if (recursos.iniciar()) {
+            new RecursosController(recursos);
+        } else {
+            staticFiles.location("/public");
+        }
 
         // Habilitar CORS para la API
         // Habilitar CORS
         enableCORS();
 
+        // Cargar el catálogo en memoria y programar sus recargas
+        CatalogoCache.getInstance().iniciar();
+        BuscadorCatalogo.getInstance().iniciar();
+        NombresClientes.getInstance().iniciar();
+        Inventario.getInstance().iniciar();
+
         // Inicializar Controladores de la API
         new ClienteController();
         new ProductoController();
         new CarritoController();
 
         // --- Definir Rutas de Vistas HTML ---
-        MustacheTemplateEngine templateEngine = new MustacheTemplateEngine();
+        // Un solo motor para todas las vistas: cada plantilla se compila una vez
+        RenderCache renderCache = RenderCache.getInstance();
+        MustacheTemplateEngine templateEngine = renderCache.getEngine();
 
         // Ruta para la página de login
         get("/login", (req, res) -> {
@@ -56,97 +95,73 @@ public class App {
         }, templateEngine);
 
         // --- NUEVA RUTA PARA LA PÁGINA DE CATÁLOGO ---
+        // La navegación anónima es igual para todos: la página se sirve desde la caché de renderizado
         get("/catalog", (req, res) -> {
-            Map<String, Object> model = new HashMap<>();
-            List<Map<String, Object>> items = new ArrayList<>();
-
+            res.type("text/html; charset=utf-8");
             String query = req.queryParams("q");
+            // Dos búsquedas con los mismos términos producen la misma página
+            String terminos = query == null ? "" : String.join(" ", Tokenizador.tokens(query));
 
-            try (Connection conn = Database.getConnection();
-                 Statement stmt = conn.createStatement();
-                 ResultSet rs = stmt.executeQuery("SELECT id_pro FROM oferta")) {
-
-                Set<Integer> idsEnOferta = new HashSet<>();
-                while (rs.next()) {
-                    idsEnOferta.add(rs.getInt("id_pro"));
-                }
-
-                Collection<Producto> productos = new ProductoRepository().getAllProductos();
-
-                for (Producto p : productos) {
-                    if (query == null || p.getNombre().toLowerCase().contains(query.toLowerCase())) {
-                        Map<String, Object> item = new HashMap<>();
-                        item.put("id", p.getId());
-                        item.put("nombre", p.getNombre());
-                        item.put("descripcion", p.getDescripcion());
-                        item.put("foto", p.getFoto());
-
-                        if (idsEnOferta.contains(p.getId())) {
-                            item.put("precioOriginal", String.format("%.2f", p.getPrecio() * 1.25)); // Precio sin descuento
-                            item.put("prec", String.format("%.2f", p.getPrecio())); // Precio con descuento
-                            item.put("oferta", true);
-                        } else {
-                            item.put("prec", String.format("%.2f", p.getPrecio()));
-                            item.put("oferta", false);
+            try {
+                CatalogoSnapshot catalogo = CatalogoCache.getInstance().getSnapshot();
+                VistasCatalogo vistas = renderCache.vistas(catalogo);
+                String clave = catalogo.getVersionContenido() + "|catalog|" + terminos;
+
+                return Compresion.responder(req, res, renderCache.pagina(clave, () -> {
+                    List<VistaProducto> items = vistas.getTodos();
+
+                    // Con búsqueda, los productos salen del índice invertido ordenados por relevancia
+                    if (!terminos.isEmpty()) {
+                        items = new ArrayList<>();
+                        try {
+                            for (ResultadoBusqueda r : BuscadorCatalogo.getInstance().buscar(terminos, LIMITE_BUSQUEDA)) {
+                                VistaProducto vista = vistas.get(r.getProducto().getId());
+                                if (vista != null) {
+                                    items.add(vista);
+                                }
+                            }
+                        } catch (SQLException e) {
+                            throw new IllegalStateException(e);
                         }
-
-                        items.add(item);
                     }
-                }
 
-                model.put("items", items);
-                return new ModelAndView(model, "catalog.mustache");
+                    Map<String, Object> model = new HashMap<>();
+                    model.put("items", items);
+                    return new ModelAndView(model, "catalog.mustache");
+                }));
 
             } catch (Exception e) {
+                Map<String, Object> model = new HashMap<>();
                 model.put("items", new ArrayList<>());
                 model.put("error", "No se pudo cargar el catálogo: " + e.getMessage());
-                return new ModelAndView(model, "catalog.mustache");
+                return Compresion.responder(req, res, renderCache.renderizar(new ModelAndView(model, "catalog.mustache")));
             }
-        }, new MustacheTemplateEngine());
+        });
 
         get("/offers", (req, res) -> {
-            Map<String, Object> model = new HashMap<>();
-            List<Map<String, Object>> items = new ArrayList<>();
-
+            res.type("text/html; charset=utf-8");
             try {
-                // Obtener IDs de productos en oferta
-                Set<Integer> idsEnOferta = new HashSet<>();
-                try (Connection conn = Database.getConnection();
-                     Statement stmt = conn.createStatement();
-                     ResultSet rs = stmt.executeQuery("SELECT id_pro FROM oferta")) {
-                    while (rs.next()) {
-                        idsEnOferta.add(rs.getInt("id_pro"));
-                    }
-                }
-                // Obtener todos los productos
-                Collection<Producto> productos = new ProductoRepository().getAllProductos();
-
-                for (Producto p : productos) {
-                    if (idsEnOferta.contains(p.getId())) {
-                        Map<String, Object> item = new HashMap<>();
-                        item.put("id", p.getId());
-                        item.put("nombre", p.getNombre());
-                        item.put("descripcion", p.getDescripcion());
-                        item.put("precioOriginal", String.format("%.2f", p.getPrecio() * 1.25)); // 25% más
-                        item.put("prec", String.format("%.2f", p.getPrecio())); // Precio con descuento
-                        item.put("foto", p.getFoto());
-                        item.put("oferta", true); // ✅ Indicador visual
-                        items.add(item);
-                    }
-                }
-
-                model.put("items", items);
-                return new ModelAndView(model, "offers.mustache");
+                // Los productos en oferta ya vienen filtrados por el índice del catálogo
+                CatalogoSnapshot catalogo = CatalogoCache.getInstance().getSnapshot();
+                VistasCatalogo vistas = renderCache.vistas(catalogo);
+
+                return Compresion.responder(req, res, renderCache.pagina(catalogo.getVersionContenido() + "|offers", () -> {
+                    Map<String, Object> model = new HashMap<>();
+                    model.put("items", vistas.getOfertas());
+                    return new ModelAndView(model, "offers.mustache");
+                }));
             } catch (Exception e) {
+                Map<String, Object> model = new HashMap<>();
                 model.put("items", new ArrayList<>());
                 model.put("error", "No se pudo cargar las ofertas: " + e.getMessage());
-                return new ModelAndView(model, "offers.mustache");
+                return Compresion.responder(req, res, renderCache.renderizar(new ModelAndView(model, "offers.mustache")));
             }
-        }, new MustacheTemplateEngine());
+        });
 
         System.out.println("Servidor iniciado en http://localhost:8080");
 
         get("/carrito", (req, res) -> {
+            res.type("text/html; charset=utf-8");
             Map<String, Object> model = new HashMap<>();
             model.put("title", "Tu Carrito de Compras");
 
@@ -154,39 +169,27 @@ public class App {
                 int clienteId = 1; // Simulamos el cliente 1
                 CarritoRepository repo = new CarritoRepository();
 
-                // Obtenemos los items del carrito para el cliente simulado
-                Collection<CarritoItem> itemsDelCarrito = repo.getCarritoByClienteId(clienteId);
+                // Una sola consulta trae las líneas del carrito con su producto y el total
+                CarritoResumen carrito = repo.getCarritoDetallado(clienteId);
 
-                // Preparamos los datos para la vista, enriqueciéndolos con detalles del producto
+                // Preparamos los datos para la vista
                 List<Map<String, Object>> itemsParaVista = new ArrayList<>();
-                double totalGeneral = 0;
-
-                ProductoRepository productoRepo = new ProductoRepository();
-                for (CarritoItem item : itemsDelCarrito) {
-                    // Usamos el id_pro del item del carrito para buscar el producto
-                    Optional<Producto> productoOpt = productoRepo.getProductoById(item.id_pro); // <-- CORREGIDO
-                    if (productoOpt.isPresent()) {
-                        Producto p = productoOpt.get();
-                        Map<String, Object> itemData = new HashMap<>();
-
-                        // Accedemos directamente a los campos públicos
-                        itemData.put("idCarrito", item.id);               // <-- CORREGIDO
-                        itemData.put("foto", "/img/" + p.foto);           // <-- CORREGIDO
-                        itemData.put("nombre", p.nombre);                 // <-- CORREGIDO
-                        itemData.put("descripcion", p.descripcion);       // <-- CORREGIDO
-                        itemData.put("precio", p.precio);                 // <-- CORREGIDO
-                        itemData.put("cantidad", item.cantidad);          // <-- CORREGIDO
-
-                        double totalItem = p.precio * item.cantidad;      // <-- CORREGIDO
-                        itemData.put("total", String.format("%.2f", totalItem));
-
-                        itemsParaVista.add(itemData);
-                        totalGeneral += totalItem;
-                    }
+                for (CarritoItem item : carrito.getItems()) {
+                    Producto p = item.producto;
+                    Map<String, Object> itemData = new HashMap<>();
+                    itemData.put("idCarrito", item.id);
+                    itemData.put("foto", recursos.url("/img/" + p.foto));
+                    itemData.put("fotoSrcset", Miniaturas.getInstance().srcset("/img/" + p.foto));
+                    itemData.put("nombre", p.nombre);
+                    itemData.put("descripcion", p.descripcion);
+                    itemData.put("precio", p.precio);
+                    itemData.put("cantidad", item.cantidad);
+                    itemData.put("total", String.format("%.2f", p.precio * item.cantidad));
+                    itemsParaVista.add(itemData);
                 }
 
                 model.put("items", itemsParaVista);
-                model.put("totalGeneral", String.format("%.2f", totalGeneral));
+                model.put("totalGeneral", String.format("%.2f", carrito.getTotal()));
 
             } catch (Exception e) {
                 System.err.println("Error al cargar la página del carrito: " + e.getMessage());
@@ -194,8 +197,8 @@ public class App {
                 model.put("error", "No se pudo cargar el carrito: " + e.getMessage());
             }
 
-            return new ModelAndView(model, "carrito.mustache");
-        }, templateEngine);
+            return Compresion.responder(req, res, renderCache.renderizar(new ModelAndView(model, "carrito.mustache")));
+        });
 
     }
 
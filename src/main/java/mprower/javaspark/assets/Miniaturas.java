@@ -0,0 +1,443 @@
+package mprower.javaspark.assets;
+
+import mprower.javaspark.config.AppConfig;
+import spark.Request;
+import spark.Response;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Versiones reducidas de las imágenes de /public para las tarjetas del catálogo y del carrito.
+ * <p>
+ * GET /miniatura/320/img/gorraPP.beb1b1bb66.jpg devuelve la imagen con 320 px de ancho como
+ * máximo (nunca se agranda). Los anchos posibles son los de images.widths: si se pide otro, se usa
+ * el siguiente permitido, así no se puede llenar la caché con tamaños arbitrarios. El formato de
+ * salida es JPEG salvo que la imagen tenga transparencia (PNG); ?formato=png|jpg lo cambia.
+ * <ul>
+ *   <li>Cada variante se genera una vez y se guarda en images.cacheDir, que se limita a
+ *       images.cache.maxBytes borrando la variante usada hace más tiempo (LRU). Solo se cuentan
+ *       y se borran archivos con el nombre de una variante: cualquier otro archivo de la carpeta se deja.</li>
+ *   <li>Si llegan varias peticiones por la misma variante mientras se genera, solo una la genera
+ *       y las demás esperan ese resultado.</li>
+ *   <li>El nombre de la variante lleva el hash del original, así que un cambio en la imagen
+ *       produce variantes nuevas; las URLs con huella se sirven como immutable.</li>
+ *   <li>Cada variante se mapea en memoria la primera vez que se sirve y el buffer se guarda en el
+ *       índice hasta que se desaloja, así que las peticiones siguientes no vuelven a abrir el archivo.</li>
+ * </ul>
+ * Las plantillas usan {@link #srcset} para que el navegador elija el ancho adecuado.
+ */
+public class Miniaturas {
+
+    // <hash del original>-<ancho>[-formato pedido].<jpg|png>, como las nombra obtener()
+    private static final Pattern VARIANTE = Pattern.compile("[0-9a-f]{22}-[0-9]+(-(jpg|png))?\\.(jpg|png)");
+    private static final Miniaturas INSTANCE = new Miniaturas(RecursosEstaticos.getInstance());
+
+    private final RecursosEstaticos recursos;
+    private final boolean habilitado = AppConfig.getBoolean("images.resize.enabled", true);
+    private final int[] anchos = Arrays.stream(AppConfig.get("images.widths", "160,320,640").split(","))
+            .mapToInt(a -> Integer.parseInt(a.trim())).sorted().toArray();
+    private final Path directorio = Paths.get(AppConfig.get("images.cacheDir",
+            Paths.get(System.getProperty("java.io.tmpdir"), "reto6-miniaturas").toString()));
+    private final long maxBytes = AppConfig.getLong("images.cache.maxBytes", 64L * 1024 * 1024);
+    private final float calidadJpeg = Float.parseFloat(AppConfig.get("images.jpegQuality", "0.8"));
+    private final long maxAge = AppConfig.getLong("assets.maxAgeSeconds", 31_536_000);
+    private volatile boolean activo = false;
+
+    // Variantes en disco por nombre de archivo, por orden de uso (la primera es la usada hace más tiempo)
+    private final LinkedHashMap<String, Variante> indice = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytesEnDisco = 0;
+    // Variantes que se están generando ahora, para que las peticiones repetidas esperen la misma
+    private final Map<String, CompletableFuture<Variante>> enCurso = new ConcurrentHashMap<>();
+    // Ancho de cada imagen original, leído de su cabecera
+    private final Map<String, Integer> anchosOriginales = new ConcurrentHashMap<>();
+
+    private Miniaturas(RecursosEstaticos recursos) {
+        this.recursos = recursos;
+    }
+
+    public static Miniaturas getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Prepara la carpeta de la caché y carga las variantes que ya estaban en disco
+     * (por orden de última modificación, como aproximación a su último uso).
+     * @return false si está deshabilitado o no se pudo preparar la carpeta.
+     */
+    public boolean iniciar() {
+        if (!habilitado) {
+            return false;
+        }
+        // Servidor sin pantalla: ImageIO y Graphics2D no deben buscar un display
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        try {
+            Files.createDirectories(directorio);
+            List<Path> existentes;
+            try (Stream<Path> archivos = Files.list(directorio)) {
+                existentes = archivos.filter(Files::isRegularFile)
+                        .filter(p -> esVariante(p.getFileName().toString()))
+                        .sorted(Comparator.comparingLong(Miniaturas::modificado))
+                        .collect(Collectors.toList());
+            }
+            synchronized (indice) {
+                for (Path p : existentes) {
+                    Variante variante = new Variante(p.getFileName().toString(), Files.size(p), null);
+                    indice.put(variante.archivo, variante);
+                    bytesEnDisco += variante.tamano;
+                }
+                desalojar();
+            }
+            activo = true;
+            return true;
+        } catch (IOException e) {
+            System.err.println("No se pudo preparar la caché de miniaturas: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Atributo srcset con las variantes más chicas que el original y el original mismo,
+     * por ejemplo "/miniatura/160/img/a.1a2b.jpg 160w, ..., /img/a.1a2b.jpg 900w".
+     * @param ruta Ruta original del recurso ("/img/gorraPP.jpg").
+     * @return null si no es una imagen conocida o si las miniaturas no están activas.
+     */
+    public String srcset(String ruta) {
+        Recurso recurso = recursos.buscar(ruta);
+        if (!activo || recurso == null || !esImagen(recurso)) {
+            return null;
+        }
+        int original = anchoOriginal(recurso);
+        if (original <= 0) {
+            return null;
+        }
+        StringBuilder srcset = new StringBuilder();
+        for (int ancho : anchos) {
+            if (ancho < original) {
+                srcset.append("/miniatura/").append(ancho).append(recurso.urlConHuella)
+                        .append(' ').append(ancho).append("w, ");
+            }
+        }
+        return srcset.append(recurso.urlConHuella).append(' ').append(original).append('w').toString();
+    }
+
+    /**
+     * GET /miniatura/:ancho/* — responde la variante, generándola si hace falta.
+     */
+    public Object servir(Request req, Response res) throws IOException {
+        String url = req.uri().substring(req.uri().indexOf('/', "/miniatura/".length()));
+        Recurso recurso = recursos.buscar(url);
+        int ancho;
+        try {
+            ancho = anchoPermitido(Integer.parseInt(req.params(":ancho")));
+        } catch (NumberFormatException e) {
+            ancho = -1;
+        }
+        if (recurso == null || ancho <= 0 || !esImagen(recurso)) {
+            res.status(404);
+            return "";
+        }
+        String formato = req.queryParams("formato");
+        if (formato == null || !(formato.equals("jpg") || formato.equals("png"))) {
+            formato = recurso.tipo.equals("image/jpeg") ? "jpg" : null; // PNG: se decide al leerla
+        }
+
+        String hash = recurso.etag.substring(1, recurso.etag.length() - 1);
+        String etag = "\"" + hash + "-" + ancho + (formato != null ? formato : "") + "\"";
+        res.header("Cache-Control", url.equals(recurso.urlConHuella)
+                ? "public, max-age=" + maxAge + ", immutable"
+                : "public, max-age=0, must-revalidate");
+        res.header("ETag", etag);
+        if (etag.equals(req.headers("If-None-Match"))) {
+            res.status(304);
+            return "";
+        }
+
+        Variante variante = obtener(recurso, hash, ancho, formato);
+        ByteBuffer cuerpo;
+        try {
+            cuerpo = contenido(variante);
+        } catch (NoSuchFileException e) {
+            // Se desalojó antes de mapearla: se genera otra vez
+            variante = obtener(recurso, hash, ancho, formato);
+            cuerpo = contenido(variante);
+        }
+        res.type(variante.archivo.endsWith(".png") ? "image/png" : "image/jpeg");
+        RecursosEstaticos.enviar(res, cuerpo);
+        return "";
+    }
+
+    public long getBytesEnDisco() {
+        synchronized (indice) {
+            return bytesEnDisco;
+        }
+    }
+
+    public int getVariantes() {
+        synchronized (indice) {
+            return indice.size();
+        }
+    }
+
+    private int anchoPermitido(int pedido) {
+        for (int ancho : anchos) {
+            if (ancho >= pedido) {
+                return ancho;
+            }
+        }
+        return pedido > 0 ? anchos[anchos.length - 1] : -1;
+    }
+
+    /**
+     * Devuelve la variante. Si no existe, la genera una sola vez aunque la pidan varias
+     * peticiones al mismo tiempo.
+     */
+    private Variante obtener(Recurso recurso, String hash, int ancho, String formato) throws IOException {
+        String clave = hash + "-" + ancho + (formato != null ? "-" + formato : "");
+        synchronized (indice) {
+            // Las que ya están en disco se buscan por la clave con cualquier extensión
+            for (String extension : new String[] {".jpg", ".png"}) {
+                Variante variante = indice.get(clave + extension);
+                if (variante != null) {
+                    return variante;
+                }
+            }
+        }
+        CompletableFuture<Variante> propia = new CompletableFuture<>();
+        CompletableFuture<Variante> existente = enCurso.putIfAbsent(clave, propia);
+        if (existente != null) {
+            return esperar(existente);
+        }
+        try {
+            Variante variante = generar(recurso, clave, ancho, formato);
+            propia.complete(variante);
+            return variante;
+        } catch (IOException | RuntimeException e) {
+            propia.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCurso.remove(clave);
+        }
+    }
+
+    /**
+     * Buffer de la variante para una respuesta. Se mapea la primera vez y queda en el índice;
+     * si la variante se desaloja mientras se envía, el mapeo sigue siendo válido.
+     */
+    private ByteBuffer contenido(Variante variante) throws IOException {
+        synchronized (variante) {
+            if (variante.contenido == null) {
+                variante.contenido = mapear(directorio.resolve(variante.archivo));
+            }
+            return variante.contenido.duplicate();
+        }
+    }
+
+    private static Variante esperar(CompletableFuture<Variante> futuro) throws IOException {
+        try {
+            return futuro.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrumpido esperando la miniatura", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private Variante generar(Recurso recurso, String clave, int ancho, String formato) throws IOException {
+        BufferedImage original = ImageIO.read(new ByteArrayInputStream(bytes(recurso.contenido)));
+        if (original == null) {
+            throw new IOException("Formato de imagen no soportado: " + recurso.ruta);
+        }
+        if (formato == null) {
+            formato = original.getColorModel().hasAlpha() ? "png" : "jpg";
+        }
+        BufferedImage reducida = reducir(original, Math.min(ancho, original.getWidth()), formato.equals("png"));
+
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        escribir(reducida, formato, salida);
+        Path archivo = directorio.resolve(clave + "." + formato);
+        Path temporal = Files.createTempFile(directorio, ".", ".tmp");
+        try {
+            Files.write(temporal, salida.toByteArray());
+            Files.move(temporal, archivo, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (FileAlreadyExistsException e) {
+            // Otro proceso la generó primero: es la misma imagen
+        } finally {
+            Files.deleteIfExists(temporal);
+        }
+        Variante variante = new Variante(archivo.getFileName().toString(), salida.size(), mapear(archivo));
+        synchronized (indice) {
+            Variante previa = indice.put(variante.archivo, variante);
+            bytesEnDisco += variante.tamano - (previa != null ? previa.tamano : 0);
+            desalojar();
+        }
+        return variante;
+    }
+
+    /**
+     * Reduce a la mitad mientras se pueda y termina con una interpolación bilineal: con una sola
+     * reducción grande la interpolación salta píxeles y la imagen queda con dientes.
+     */
+    private static BufferedImage reducir(BufferedImage original, int ancho, boolean conAlfa) {
+        int alto = Math.max(1, Math.round((float) original.getHeight() * ancho / original.getWidth()));
+        int tipo = conAlfa ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage actual = original;
+        int w = original.getWidth();
+        int h = original.getHeight();
+        do {
+            w = Math.max(ancho, w / 2);
+            h = Math.max(alto, h / 2);
+            BufferedImage paso = new BufferedImage(w, h, tipo);
+            Graphics2D g = paso.createGraphics();
+            try {
+                if (!conAlfa) {
+                    // JPEG no tiene transparencia: fondo blanco en lugar de negro
+                    g.setColor(Color.WHITE);
+                    g.fillRect(0, 0, w, h);
+                }
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(actual, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            actual = paso;
+        } while (w != ancho || h != alto);
+        return actual;
+    }
+
+    private void escribir(BufferedImage imagen, String formato, ByteArrayOutputStream salida) throws IOException {
+        if (formato.equals("png")) {
+            ImageIO.write(imagen, "png", salida);
+            return;
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(salida)) {
+            writer.setOutput(ios);
+            ImageWriteParam parametros = writer.getDefaultWriteParam();
+            parametros.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            parametros.setCompressionQuality(calidadJpeg);
+            parametros.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(imagen, null, null), parametros);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /** Borra las variantes usadas hace más tiempo hasta quedar dentro de images.cache.maxBytes. */
+    private void desalojar() {
+        Iterator<Map.Entry<String, Variante>> it = indice.entrySet().iterator();
+        while (bytesEnDisco > maxBytes && it.hasNext()) {
+            Map.Entry<String, Variante> masVieja = it.next();
+            try {
+                Files.deleteIfExists(directorio.resolve(masVieja.getKey()));
+            } catch (IOException e) {
+                System.err.println("No se pudo borrar la miniatura " + masVieja.getKey() + ": " + e.getMessage());
+            }
+            bytesEnDisco -= masVieja.getValue().tamano;
+            it.remove(); // Sin referencias, el buffer mapeado se libera con el recolector
+        }
+    }
+
+    static boolean esVariante(String nombre) {
+        return VARIANTE.matcher(nombre).matches();
+    }
+
+    private int anchoOriginal(Recurso recurso) {
+        return anchosOriginales.computeIfAbsent(recurso.ruta, r -> {
+            // Solo se lee la cabecera, no la imagen completa
+            try (ImageInputStream entrada = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes(recurso.contenido)))) {
+                Iterator<ImageReader> lectores = ImageIO.getImageReaders(entrada);
+                if (!lectores.hasNext()) {
+                    return -1;
+                }
+                ImageReader lector = lectores.next();
+                try {
+                    lector.setInput(entrada);
+                    return lector.getWidth(0);
+                } finally {
+                    lector.dispose();
+                }
+            } catch (IOException e) {
+                return -1;
+            }
+        });
+    }
+
+    private static boolean esImagen(Recurso recurso) {
+        return recurso.tipo.equals("image/jpeg") || recurso.tipo.equals("image/png");
+    }
+
+    private static ByteBuffer mapear(Path archivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            return canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+    }
+
+    private static byte[] bytes(ByteBuffer contenido) {
+        ByteBuffer copia = contenido.duplicate();
+        byte[] datos = new byte[copia.remaining()];
+        copia.get(datos);
+        return datos;
+    }
+
+    /** Variante en disco: su tamaño y, desde que se sirve por primera vez, su contenido mapeado. */
+    private static final class Variante {
+        final String archivo;
+        final long tamano;
+        ByteBuffer contenido; // Se asigna con el lock de la variante
+
+        Variante(String archivo, long tamano, ByteBuffer contenido) {
+            this.archivo = archivo;
+            this.tamano = tamano;
+            this.contenido = contenido;
+        }
+    }
+
+    private static long modificado(Path archivo) {
+        try {
+            return Files.getLastModifiedTime(archivo).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
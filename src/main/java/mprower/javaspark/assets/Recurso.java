@@ -0,0 +1,29 @@
+package mprower.javaspark.assets;
+
+import java.nio.MappedByteBuffer;
+
+/**
+ * Un archivo de /public ya extraído a disco: su URL con huella, sus cabeceras de caché
+ * y el contenido mapeado en memoria (y su variante gzip, si conviene comprimirlo).
+ */
+final class Recurso {
+
+    final String ruta;
+    final String urlConHuella;
+    final String tipo;
+    final String etag;
+    final long modificado;
+    final MappedByteBuffer contenido;
+    final MappedByteBuffer gzip;
+
+    Recurso(String ruta, String urlConHuella, String tipo, String etag, long modificado,
+            MappedByteBuffer contenido, MappedByteBuffer gzip) {
+        this.ruta = ruta;
+        this.urlConHuella = urlConHuella;
+        this.tipo = tipo;
+        this.etag = etag;
+        this.modificado = modificado;
+        this.contenido = contenido;
+        this.gzip = gzip;
+    }
+}
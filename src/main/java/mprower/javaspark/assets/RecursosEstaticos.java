@@ -0,0 +1,372 @@
+package mprower.javaspark.assets;
+
+import mprower.javaspark.config.AppConfig;
+import mprower.javaspark.util.Compresion;
+import org.eclipse.jetty.server.HttpOutput;
+import spark.Request;
+import spark.Response;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Servidor de los archivos de /public (imágenes y CSS) con huella de contenido.
+ * <p>
+ * Al iniciar, cada archivo del classpath se copia una vez a assets.cacheDir con el hash de su
+ * contenido en el nombre (guitarraFD.jpg queda como guitarraFD.1a2b3c4d5e.jpg) y, si es texto,
+ * con una variante .gz ya comprimida. Las plantillas usan {@link #url} para enlazar la versión con
+ * huella, que se sirve con Cache-Control immutable: como el nombre cambia cuando cambia el
+ * contenido, el navegador no tiene que volver a preguntar. La ruta original sigue funcionando,
+ * con ETag y Last-Modified para revalidar.
+ * <p>
+ * Los archivos se mapean en memoria y Jetty escribe ese buffer directo al socket, sin volver
+ * a leer el jar ni copiar el contenido a un arreglo en cada petición.
+ */
+public class RecursosEstaticos {
+
+    private static final RecursosEstaticos INSTANCE = new RecursosEstaticos();
+    // nombre.<10 hex>[.ext][.gz], como los escribe extraer(), y los temporales de escribirSiFalta
+    private static final Pattern CON_HUELLA = Pattern.compile(".+\\.[0-9a-f]{10}(\\.[A-Za-z0-9]+)?(\\.gz)?");
+    private static final Pattern TEMPORAL = Pattern.compile("\\.[0-9]+\\.tmp");
+
+    private final boolean habilitado = AppConfig.getBoolean("assets.enabled", true);
+    private final Path directorio = Paths.get(AppConfig.get("assets.cacheDir",
+            Paths.get(System.getProperty("java.io.tmpdir"), "reto6-assets").toString()));
+    private final long maxAge = AppConfig.getLong("assets.maxAgeSeconds", 31_536_000);
+    private final long graciaMs = AppConfig.getLong("assets.cleanupGraceMs", 86_400_000);
+
+    // Se llenan una vez en iniciar() y después solo se leen
+    private volatile Map<String, Recurso> porRuta = Collections.emptyMap();
+    private volatile Map<String, Recurso> porUrl = Collections.emptyMap();
+
+    private RecursosEstaticos() {
+    }
+
+    public static RecursosEstaticos getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Extrae /public a la caché en disco y construye el manifiesto.
+     * @return false si está deshabilitado o falló; en ese caso hay que usar staticFiles de Spark.
+     */
+    public boolean iniciar() {
+        if (!habilitado) {
+            return false;
+        }
+        URL publico = RecursosEstaticos.class.getResource("/public");
+        if (publico == null) {
+            return false;
+        }
+        try {
+            URI uri = publico.toURI();
+            if ("jar".equals(uri.getScheme())) {
+                FileSystem jar;
+                boolean propio = true;
+                try {
+                    jar = FileSystems.newFileSystem(uri, Collections.emptyMap());
+                } catch (FileSystemAlreadyExistsException e) {
+                    jar = FileSystems.getFileSystem(uri); // Ya lo abrió otro componente: no se cierra
+                    propio = false;
+                }
+                try {
+                    extraer(jar.getPath("/public"));
+                } finally {
+                    if (propio) {
+                        jar.close();
+                    }
+                }
+            } else {
+                extraer(Paths.get(uri));
+            }
+            System.out.println("Recursos estáticos listos en " + directorio + " (" + porRuta.size() + " archivos)");
+            return true;
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            System.err.println("No se pudieron preparar los recursos estáticos, se sirven desde el classpath: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Devuelve la URL con huella de un recurso (por ejemplo "/img/gorraPP.jpg"), o la misma
+     * ruta si no se conoce.
+     */
+    public String url(String ruta) {
+        Recurso recurso = porRuta.get(ruta);
+        return recurso != null ? recurso.urlConHuella : ruta;
+    }
+
+    /**
+     * Primer segmento de cada ruta ("img", "css"), para registrar sus rutas en Spark.
+     */
+    public Set<String> getDirectorios() {
+        return porRuta.keySet().stream()
+                .map(r -> r.substring(1, r.indexOf('/', 1) > 0 ? r.indexOf('/', 1) : r.length()))
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    public int getArchivos() {
+        return porRuta.size();
+    }
+
+    /**
+     * Responde un recurso por su ruta original o con huella.
+     */
+    public Object servir(Request req, Response res) throws IOException {
+        Recurso recurso = porUrl.get(req.uri());
+        if (recurso == null) {
+            res.status(404);
+            return "";
+        }
+        boolean conHuella = req.uri().equals(recurso.urlConHuella);
+        boolean gzip = recurso.gzip != null && Compresion.aceptaGzip(req.headers("Accept-Encoding"));
+        String etag = gzip ? recurso.etag.substring(0, recurso.etag.length() - 1) + "-gz\"" : recurso.etag;
+
+        res.type(recurso.tipo);
+        res.header("Cache-Control", conHuella
+                ? "public, max-age=" + maxAge + ", immutable"
+                : "public, max-age=0, must-revalidate");
+        if (recurso.gzip != null) {
+            res.header("Vary", "Accept-Encoding");
+        }
+        res.header("ETag", etag);
+        res.raw().setDateHeader("Last-Modified", recurso.modificado);
+        if (noModificado(req, etag, recurso.modificado)) {
+            res.status(304);
+            return "";
+        }
+
+        ByteBuffer cuerpo = (gzip ? recurso.gzip : recurso.contenido).duplicate();
+        if (gzip) {
+            res.header("Content-Encoding", "gzip");
+        }
+        enviar(res, cuerpo);
+        return "";
+    }
+
+    /** Busca un recurso por su ruta original o con huella. */
+    Recurso buscar(String url) {
+        return porUrl.get(url);
+    }
+
+    /**
+     * Envía el buffer como cuerpo de la respuesta. Con un buffer mapeado, Jetty lo escribe
+     * directo al socket y cierra la respuesta, así que Spark ya no escribe nada después.
+     */
+    static void enviar(Response res, ByteBuffer cuerpo) throws IOException {
+        res.raw().setContentLengthLong(cuerpo.remaining());
+        OutputStream salida = res.raw().getOutputStream();
+        if (salida instanceof HttpOutput) {
+            ((HttpOutput) salida).sendContent(cuerpo);
+        } else {
+            Channels.newChannel(salida).write(cuerpo);
+            salida.flush();
+        }
+    }
+
+    private static boolean noModificado(Request req, String etag, long modificado) {
+        String ifNoneMatch = req.headers("If-None-Match");
+        if (ifNoneMatch != null) {
+            // Si viene If-None-Match, manda sobre If-Modified-Since
+            for (String candidato : ifNoneMatch.split(",")) {
+                String valor = candidato.trim();
+                if (valor.startsWith("W/")) {
+                    valor = valor.substring(2);
+                }
+                if (valor.equals("*") || valor.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        try {
+            long desde = req.raw().getDateHeader("If-Modified-Since");
+            return desde >= 0 && modificado <= desde;
+        } catch (IllegalArgumentException e) {
+            return false; // Fecha mal formada: se responde completo
+        }
+    }
+
+    // --- Extracción al iniciar ---
+
+    private void extraer(Path raiz) throws IOException {
+        Files.createDirectories(directorio);
+        Map<String, Recurso> rutas = new HashMap<>();
+        Map<String, Recurso> urls = new HashMap<>();
+        Set<Path> vigentes = new HashSet<>();
+
+        try (Stream<Path> archivos = Files.walk(raiz)) {
+            for (Path archivo : (Iterable<Path>) archivos.filter(Files::isRegularFile)::iterator) {
+                String relativa = raiz.relativize(archivo).toString().replace('\\', '/');
+                byte[] datos = Files.readAllBytes(archivo);
+                String hash = sha256(datos);
+                String conHuella = insertarHuella(relativa, hash.substring(0, 10));
+                String tipo = tipoDe(relativa);
+
+                Path destino = directorio.resolve(conHuella);
+                escribirSiFalta(destino, datos);
+                vigentes.add(destino);
+
+                MappedByteBuffer gzip = null;
+                if (tipo.startsWith("text/") || tipo.startsWith("application/javascript")
+                        || tipo.startsWith("image/svg") || tipo.startsWith("application/json")) {
+                    Path destinoGz = directorio.resolve(conHuella + ".gz");
+                    if (!Files.exists(destinoGz)) {
+                        byte[] comprimido = Compresion.gzip(datos);
+                        if (comprimido.length < datos.length * 0.9) {
+                            escribirSiFalta(destinoGz, comprimido);
+                        }
+                    }
+                    if (Files.exists(destinoGz)) {
+                        gzip = mapear(destinoGz);
+                        vigentes.add(destinoGz);
+                    }
+                }
+
+                // Last-Modified en segundos, que es la precisión de la cabecera
+                long modificado = Files.getLastModifiedTime(archivo).toMillis() / 1000 * 1000;
+                Recurso recurso = new Recurso("/" + relativa, "/" + conHuella, tipo,
+                        "\"" + hash.substring(0, 22) + "\"", modificado, mapear(destino), gzip);
+                rutas.put(recurso.ruta, recurso);
+                urls.put(recurso.ruta, recurso);
+                urls.put(recurso.urlConHuella, recurso);
+            }
+        }
+        porRuta = rutas;
+        porUrl = urls;
+        borrarObsoletos(vigentes);
+    }
+
+    /**
+     * Escribe a un temporal y lo mueve, para que otro proceso que comparta el directorio nunca
+     * vea un archivo a medias. Como el nombre lleva el hash, si ya existe tiene el mismo contenido.
+     */
+    private void escribirSiFalta(Path destino, byte[] datos) throws IOException {
+        if (Files.exists(destino)) {
+            return;
+        }
+        Files.createDirectories(destino.getParent());
+        Path temporal = Files.createTempFile(destino.getParent(), ".", ".tmp");
+        try {
+            Files.write(temporal, datos);
+            Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Otro proceso lo escribió primero
+        } finally {
+            Files.deleteIfExists(temporal);
+        }
+    }
+
+    private static MappedByteBuffer mapear(Path archivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            // El mapeo sigue siendo válido después de cerrar el canal
+            return canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+    }
+
+    /**
+     * Borra las versiones anteriores de archivos que ya cambiaron. Solo toca archivos con el
+     * nombre que escribe esta clase y más viejos que assets.cleanupGraceMs: cualquier otro
+     * archivo de la carpeta se deja, y otro proceso que comparta la carpeta con otra versión
+     * tiene ese tiempo para seguir usando los suyos.
+     */
+    private void borrarObsoletos(Set<Path> vigentes) {
+        long limite = System.currentTimeMillis() - graciaMs;
+        try (Stream<Path> archivos = Files.walk(directorio)) {
+            archivos.filter(Files::isRegularFile)
+                    .filter(p -> !vigentes.contains(p))
+                    .filter(p -> esPropio(p.getFileName().toString()))
+                    .filter(p -> modificadoAntesDe(p, limite))
+                    .forEach(p -> {
+                        try {
+                            Files.deleteIfExists(p);
+                        } catch (IOException e) {
+                            System.err.println("No se pudo borrar el recurso obsoleto " + p + ": " + e.getMessage());
+                        }
+                    });
+        } catch (IOException e) {
+            System.err.println("No se pudo limpiar " + directorio + ": " + e.getMessage());
+        }
+    }
+
+    static boolean esPropio(String nombre) {
+        return CON_HUELLA.matcher(nombre).matches() || TEMPORAL.matcher(nombre).matches();
+    }
+
+    private static boolean modificadoAntesDe(Path archivo, long limite) {
+        try {
+            return Files.getLastModifiedTime(archivo).toMillis() < limite;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String insertarHuella(String ruta, String huella) {
+        int punto = ruta.lastIndexOf('.');
+        int barra = ruta.lastIndexOf('/');
+        if (punto <= barra + 1) {
+            return ruta + "." + huella;
+        }
+        return ruta.substring(0, punto) + "." + huella + ruta.substring(punto);
+    }
+
+    private static String tipoDe(String ruta) {
+        String extension = ruta.substring(ruta.lastIndexOf('.') + 1).toLowerCase();
+        switch (extension) {
+            case "css": return "text/css; charset=utf-8";
+            case "js": return "application/javascript; charset=utf-8";
+            case "json": return "application/json; charset=utf-8";
+            case "html": return "text/html; charset=utf-8";
+            case "txt": return "text/plain; charset=utf-8";
+            case "svg": return "image/svg+xml";
+            case "png": return "image/png";
+            case "jpg":
+            case "jpeg": return "image/jpeg";
+            case "gif": return "image/gif";
+            case "webp": return "image/webp";
+            case "ico": return "image/x-icon";
+            case "woff2": return "font/woff2";
+            default: return "application/octet-stream";
+        }
+    }
+
+    private static String sha256(byte[] datos) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(datos);
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
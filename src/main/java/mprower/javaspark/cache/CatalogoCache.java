@@ -0,0 +1,230 @@
+package mprower.javaspark.cache;
+
+import mprower.javaspark.config.AppConfig;
+import mprower.javaspark.model.Producto;
+import mprower.javaspark.repository.ProductoRepository;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Capa de snapshot sobre ProductoRepository.
+ * Las lecturas del catálogo (lista completa, búsqueda por ID, ofertas) se sirven
+ * desde un CatalogoSnapshot inmutable en memoria. Un hilo en segundo plano lo recarga
+ * cada cierto intervalo o cuando se invalida, y lo reemplaza de forma atómica, así
+ * que los lectores nunca se bloquean. El stock se refresca por separado y más seguido.
+ */
+public class CatalogoCache {
+
+    private static final CatalogoCache INSTANCE = new CatalogoCache(new ProductoRepository());
+
+    private final ProductoRepository repository;
+    private final AtomicReference<CatalogoSnapshot> actual = new AtomicReference<>();
+    private final AtomicLong versiones = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+    private final List<Consumer<CatalogoSnapshot>> suscriptores = new CopyOnWriteArrayList<>();
+    // Unidades vendidas que aún no se descuentan del snapshot, y si ya hay una tarea que lo hará
+    private final Map<Integer, Integer> vendidas = new ConcurrentHashMap<>();
+    private final AtomicBoolean descuentoPendiente = new AtomicBoolean();
+    // Lock y no synchronized: la primera carga bloquea en JDBC y no debe fijar hilos virtuales
+    private final ReentrantLock primeraCarga = new ReentrantLock();
+
+    private CatalogoCache(ProductoRepository repository) {
+        this.repository = repository;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalogo-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static CatalogoCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Carga el catálogo por primera vez y programa las recargas periódicas
+     * (catalog.refreshMs para el catálogo completo y catalog.stockRefreshMs para el stock).
+     */
+    public void iniciar() {
+        try {
+            recargar();
+        } catch (SQLException e) {
+            System.err.println("No se pudo cargar el catálogo al iniciar: " + e.getMessage());
+        }
+
+        long intervaloCatalogo = AppConfig.getLong("catalog.refreshMs", 300_000);
+        long intervaloStock = AppConfig.getLong("catalog.stockRefreshMs", 10_000);
+        scheduler.scheduleWithFixedDelay(this::recargarSilencioso,
+                intervaloCatalogo, intervaloCatalogo, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::refrescarStockSilencioso,
+                intervaloStock, intervaloStock, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registra una acción que se ejecuta cada vez que se publica un snapshot nuevo
+     * (por ejemplo, para reconstruir índices derivados del catálogo).
+     */
+    public void suscribir(Consumer<CatalogoSnapshot> suscriptor) {
+        suscriptores.add(suscriptor);
+    }
+
+    /**
+     * Devuelve el snapshot vigente. Solo la primera llamada (si iniciar() no pudo cargar)
+     * va a la base de datos; después nunca se bloquea.
+     * @throws SQLException si el catálogo nunca se ha podido cargar.
+     */
+    public CatalogoSnapshot getSnapshot() throws SQLException {
+        CatalogoSnapshot snapshot = actual.get();
+        if (snapshot != null) {
+            return snapshot;
+        }
+        primeraCarga.lock();
+        try {
+            snapshot = actual.get();
+            return snapshot != null ? snapshot : recargar();
+        } finally {
+            primeraCarga.unlock();
+        }
+    }
+
+    /**
+     * Marca el catálogo como obsoleto y lo recarga en segundo plano.
+     * Los lectores siguen viendo el snapshot anterior hasta que el nuevo esté listo.
+     */
+    public CompletableFuture<Void> invalidar() {
+        return CompletableFuture.runAsync(this::recargarSilencioso, scheduler);
+    }
+
+    /**
+     * Descuenta del snapshot las unidades de una venta ya confirmada, sin volver a leer la tabla
+     * producto. Las ventas que llegan mientras hay un descuento en cola se suman a él, así que
+     * una ráfaga de compras publica un solo snapshot nuevo. Si el descuento coincide con un
+     * refresco que ya leyó la venta, se cuenta dos veces hasta el siguiente refresco periódico
+     * (catalog.stockRefreshMs), que deja el stock igual al de la base de datos.
+     * @param unidades Unidades vendidas por ID de producto.
+     */
+    public void descontarStock(Map<Integer, Integer> unidades) {
+        unidades.forEach((id, cantidad) -> vendidas.merge(id, cantidad, Integer::sum));
+        if (descuentoPendiente.compareAndSet(false, true)) {
+            scheduler.execute(this::aplicarVendidas);
+        }
+    }
+
+    /**
+     * Recarga solo el índice de ofertas en segundo plano (por ejemplo, al cambiar la tabla oferta).
+     */
+    public CompletableFuture<Void> invalidarOfertas() {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                refrescarOfertas();
+            } catch (Exception e) {
+                System.err.println("Error al refrescar el índice de ofertas: " + e.getMessage());
+            }
+        }, scheduler);
+    }
+
+    private CatalogoSnapshot recargar() throws SQLException {
+        Collection<Producto> productos = repository.getAllProductos();
+        IndiceOfertas ofertas = repository.cargarIndiceOfertas();
+        CatalogoSnapshot nuevo = new CatalogoSnapshot(versiones.incrementAndGet(), productos, ofertas);
+        // Nunca reemplazar un snapshot más reciente por uno más viejo
+        CatalogoSnapshot vigente = actual.accumulateAndGet(nuevo,
+                (previo, candidato) -> previo == null || candidato.getVersion() > previo.getVersion() ? candidato : previo);
+        if (vigente == nuevo) {
+            notificar(nuevo);
+        }
+        return vigente;
+    }
+
+    private void refrescarStock() throws SQLException {
+        CatalogoSnapshot anterior = actual.get();
+        if (anterior == null) {
+            recargar();
+            return;
+        }
+        Map<Integer, Integer> stock = repository.getStockActual();
+        CatalogoSnapshot nuevo = anterior.conStock(stock, versiones::incrementAndGet);
+        // Si una recarga completa ganó la carrera, su snapshot ya trae el stock nuevo
+        if (nuevo != anterior && actual.compareAndSet(anterior, nuevo)) {
+            notificar(nuevo);
+        }
+    }
+
+    private void aplicarVendidas() {
+        // Antes de tomar las unidades: una venta que llegue después programa otra tarea
+        descuentoPendiente.set(false);
+        Map<Integer, Integer> delta = new HashMap<>();
+        for (Integer id : new ArrayList<>(vendidas.keySet())) {
+            Integer cantidad = vendidas.remove(id);
+            if (cantidad != null) {
+                delta.put(id, cantidad);
+            }
+        }
+        CatalogoSnapshot anterior = actual.get();
+        if (delta.isEmpty() || anterior == null) {
+            return; // Sin snapshot, la primera carga ya leerá el stock descontado
+        }
+        Map<Integer, Integer> stock = new HashMap<>();
+        delta.forEach((id, cantidad) -> anterior.getProducto(id)
+                .ifPresent(p -> stock.put(id, Math.max(0, p.getCantidad() - cantidad))));
+        CatalogoSnapshot nuevo = anterior.conStock(stock, versiones::incrementAndGet);
+        if (nuevo != anterior && actual.compareAndSet(anterior, nuevo)) {
+            notificar(nuevo);
+        }
+    }
+
+    private void refrescarOfertas() throws SQLException {
+        CatalogoSnapshot anterior = actual.get();
+        if (anterior == null) {
+            recargar();
+            return;
+        }
+        IndiceOfertas indice = repository.cargarIndiceOfertas();
+        CatalogoSnapshot nuevo = anterior.conOfertas(indice, versiones.incrementAndGet());
+        if (actual.compareAndSet(anterior, nuevo)) {
+            notificar(nuevo);
+        }
+    }
+
+    private void notificar(CatalogoSnapshot snapshot) {
+        for (Consumer<CatalogoSnapshot> suscriptor : suscriptores) {
+            try {
+                suscriptor.accept(snapshot);
+            } catch (Exception e) {
+                System.err.println("Error al notificar el cambio de catálogo: " + e.getMessage());
+            }
+        }
+    }
+
+    private void recargarSilencioso() {
+        try {
+            recargar();
+        } catch (Exception e) {
+            System.err.println("Error al recargar el catálogo: " + e.getMessage());
+        }
+    }
+
+    private void refrescarStockSilencioso() {
+        try {
+            refrescarStock();
+        } catch (Exception e) {
+            System.err.println("Error al refrescar el stock del catálogo: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package mprower.javaspark.cache;
+
+import mprower.javaspark.model.Producto;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * Foto inmutable del catálogo en un momento dado.
+ * Los lectores la comparten sin bloqueo, por lo que los productos que contiene
+ * no deben modificarse; cualquier cambio produce un snapshot nuevo con otra versión.
+ */
+public class CatalogoSnapshot {
+
+    private final long version;
+    // Solo cambia si cambia algo distinto del stock (nombres, precios, fotos, ofertas)
+    private final long versionContenido;
+    private final long cargadoEn;
+    private final List<Producto> productos;
+    private final Map<Integer, Producto> porId;
+    private final IndiceOfertas indiceOfertas;
+    private final List<Producto> ofertas;
+
+    CatalogoSnapshot(long version, Collection<Producto> productos, IndiceOfertas indiceOfertas) {
+        this(version, version, productos, indiceOfertas);
+    }
+
+    private CatalogoSnapshot(long version, long versionContenido, Collection<Producto> productos, IndiceOfertas indiceOfertas) {
+        this.version = version;
+        this.versionContenido = versionContenido;
+        this.cargadoEn = System.currentTimeMillis();
+        this.productos = Collections.unmodifiableList(new ArrayList<>(productos));
+
+        Map<Integer, Producto> indice = new HashMap<>(productos.size() * 2);
+        for (Producto p : this.productos) {
+            indice.put(p.getId(), p);
+        }
+        this.porId = Collections.unmodifiableMap(indice);
+
+        // Las ofertas se derivan del índice y apuntan a las mismas instancias que la lista completa
+        this.indiceOfertas = indiceOfertas;
+        List<Producto> enOferta = new ArrayList<>(indiceOfertas.tamano());
+        for (Producto p : this.productos) {
+            if (indiceOfertas.contiene(p.getId())) {
+                enOferta.add(p);
+            }
+        }
+        this.ofertas = Collections.unmodifiableList(enOferta);
+    }
+
+    /**
+     * Crea un snapshot nuevo con el stock actualizado. Solo se copian los productos
+     * cuya cantidad cambió; el resto se comparte con este snapshot. La versión de contenido no cambia.
+     * @return el nuevo snapshot, o este mismo si ningún stock cambió.
+     */
+    CatalogoSnapshot conStock(Map<Integer, Integer> stock, LongSupplier nuevaVersion) {
+        List<Producto> actualizados = new ArrayList<>(productos.size());
+        boolean cambio = false;
+        for (Producto p : productos) {
+            Integer cantidad = stock.get(p.getId());
+            if (cantidad != null && cantidad != p.getCantidad()) {
+                Producto copia = copiar(p);
+                copia.setCantidad(cantidad);
+                actualizados.add(copia);
+                cambio = true;
+            } else {
+                actualizados.add(p);
+            }
+        }
+        return cambio ? new CatalogoSnapshot(nuevaVersion.getAsLong(), versionContenido, actualizados, indiceOfertas) : this;
+    }
+
+    /**
+     * Crea un snapshot nuevo con otro índice de ofertas, compartiendo los mismos productos.
+     */
+    CatalogoSnapshot conOfertas(IndiceOfertas nuevoIndice, long nuevaVersion) {
+        return new CatalogoSnapshot(nuevaVersion, productos, nuevoIndice);
+    }
+
+    private static Producto copiar(Producto p) {
+        Producto copia = new Producto();
+        copia.setId(p.getId());
+        copia.setNombre(p.getNombre());
+        copia.setPrecio(p.getPrecio());
+        copia.setFoto(p.getFoto());
+        copia.setCantidad(p.getCantidad());
+        copia.setDescripcion(p.getDescripcion());
+        return copia;
+    }
+
+    // --- Getters ---
+
+    /** Número de versión; cambia cada vez que cambia cualquier dato del catálogo. */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Versión de todo lo que no es el stock: no cambia con un refresco de cantidades. Sirve de
+     * clave para lo que no muestra el stock, como las páginas HTML del catálogo.
+     */
+    public long getVersionContenido() {
+        return versionContenido;
+    }
+
+    public long getCargadoEn() {
+        return cargadoEn;
+    }
+
+    public List<Producto> getProductos() {
+        return productos;
+    }
+
+    public Optional<Producto> getProducto(int id) {
+        return Optional.ofNullable(porId.get(id));
+    }
+
+    public List<Producto> getOfertas() {
+        return ofertas;
+    }
+
+    public IndiceOfertas getIndiceOfertas() {
+        return indiceOfertas;
+    }
+}
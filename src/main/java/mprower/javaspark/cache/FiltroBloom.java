@@ -0,0 +1,97 @@
+package mprower.javaspark.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro de Bloom de cadenas: responde "seguro que no está" o "puede que esté".
+ * <p>
+ * Nunca da falsos negativos; los falsos positivos ocurren con la probabilidad con la que se
+ * dimensionó mientras no se agreguen más elementos que los esperados. Las altas y las
+ * consultas son seguras entre hilos y no bloquean (los bits viven en un AtomicLongArray).
+ */
+public class FiltroBloom {
+
+    private final AtomicLongArray bits;
+    private final long totalBits;
+    private final int funciones;
+    private final int capacidad;
+    private final AtomicInteger elementos = new AtomicInteger();
+
+    /**
+     * @param esperados Número de elementos para el que se dimensiona.
+     * @param probabilidadFalsoPositivo Tasa de falsos positivos deseada (por ejemplo 0.01).
+     */
+    public FiltroBloom(int esperados, double probabilidadFalsoPositivo) {
+        this.capacidad = Math.max(1, esperados);
+        // m = -n ln(p) / ln(2)^2, k = m/n ln(2)
+        long m = (long) Math.ceil(-capacidad * Math.log(probabilidadFalsoPositivo) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, m);
+        this.bits = new AtomicLongArray((int) ((m + 63) / 64));
+        this.totalBits = bits.length() * 64L;
+        this.funciones = Math.max(1, (int) Math.round((double) m / capacidad * Math.log(2)));
+    }
+
+    public void agregar(String valor) {
+        long hash = hash64(valor);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < funciones; i++) {
+            long bit = indice(h1 + i * h2);
+            int palabra = (int) (bit >>> 6);
+            long mascara = 1L << bit;
+            long actual = bits.get(palabra);
+            while ((actual & mascara) == 0 && !bits.compareAndSet(palabra, actual, actual | mascara)) {
+                actual = bits.get(palabra);
+            }
+        }
+        elementos.incrementAndGet();
+    }
+
+    public boolean podriaContener(String valor) {
+        long hash = hash64(valor);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < funciones; i++) {
+            long bit = indice(h1 + i * h2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Elementos agregados (con repeticiones). */
+    public int getElementos() {
+        return elementos.get();
+    }
+
+    public int getCapacidad() {
+        return capacidad;
+    }
+
+    /** Indica si ya se agregaron más elementos de los previstos y la tasa de falsos positivos empeoró. */
+    public boolean excedido() {
+        return elementos.get() > capacidad;
+    }
+
+    private long indice(int combinado) {
+        return (combinado & 0x7fffffffL) % totalBits;
+    }
+
+    /** FNV-1a de 64 bits sobre UTF-8 con una mezcla final para repartir los bits altos y bajos. */
+    private static long hash64(String valor) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : valor.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
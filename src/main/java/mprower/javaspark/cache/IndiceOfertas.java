@@ -0,0 +1,32 @@
+package mprower.javaspark.cache;
+
+import java.util.BitSet;
+
+/**
+ * Índice de pertenencia a oferta: un bit por ID de producto.
+ * Reemplaza el HashSet&lt;Integer&gt; que se llenaba en cada petición; consultar
+ * si un producto está en oferta no toca la base de datos ni crea objetos.
+ * Es inmutable: para cambiar las ofertas se crea un índice nuevo.
+ */
+public class IndiceOfertas {
+
+    public static final IndiceOfertas VACIO = new IndiceOfertas(new BitSet());
+
+    private final BitSet ids;
+    private final int tamano;
+
+    public IndiceOfertas(BitSet ids) {
+        // Copia defensiva para que nadie pueda modificar el índice después de publicarlo
+        this.ids = (BitSet) ids.clone();
+        this.tamano = this.ids.cardinality();
+    }
+
+    public boolean contiene(int idProducto) {
+        return idProducto >= 0 && ids.get(idProducto);
+    }
+
+    /** Número de productos en oferta. */
+    public int tamano() {
+        return tamano;
+    }
+}
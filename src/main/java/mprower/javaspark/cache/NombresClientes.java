@@ -0,0 +1,240 @@
+package mprower.javaspark.cache;
+
+import mprower.javaspark.config.AppConfig;
+import mprower.javaspark.model.Cliente;
+import mprower.javaspark.repository.Streaming;
+import mprower.javaspark.search.Tokenizador;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Nombres de cliente en memoria para no ir a la base de datos cuando el nombre no existe.
+ * <p>
+ * Un filtro de Bloom con todos los nombres de la tabla cliente responde sin consulta a los
+ * logins de usuarios inexistentes. Se construye al iniciar, se actualiza con cada registro de
+ * este nodo y se reconstruye cada clientes.bloom.refreshMs para ver los clientes que se dieron
+ * de alta en otro nodo o directamente en la base de datos (si la primera carga falla, la
+ * siguiente lo vuelve a intentar). Además, un LRU pequeño guarda por clientes.cache.ttlMs a
+ * los clientes que iniciaron sesión hace poco para que su siguiente login tampoco consulte.
+ * <p>
+ * En MySQL la comparación {@code nombre = ?} ignora mayúsculas, acentos y espacios finales
+ * (colación _ai_ci), así que el filtro guarda los nombres normalizados con
+ * Tokenizador.normalizar, que solo aproxima esa colación: quita diacríticos, pero no aplica
+ * sus expansiones (en utf8mb4_0900_ai_ci "ß" = "ss", "æ" = "ae"). Por eso los nombres que
+ * después de normalizar conservan letras fuera de ASCII siempre se consultan en la base de
+ * datos. Queda un caso sin cubrir: escribir en ASCII la expansión de un nombre registrado con
+ * una de esas letras ("strasse" para "Straße") se descarta como inexistente, y ese login
+ * falla aunque MySQL lo aceptaría.
+ */
+public class NombresClientes {
+
+    private static final NombresClientes INSTANCE = new NombresClientes();
+
+    private static final double FALSOS_POSITIVOS = 0.01;
+
+    private final AtomicReference<FiltroBloom> filtro = new AtomicReference<>();
+    private final AtomicBoolean reconstruyendo = new AtomicBoolean();
+    // Nombres registrados mientras se reconstruye el filtro (la consulta pudo no verlos)
+    private final Queue<String> pendientes = new ConcurrentLinkedQueue<>();
+    private final Map<String, Reciente> recientes;
+    private final long ttlRecientesMs = AppConfig.getLong("clientes.cache.ttlMs", 60_000);
+    private volatile int capacidad = AppConfig.getInt("clientes.bloom.esperados", 100_000);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "clientes-filtro");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final LongAdder descartados = new LongAdder();
+    private final LongAdder aciertosRecientes = new LongAdder();
+
+    private NombresClientes() {
+        int maxRecientes = AppConfig.getInt("clientes.cache.maxEntries", 1000);
+        this.recientes = new LinkedHashMap<String, Reciente>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Reciente> eldest) {
+                return size() > maxRecientes;
+            }
+        };
+    }
+
+    public static NombresClientes getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Construye el filtro con los nombres de la tabla cliente y programa su reconstrucción
+     * periódica. Mientras no se haya podido construir, todas las búsquedas van a la base de datos.
+     */
+    public void iniciar() {
+        reconstruirSilencioso();
+        long intervalo = AppConfig.getLong("clientes.bloom.refreshMs", 60_000);
+        if (intervalo > 0) {
+            scheduler.scheduleWithFixedDelay(this::reconstruirSilencioso, intervalo, intervalo, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return false solo si el nombre seguro no existe; true si puede existir, si tiene letras
+     * fuera de ASCII (ver la colación en la descripción de la clase) o si el filtro no está listo.
+     */
+    public boolean podriaExistir(String nombre) {
+        FiltroBloom actual = filtro.get();
+        String clave = clave(nombre);
+        if (actual == null || !esAscii(clave) || actual.podriaContener(clave)) {
+            return true;
+        }
+        descartados.increment();
+        return false;
+    }
+
+    /**
+     * Registra un nombre nuevo (después de insertarlo en la base de datos).
+     */
+    public void agregar(String nombre) {
+        String clave = clave(nombre);
+        if (reconstruyendo.get()) {
+            pendientes.add(clave);
+        }
+        FiltroBloom actual;
+        // Si se reemplazó el filtro mientras tanto, el nombre también debe quedar en el nuevo
+        do {
+            actual = filtro.get();
+            if (actual == null) {
+                return;
+            }
+            actual.agregar(clave);
+        } while (actual != filtro.get());
+
+        if (actual.excedido() && !reconstruyendo.get()) {
+            capacidad = actual.getCapacidad() * 2;
+            scheduler.execute(this::reconstruirSilencioso);
+        }
+    }
+
+    /**
+     * Cliente que inició sesión recientemente con exactamente este nombre.
+     * Se devuelve una copia porque Cliente es mutable.
+     */
+    public Optional<Cliente> reciente(String nombre) {
+        Reciente reciente;
+        synchronized (recientes) {
+            reciente = recientes.get(nombre);
+            if (reciente != null && reciente.expiraEn <= System.currentTimeMillis()) {
+                // Pudo cambiar en otro nodo: se vuelve a leer de la base de datos
+                recientes.remove(nombre);
+                reciente = null;
+            }
+        }
+        if (reciente == null) {
+            return Optional.empty();
+        }
+        aciertosRecientes.increment();
+        return Optional.of(copiar(reciente.cliente));
+    }
+
+    public void recordar(Cliente cliente) {
+        if (ttlRecientesMs <= 0) {
+            return;
+        }
+        Cliente copia = copiar(cliente);
+        synchronized (recientes) {
+            recientes.put(copia.nombre, new Reciente(copia, System.currentTimeMillis() + ttlRecientesMs));
+        }
+    }
+
+    /** Descarta al cliente del LRU (por ejemplo, porque cambió su contraseña). */
+    public void olvidar(int idCliente) {
+        synchronized (recientes) {
+            recientes.values().removeIf(r -> r.cliente.id == idCliente);
+        }
+    }
+
+    /** Búsquedas de nombres inexistentes resueltas sin consultar la base de datos. */
+    public long getDescartados() {
+        return descartados.sum();
+    }
+
+    public long getAciertosRecientes() {
+        return aciertosRecientes.sum();
+    }
+
+    private void reconstruirSilencioso() {
+        if (!reconstruyendo.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            reconstruir();
+        } catch (SQLException | IOException e) {
+            System.err.println("No se pudo cargar el filtro de nombres de cliente: " + e.getMessage());
+        } finally {
+            reconstruyendo.set(false);
+        }
+    }
+
+    private void reconstruir() throws SQLException, IOException {
+        boolean primeraVez = filtro.get() == null;
+        FiltroBloom nuevo = new FiltroBloom(capacidad, FALSOS_POSITIVOS);
+        int total = Streaming.recorrer("SELECT nombre FROM cliente", rs -> rs.getString(1),
+                nombre -> nuevo.agregar(clave(nombre)));
+        if (total > capacidad) {
+            // Hay más clientes de los previstos: se dimensiona de nuevo con el total real
+            capacidad = total * 2;
+            reconstruir();
+            return;
+        }
+        filtro.set(nuevo);
+        for (String pendiente; (pendiente = pendientes.poll()) != null; ) {
+            nuevo.agregar(pendiente);
+        }
+        if (primeraVez) {
+            System.out.println("Filtro de nombres de cliente cargado: " + total + " nombres");
+        }
+    }
+
+    /** Nombre como lo compara MySQL, hasta donde Tokenizador.normalizar lo aproxima. */
+    private static String clave(String nombre) {
+        return nombre == null ? "" : Tokenizador.normalizar(nombre).stripTrailing();
+    }
+
+    private static boolean esAscii(String clave) {
+        for (int i = 0; i < clave.length(); i++) {
+            if (clave.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Reciente {
+        final Cliente cliente;
+        final long expiraEn;
+
+        Reciente(Cliente cliente, long expiraEn) {
+            this.cliente = cliente;
+            this.expiraEn = expiraEn;
+        }
+    }
+
+    private static Cliente copiar(Cliente c) {
+        Cliente copia = new Cliente();
+        copia.id = c.id;
+        copia.nombre = c.nombre;
+        copia.password = c.password;
+        copia.numero = c.numero;
+        return copia;
+    }
+}
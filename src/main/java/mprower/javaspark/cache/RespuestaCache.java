@@ -0,0 +1,122 @@
+package mprower.javaspark.cache;
+
+import mprower.javaspark.config.AppConfig;
+import mprower.javaspark.util.Compresion;
+import spark.Request;
+import spark.Response;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Caché de respuestas JSON ya serializadas para la API de productos.
+ * <p>
+ * Cada entrada guarda los bytes de la respuesta (y su variante gzip, calculada una vez) y un
+ * ETag fuerte calculado sobre ellos, junto con el objeto del catálogo del que salió (la lista del snapshot o el Producto).
+ * Como los snapshots son inmutables, la entrada sigue siendo válida mientras ese objeto
+ * sea el mismo; cuando el catálogo cambia el objeto es otro y la entrada se regenera.
+ */
+public class RespuestaCache {
+
+    private static final int MAX_AGE = AppConfig.getInt("api.cache.maxAgeSeconds", 0);
+
+    private final ConcurrentHashMap<String, Entrada> entradas = new ConcurrentHashMap<>();
+    private final int maxEntradas;
+
+    public RespuestaCache(int maxEntradas) {
+        this.maxEntradas = maxEntradas;
+    }
+
+    /**
+     * Devuelve la respuesta serializada para la clave, generándola solo si no existe o si
+     * la fuente cambió.
+     * @param clave Identificador de la respuesta (por ejemplo "productos" o "producto:4").
+     * @param fuente Objeto inmutable del que sale la respuesta; se compara por identidad.
+     * @param serializar Genera el JSON cuando hace falta.
+     */
+    public Entrada obtener(String clave, Object fuente, Supplier<String> serializar) {
+        Entrada entrada = entradas.get(clave);
+        if (entrada != null && entrada.fuente == fuente) {
+            return entrada;
+        }
+        Entrada nueva = new Entrada(fuente, serializar.get().getBytes(StandardCharsets.UTF_8));
+        if (entradas.size() >= maxEntradas) {
+            entradas.clear();
+        }
+        entradas.put(clave, nueva);
+        return nueva;
+    }
+
+    /**
+     * Escribe las cabeceras de caché y responde 304 si el cliente ya tiene esta versión.
+     * @return el cuerpo que la ruta debe devolver (vacío en caso de 304).
+     */
+    public static Object responder(Request req, Response res, Entrada entrada) throws IOException {
+        // Cada codificación es una representación distinta y lleva su propio ETag fuerte
+        String etag = Compresion.usarGzip(req, res, entrada.cuerpo) ? entrada.etagGzip : entrada.etag;
+        res.header("ETag", etag);
+        res.header("Cache-Control", "public, max-age=" + MAX_AGE + ", must-revalidate");
+        if (coincide(req.headers("If-None-Match"), etag)) {
+            res.status(304);
+            return "";
+        }
+        return Compresion.responder(req, res, entrada.cuerpo);
+    }
+
+    private static boolean coincide(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidato : ifNoneMatch.split(",")) {
+            String valor = candidato.trim();
+            if (valor.startsWith("W/")) {
+                valor = valor.substring(2);
+            }
+            if (valor.equals("*") || valor.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Una respuesta serializada con su ETag.
+     */
+    public static class Entrada {
+        private final Object fuente;
+        private final Compresion.Precomprimido cuerpo;
+        private final String etag;
+        private final String etagGzip;
+
+        Entrada(Object fuente, byte[] cuerpo) {
+            this.fuente = fuente;
+            this.cuerpo = new Compresion.Precomprimido(cuerpo);
+            this.etag = calcularEtag(cuerpo);
+            this.etagGzip = etag.substring(0, etag.length() - 1) + "-gz\"";
+        }
+
+        public byte[] getCuerpo() {
+            return cuerpo.getOriginal();
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        private static String calcularEtag(byte[] cuerpo) {
+            try {
+                byte[] hash = MessageDigest.getInstance("SHA-256").digest(cuerpo);
+                // 128 bits son suficientes para distinguir versiones de una misma respuesta
+                return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 16)) + "\"";
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 no disponible", e);
+            }
+        }
+    }
+}
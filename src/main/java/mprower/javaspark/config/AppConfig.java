@@ -0,0 +1,52 @@
+package mprower.javaspark.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Lee la configuración de la aplicación desde application.properties.
+ * Un valor se puede sobreescribir con una propiedad del sistema (-Ddb.url=...)
+ * o con una variable de entorno con el nombre en mayúsculas (DB_URL=...).
+ */
+public class AppConfig {
+
+    private static final Properties PROPS = new Properties();
+
+    // Cargar el archivo una sola vez
+    static {
+        try (InputStream in = AppConfig.class.getResourceAsStream("/application.properties")) {
+            if (in != null) {
+                PROPS.load(in);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error al leer application.properties", e);
+        }
+    }
+
+    public static String get(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = System.getenv(key.toUpperCase().replace('.', '_'));
+        }
+        if (value == null) {
+            value = PROPS.getProperty(key);
+        }
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = get(key, null);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+}
@@ -1,24 +1,173 @@
 package mprower.javaspark.config;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Pool de conexiones compartido por todos los repositorios.
+ * Antes se abría una conexión nueva con DriverManager en cada consulta; ahora las
+ * conexiones se reutilizan y se configuran desde application.properties (db.*).
+ */
 public class Database {
-    private static final String URL = "jdbc:mysql://localhost:3306/ecommerce";
-    private static final String USER = "root";
-    private static final String PASSWORD = "Carlish#13";
+    private static final PoolMetrics METRICS = new PoolMetrics();
+    // Sentencias preparadas que el driver guarda por conexión física (0 = sin caché)
+    private static final int CACHE_SENTENCIAS = tamanoCacheSentencias();
+    private static final HikariDataSource DATA_SOURCE = createDataSource();
+
+    // Máximo de conexiones en uso a la vez (db.maxConcurrent). Con hilos virtuales puede haber
+    // miles de peticiones simultáneas; las que exceden el límite esperan en una cola justa y
+    // fallan tras db.pool.acquireTimeoutMs en vez de amontonarse sobre el pool. 0 = sin límite extra.
+    // Nunca pasa de db.pool.maxSize: quien tiene permiso encuentra una conexión libre, así que la
+    // espera ocurre en esta cola y no también en la del pool. Solo si el pool está recreando
+    // conexiones (base caída) se espera en ambas, hasta 2 x acquireTimeoutMs en el peor caso.
+    private static final int MAX_CONCURRENTES = Math.min(DATA_SOURCE.getMaximumPoolSize(),
+            AppConfig.getInt("db.maxConcurrent",
+                    AppConfig.getBoolean("server.virtualThreads", false) ? DATA_SOURCE.getMaximumPoolSize() : 0));
+    private static final Semaphore PERMISOS = MAX_CONCURRENTES > 0 ? new Semaphore(MAX_CONCURRENTES, true) : null;
+    private static final long ESPERA_PERMISO_MS = AppConfig.getLong("db.pool.acquireTimeoutMs", 5_000);
 
-    // Cargar el driver una sola vez
+    // Tareas que necesitan la base de datos al apagar; corren antes de cerrar el pool
+    private static final List<Runnable> AL_CERRAR = new CopyOnWriteArrayList<>();
+
+    // Cerrar el pool al apagar la aplicación. Un solo hook: la JVM no ordena los hooks entre sí,
+    // así que uno aparte para escribir pendientes podría correr con el pool ya cerrado.
     static {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException("Error al cargar el driver de MySQL", e);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (Runnable tarea : AL_CERRAR) {
+                try {
+                    tarea.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Error al apagar: " + e.getMessage());
+                }
+            }
+            DATA_SOURCE.close();
+        }, "db-pool-shutdown"));
+    }
+
+    private static HikariDataSource createDataSource() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("ecommerce-pool");
+        config.setDriverClassName(AppConfig.get("db.driver", "com.mysql.cj.jdbc.Driver"));
+        config.setJdbcUrl(AppConfig.get("db.url", "jdbc:mysql://localhost:3306/ecommerce"));
+        config.setUsername(AppConfig.get("db.user", "root"));
+        config.setPassword(AppConfig.get("db.password", ""));
+
+        // Preparar en el servidor una vez por conexión y reutilizar (solo lo ofrece el driver de MySQL)
+        if (CACHE_SENTENCIAS > 0) {
+            config.addDataSourceProperty("useServerPrepStmts", "true");
+            config.addDataSourceProperty("cachePrepStmts", "true");
+            config.addDataSourceProperty("prepStmtCacheSize", String.valueOf(CACHE_SENTENCIAS));
+            config.addDataSourceProperty("prepStmtCacheSqlLimit",
+                    String.valueOf(AppConfig.getInt("db.statementCache.sqlLimit", 2048)));
+        }
+
+        // Tamaño del pool
+        config.setMinimumIdle(AppConfig.getInt("db.pool.minIdle", 2));
+        config.setMaximumPoolSize(AppConfig.getInt("db.pool.maxSize", 10));
+
+        // Tiempo máximo que un hilo espera por una conexión antes de fallar
+        config.setConnectionTimeout(AppConfig.getLong("db.pool.acquireTimeoutMs", 5_000));
+
+        // Desalojo de conexiones ociosas y renovación periódica
+        config.setIdleTimeout(AppConfig.getLong("db.pool.idleTimeoutMs", 300_000));
+        config.setMaxLifetime(AppConfig.getLong("db.pool.maxLifetimeMs", 1_800_000));
+
+        // Validación: si no hay consulta configurada se usa Connection.isValid() de JDBC4
+        String testQuery = AppConfig.get("db.pool.validationQuery", null);
+        if (testQuery != null && !testQuery.isEmpty()) {
+            config.setConnectionTestQuery(testQuery);
         }
+        config.setValidationTimeout(AppConfig.getLong("db.pool.validationTimeoutMs", 3_000));
+
+        // Avisar en el log si una conexión no se devuelve al pool a tiempo (0 = desactivado)
+        config.setLeakDetectionThreshold(AppConfig.getLong("db.pool.leakDetectionMs", 0));
+
+        // No tumbar el arranque si la base de datos aún no está disponible
+        config.setInitializationFailTimeout(-1);
+
+        config.setMetricsTrackerFactory(METRICS);
+        config.setRegisterMbeans(AppConfig.getBoolean("db.pool.jmx", true));
+        return new HikariDataSource(config);
+    }
+
+    private static int tamanoCacheSentencias() {
+        String url = AppConfig.get("db.url", "jdbc:mysql://localhost:3306/ecommerce");
+        return url.startsWith("jdbc:mysql:") ? Math.max(0, AppConfig.getInt("db.statementCache.size", 250)) : 0;
+    }
+
+    /**
+     * Registra una tarea que se ejecuta al apagar la aplicación, antes de cerrar el pool (por
+     * ejemplo, escribir lo que quedó pendiente en memoria).
+     */
+    public static void alCerrar(Runnable tarea) {
+        AL_CERRAR.add(tarea);
     }
 
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        if (PERMISOS == null) {
+            return DATA_SOURCE.getConnection();
+        }
+        try {
+            if (!PERMISOS.tryAcquire(ESPERA_PERMISO_MS, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException(
+                        "Demasiadas consultas simultáneas (db.maxConcurrent=" + MAX_CONCURRENTES + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrumpido esperando una conexión", e);
+        }
+        try {
+            return liberarAlCerrar(DATA_SOURCE.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            PERMISOS.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Envuelve la conexión para que close() devuelva el permiso (una sola vez).
+     */
+    private static Connection liberarAlCerrar(Connection conn) {
+        AtomicBoolean liberado = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, metodo, argumentos) -> {
+                    try {
+                        return metodo.invoke(conn, argumentos);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        if (metodo.getName().equals("close") && liberado.compareAndSet(false, true)) {
+                            PERMISOS.release();
+                        }
+                    }
+                });
+    }
+
+    /** Sentencias que el driver guarda por conexión, o 0 si la caché está desactivada. */
+    public static int getCacheSentencias() {
+        return CACHE_SENTENCIAS;
+    }
+
+    /** Peticiones esperando turno por el límite db.maxConcurrent (0 si no hay límite). */
+    public static int getEsperandoPermiso() {
+        return PERMISOS != null ? PERMISOS.getQueueLength() : 0;
+    }
+
+    /**
+     * Métricas en vivo del pool: conexiones activas, ociosas, hilos en espera y latencia de adquisición.
+     */
+    public static PoolMetrics.Snapshot getPoolStats() {
+        return METRICS.snapshot(DATA_SOURCE.getHikariPoolMXBean());
     }
-}
\ No newline at end of file
+}
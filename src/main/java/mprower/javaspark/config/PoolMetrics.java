@@ -0,0 +1,103 @@
+package mprower.javaspark.config;
+
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recolecta las métricas del pool de conexiones (latencia de adquisición,
+ * tiempo de uso, timeouts). HikariCP llama a estos métodos en cada préstamo,
+ * por eso solo usamos contadores sin bloqueo.
+ */
+public class PoolMetrics implements MetricsTrackerFactory {
+
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireNanosTotal = new LongAdder();
+    private final AtomicLong acquireNanosMax = new AtomicLong();
+    private final LongAdder usageMillisTotal = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                created.increment();
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquireCount.increment();
+                acquireNanosTotal.add(elapsedAcquiredNanos);
+                acquireNanosMax.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usageMillisTotal.add(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    /**
+     * Toma una foto del estado actual del pool junto con los contadores acumulados.
+     */
+    public Snapshot snapshot(HikariPoolMXBean pool) {
+        Snapshot s = new Snapshot();
+        if (pool != null) {
+            s.active = pool.getActiveConnections();
+            s.idle = pool.getIdleConnections();
+            s.total = pool.getTotalConnections();
+            s.waiters = pool.getThreadsAwaitingConnection();
+        }
+        s.acquireCount = acquireCount.sum();
+        s.acquireNanosTotal = acquireNanosTotal.sum();
+        s.acquireNanosMax = acquireNanosMax.get();
+        s.usageMillisTotal = usageMillisTotal.sum();
+        s.timeouts = timeouts.sum();
+        s.connectionsCreated = created.sum();
+        return s;
+    }
+
+    /**
+     * Estado del pool en un instante dado. Solo PoolMetrics escribe los campos; /metrics los lee
+     * con los getters (si se serializara con Gson, saldrían los campos privados tal cual).
+     */
+    public static class Snapshot {
+        private int active;
+        private int idle;
+        private int total;
+        private int waiters;
+        private long acquireCount;
+        private long acquireNanosTotal;
+        private long acquireNanosMax;
+        private long usageMillisTotal;
+        private long timeouts;
+        private long connectionsCreated;
+
+        public int getActive() { return active; }
+        public int getIdle() { return idle; }
+        public int getTotal() { return total; }
+        public int getWaiters() { return waiters; }
+        public long getAcquireCount() { return acquireCount; }
+        public long getAcquireNanosTotal() { return acquireNanosTotal; }
+        public long getAcquireNanosMax() { return acquireNanosMax; }
+        public long getUsageMillisTotal() { return usageMillisTotal; }
+        public long getTimeouts() { return timeouts; }
+        public long getConnectionsCreated() { return connectionsCreated; }
+
+        public double getAcquireMillisAvg() {
+            return acquireCount == 0 ? 0 : (acquireNanosTotal / (double) acquireCount) / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package mprower.javaspark.config;
+
+import com.mysql.cj.jdbc.JdbcConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registro de las sentencias SQL fijas de los repositorios.
+ * <p>
+ * Cada repositorio declara su SQL una sola vez como constante y la prepara con
+ * {@link Sentencia#preparar}. Con MySQL, el pool pide al driver sentencias preparadas en el
+ * servidor y guardadas por conexión física (db.statementCache.*), así que desde la segunda vez
+ * que una conexión prepara el mismo texto ya no hay análisis ni plan nuevo.
+ * <p>
+ * El driver no expone los aciertos de su caché. Lo que se cuenta aquí, por sentencia, es si la
+ * preparación fue la primera de ese texto en esa conexión física (siempre va al servidor) o una
+ * repetida (la que la caché puede resolver). Las repetidas son un máximo de los aciertos: si hay
+ * más textos que db.statementCache.size, el driver desaloja y alguna repetida vuelve al servidor.
+ * <p>
+ * Las consultas con un número variable de marcadores (IN (?, ?, ...), inserciones de varias
+ * filas, páginas con columnas y orden a elección) no se registran: cada variante es un texto
+ * distinto. Se preparan con {@link #prepararVariable}, del lado del cliente.
+ */
+public final class Sentencias {
+
+    private static final Map<String, Sentencia> REGISTRADAS = new ConcurrentHashMap<>();
+    private static final LongAdder VARIABLES = new LongAdder();
+
+    private Sentencias() {
+    }
+
+    /**
+     * @param nombre Nombre para las métricas, como "ProductoRepository.getProductoById".
+     * @throws IllegalStateException si ya hay una sentencia con ese nombre.
+     */
+    public static Sentencia registrar(String nombre, String sql) {
+        Sentencia sentencia = new Sentencia(sql);
+        if (REGISTRADAS.putIfAbsent(nombre, sentencia) != null) {
+            throw new IllegalStateException("Sentencia registrada dos veces: " + nombre);
+        }
+        return sentencia;
+    }
+
+    /** Sentencias registradas, ordenadas por nombre. */
+    public static Map<String, Sentencia> getRegistradas() {
+        return new TreeMap<>(REGISTRADAS);
+    }
+
+    /**
+     * Prepara una consulta de texto variable. Con la caché del driver activa, preparar en el
+     * servidor un texto que casi no se repite cuesta un viaje más (PREPARE antes de ejecutar) y
+     * ocupa un lugar en la caché de la conexión, que desaloja a las registradas. Aquí el driver
+     * la prepara del lado del cliente: envía la consulta con los parámetros ya escapados en un
+     * solo viaje y no la guarda. Hay que cerrarla (try-with-resources), el pool no la sigue.
+     */
+    public static PreparedStatement prepararVariable(Connection conn, String sql) throws SQLException {
+        VARIABLES.increment();
+        if (Database.getCacheSentencias() > 0 && conn.isWrapperFor(JdbcConnection.class)) {
+            return conn.unwrap(JdbcConnection.class).clientPrepareStatement(sql);
+        }
+        return conn.prepareStatement(sql);
+    }
+
+    /** Consultas de texto variable preparadas con {@link #prepararVariable}. */
+    public static long getVariables() {
+        return VARIABLES.sum();
+    }
+
+    /**
+     * Una consulta registrada, con sus preparaciones separadas en primeras y repetidas por
+     * conexión física.
+     */
+    public static final class Sentencia {
+        private final String sql;
+        // Conexiones físicas donde ya se preparó; las que el pool cierra se van solas
+        private final Set<Connection> preparadaEn = Collections.synchronizedSet(
+                Collections.newSetFromMap(new WeakHashMap<>()));
+        private final LongAdder primeras = new LongAdder();
+        private final LongAdder repetidas = new LongAdder();
+
+        private Sentencia(String sql) {
+            this.sql = sql;
+        }
+
+        public PreparedStatement preparar(Connection conn) throws SQLException {
+            contar(conn);
+            return conn.prepareStatement(sql);
+        }
+
+        /** @param autoGeneratedKeys Por ejemplo Statement.RETURN_GENERATED_KEYS. */
+        public PreparedStatement preparar(Connection conn, int autoGeneratedKeys) throws SQLException {
+            contar(conn);
+            return conn.prepareStatement(sql, autoGeneratedKeys);
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        /** Preparaciones que fueron las primeras de esta sentencia en su conexión física. */
+        public long getPrimeras() {
+            return primeras.sum();
+        }
+
+        /** Preparaciones en una conexión física donde esta sentencia ya se había preparado. */
+        public long getRepetidas() {
+            return repetidas.sum();
+        }
+
+        private void contar(Connection conn) throws SQLException {
+            // La conexión del pool es un envoltorio que cambia en cada préstamo; la caché es de la física
+            if (preparadaEn.add(conn.unwrap(Connection.class))) {
+                primeras.increment();
+            } else {
+                repetidas.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package mprower.javaspark.config;
+
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool de hilos de Jetty que ejecuta cada petición en un hilo virtual (Java 21+).
+ * <p>
+ * Las rutas bloquean en JDBC, así que con el pool fijo de Jetty el throughput queda limitado
+ * por el número de hilos. Con hilos virtuales un bloqueo solo estaciona el hilo virtual y
+ * libera el hilo del sistema. Lo que sí hay que acotar es la concurrencia hacia la base de
+ * datos (db.maxConcurrent en Database) para que miles de hilos virtuales no la saturen.
+ * <p>
+ * La API de hilos virtuales se obtiene por reflexión para que el proyecto siga compilando
+ * para Java 17 y funcionando en él; en ese caso el modo simplemente no se activa.
+ * <p>
+ * Los aceptadores y selectores de Jetty no pasan a hilos virtuales: pasan su vida bloqueados en
+ * accept() y Selector.select(), que fijan el hilo virtual a su carrier (o hacen que el scheduler
+ * agregue uno de compensación). Corren en un QueuedThreadPool pequeño de hilos normales
+ * (server.virtualThreads.ioThreads), como hace VirtualThreads en Jetty 12. Jetty 9.4 no marca
+ * esas tareas, así que se reconocen por su clase (ver esDeInfraestructura). Como este pool no
+ * es un TryExecutor, EatWhatYouKill nunca le cede la selección a otro hilo: el selector se
+ * queda en su hilo normal y cada petición leída se despacha con execute() a un hilo virtual.
+ * <p>
+ * Es un componente de Jetty: al detener el servidor se cierra el executor y el pool de los
+ * selectores, y así terminan también join() y stop().
+ */
+public class VirtualThreadPool extends ContainerLifeCycle implements ThreadPool {
+
+    private static final long ESPERA_CIERRE_MS = 30_000;
+
+    private final ExecutorService executor;
+    private final QueuedThreadPool plataforma;
+    private final AtomicInteger activos = new AtomicInteger();
+
+    VirtualThreadPool(ExecutorService executor, int hilosPlataforma) {
+        this.executor = executor;
+        this.plataforma = new QueuedThreadPool(hilosPlataforma, Math.min(2, hilosPlataforma));
+        this.plataforma.setName("http-io");
+        addBean(plataforma);
+    }
+
+    /**
+     * Registra en Spark un servidor Jetty que usa hilos virtuales. Debe llamarse antes de
+     * declarar la primera ruta, que es cuando Spark arranca el servidor.
+     * @return true si se activó, false si la JVM no soporta hilos virtuales.
+     */
+    public static boolean instalar() {
+        // Diagnóstico de pinning: avisa cuando un hilo virtual se bloquea dentro de un synchronized
+        String tracePinned = AppConfig.get("server.virtualThreads.tracePinned", "");
+        if (!tracePinned.isEmpty() && System.getProperty("jdk.tracePinnedThreads") == null) {
+            System.setProperty("jdk.tracePinnedThreads", tracePinned);
+        }
+
+        ExecutorService executor = executorVirtual("http-vt-");
+        if (executor == null) {
+            System.err.println("Hilos virtuales no disponibles en Java " + Runtime.version().feature()
+                    + "; se usa el pool de hilos normal de Jetty.");
+            return false;
+        }
+        EmbeddedServers.add(EmbeddedServers.defaultIdentifier(),
+                new EmbeddedJettyFactory().withThreadPool(new VirtualThreadPool(executor,
+                        AppConfig.getInt("server.virtualThreads.ioThreads", 8))));
+        System.out.println("Peticiones HTTP atendidas con hilos virtuales");
+        return true;
+    }
+
+    /**
+     * Equivale a Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefijo, 0).factory()),
+     * o null si la JVM es anterior a Java 21.
+     */
+    private static ExecutorService executorVirtual(String prefijo) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefijo, 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Aceptadores (AbstractConnector$Acceptor), el productor de cada selector (lambda de
+     * ManagedSelector) y las tareas cortas del selector (CreateEndPoint, DestroyEndPoint), y el
+     * propio EatWhatYouKill si alguna vez se despacha como productor.
+     */
+    static boolean esDeInfraestructura(Runnable tarea) {
+        String clase = tarea.getClass().getName();
+        return clase.startsWith("org.eclipse.jetty.server.AbstractConnector$Acceptor")
+                || clase.startsWith("org.eclipse.jetty.io.ManagedSelector")
+                || clase.startsWith("org.eclipse.jetty.util.thread.strategy.EatWhatYouKill");
+    }
+
+    @Override
+    public void execute(Runnable tarea) {
+        if (esDeInfraestructura(tarea)) {
+            plataforma.execute(tarea);
+            return;
+        }
+        executor.execute(() -> {
+            activos.incrementAndGet();
+            try {
+                tarea.run();
+            } finally {
+                activos.decrementAndGet();
+            }
+        });
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        while (!executor.awaitTermination(1, TimeUnit.DAYS)) {
+            // Sigue esperando hasta que stop() cierre el executor
+        }
+        plataforma.join();
+    }
+
+    /**
+     * Deja terminar las peticiones en curso y, si no terminan a tiempo, las interrumpe. Los
+     * selectores se detienen después (super.doStop), cuando ya no queda nada que despachar.
+     */
+    @Override
+    protected void doStop() throws Exception {
+        executor.shutdown();
+        if (!executor.awaitTermination(ESPERA_CIERRE_MS, TimeUnit.MILLISECONDS)) {
+            executor.shutdownNow();
+        }
+        super.doStop();
+    }
+
+    /** Peticiones en curso más los hilos normales de aceptadores y selectores. */
+    @Override
+    public int getThreads() {
+        return activos.get() + plataforma.getThreads();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return plataforma.getIdleThreads();
+    }
+
+    /** Nunca faltan hilos: se crea uno virtual por tarea. */
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+}
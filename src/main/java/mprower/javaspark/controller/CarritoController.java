@@ -1,15 +1,21 @@
 package mprower.javaspark.controller;
 import mprower.javaspark.model.Producto;
 import com.google.gson.Gson;
+import mprower.javaspark.config.AppConfig;
+import mprower.javaspark.inventory.StockInsuficienteException;
 import mprower.javaspark.model.CarritoItem;
 import mprower.javaspark.model.Venta;                 // <-- NUEVO IMPORT
 import mprower.javaspark.repository.CarritoRepository;
-import mprower.javaspark.repository.VentaRepository;   // <-- NUEVO IMPORT
+import mprower.javaspark.repository.CheckoutPipeline;
 import mprower.javaspark.util.Auth;
+import mprower.javaspark.util.Compresion;
 import mprower.javaspark.util.ErrorResponse;
 import spark.Request;
+import spark.Response;
 
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
 
 import static spark.Spark.*;
 
@@ -19,12 +25,11 @@ import static spark.Spark.*;
 public class CarritoController {
 
     private final CarritoRepository repository;
-    private final VentaRepository ventaRepository; // <-- NUEVA INSTANCIA
     private final Gson gson;
+    private final int maxItemsLote = AppConfig.getInt("cart.batch.maxItems", 100);
 
     public CarritoController() {
         this.repository = new CarritoRepository();
-        this.ventaRepository = new VentaRepository(); // <-- INICIALIZACIÓN
         this.gson = new Gson();
         initializeRoutes();
     }
@@ -58,6 +63,7 @@ public class CarritoController {
                 }
 
                 CarritoItem nuevoItem = repository.agregarAlCarrito(clienteId, data.idProducto, data.cantidad);
+                // 201 aunque la línea ya existiera: devuelve la línea con la cantidad total
                 res.status(201);
                 return gson.toJson(nuevoItem);
             } catch (Exception e) {
@@ -65,11 +71,48 @@ public class CarritoController {
                     res.status(401);
                     return gson.toJson(new ErrorResponse("401", "Token inválido o expirado: " + e.getMessage()));
                 }
+                if (e instanceof StockInsuficienteException) {
+                    res.status(409);
+                    return gson.toJson(new ErrorResponse("409", e.getMessage()));
+                }
+                if (e instanceof IllegalArgumentException) {
+                    res.status(400);
+                    return gson.toJson(new ErrorResponse("400", e.getMessage()));
+                }
                 res.status(500);
                 return gson.toJson(new ErrorResponse("500", "Error al agregar al carrito: " + e.getMessage()));
             }
         });
 
+        /**
+         * POST /api/carrito/batch — Agrega varios productos con una sola autenticación y una
+         * transacción. Body: {"items": [{"idProducto": 1, "cantidad": 2}, ...]}.
+         * Responde con un resultado por item (status 201, o 400/404/409 con su error).
+         */
+        post("/api/carrito/batch", (req, res) -> {
+            res.type("application/json");
+            try {
+                int clienteId = autenticar(req);
+                BatchRequest data = gson.fromJson(req.body(), BatchRequest.class);
+                String invalido = validarLote(data);
+                if (invalido != null) {
+                    res.status(400);
+                    return gson.toJson(new ErrorResponse("400", invalido));
+                }
+                List<CarritoItem> items = new ArrayList<>(data.items.size());
+                for (BatchItem b : data.items) {
+                    CarritoItem item = new CarritoItem();
+                    item.id_cli = clienteId;
+                    item.id_pro = b.idProducto;
+                    item.cantidad = b.cantidad;
+                    items.add(item);
+                }
+                return gson.toJson(new BatchResponse(repository.agregarVarios(clienteId, items)));
+            } catch (Exception e) {
+                return errorLote(res, e, "Error al agregar al carrito: ");
+            }
+        });
+
         /**
          * GET /api/carrito — Obtener todos los items del carrito.
          * MODIFICADO: Se quita la autenticación y se simula el cliente 1.
@@ -78,7 +121,7 @@ public class CarritoController {
             res.type("application/json");
             try {
                 int clienteId = 1; // <<-- ¡CAMBIO REALIZADO!
-                return gson.toJson(repository.getCarritoByClienteId(clienteId));
+                return Compresion.responder(req, res, gson.toJson(repository.getCarritoByClienteId(clienteId)));
             } catch (Exception e) {
                 // El error de JWT ya no puede ocurrir aquí, pero dejamos el catch general
                 res.status(500);
@@ -95,7 +138,8 @@ public class CarritoController {
             try {
                 int idProducto = Integer.parseInt(req.queryParams("id"));
                 int cantidad = 1;
-                repository.agregarAlCarrito(clienteId, idProducto, cantidad);
+                // Los clics repetidos se suman en memoria y se escriben juntos
+                repository.agregarDiferido(clienteId, idProducto, cantidad);
                 System.out.println("FORMULARIO HTML: Producto ID " + idProducto + " agregado al carrito del cliente ID " + clienteId);
                 res.redirect("/catalog?status=success");
                 return null;
@@ -115,8 +159,9 @@ public class CarritoController {
             Integer clienteId = 1; // Simula siempre el cliente 1
 
             try {
-                // Llamamos al nuevo método en VentaRepository
-                Venta nuevaVenta = ventaRepository.crearVentaDesdeCarrito(clienteId);
+                // La compra se confirma junto con otras concurrentes (group commit) y descuenta
+                // sus unidades del catálogo en memoria
+                Venta nuevaVenta = CheckoutPipeline.getInstance().comprar(clienteId);
 
                 // Redirigir a una página de éxito (que crearemos más tarde)
                 res.redirect("/compra-exitosa?folio=" + nuevaVenta.getFolio());
@@ -132,6 +177,35 @@ public class CarritoController {
 
         // --- RESTO DE ENDPOINTS DE LA API ---
 
+        /**
+         * PUT /api/carrito/batch — Cambia la cantidad de varias líneas del carrito del cliente
+         * en una transacción (0 elimina la línea). Body: {"items": [{"id": 7, "cantidad": 3}, ...]}.
+         * Va antes de PUT /api/carrito/:id para que "batch" no se tome como un ID.
+         */
+        put("/api/carrito/batch", (req, res) -> {
+            res.type("application/json");
+            try {
+                int clienteId = autenticar(req);
+                BatchRequest data = gson.fromJson(req.body(), BatchRequest.class);
+                String invalido = validarLote(data);
+                if (invalido != null) {
+                    res.status(400);
+                    return gson.toJson(new ErrorResponse("400", invalido));
+                }
+                List<CarritoItem> items = new ArrayList<>(data.items.size());
+                for (BatchItem b : data.items) {
+                    CarritoItem item = new CarritoItem();
+                    item.id = b.id;
+                    item.id_cli = clienteId;
+                    item.cantidad = b.cantidad;
+                    items.add(item);
+                }
+                return gson.toJson(new BatchResponse(repository.actualizarVarios(clienteId, items)));
+            } catch (Exception e) {
+                return errorLote(res, e, "Error al actualizar el carrito: ");
+            }
+        });
+
         put("/api/carrito/:id", (req, res) -> {
             res.type("application/json");
             try {
@@ -146,6 +220,10 @@ public class CarritoController {
                     return gson.toJson(new ErrorResponse("404", "Item del carrito no encontrado."));
                 }
             } catch (Exception e) {
+                if (e instanceof StockInsuficienteException) {
+                    res.status(409);
+                    return gson.toJson(new ErrorResponse("409", e.getMessage()));
+                }
                 return gson.toJson(new ErrorResponse("500", "Error al actualizar la cantidad: " + e.getMessage()));
             }
         });
@@ -168,6 +246,32 @@ public class CarritoController {
         });
     }
 
+    private String validarLote(BatchRequest data) {
+        if (data == null || data.items == null || data.items.isEmpty()) {
+            return "El cuerpo debe incluir una lista 'items' con al menos un elemento.";
+        }
+        if (data.items.size() > maxItemsLote) {
+            return "Se permiten como máximo " + maxItemsLote + " items por petición.";
+        }
+        if (data.items.contains(null)) {
+            return "La lista 'items' no puede contener elementos vacíos.";
+        }
+        return null;
+    }
+
+    private String errorLote(Response res, Exception e, String mensaje) {
+        if (e instanceof com.auth0.jwt.exceptions.JWTVerificationException) {
+            res.status(401);
+            return gson.toJson(new ErrorResponse("401", "Token inválido o expirado: " + e.getMessage()));
+        }
+        if (e instanceof com.google.gson.JsonSyntaxException) {
+            res.status(400);
+            return gson.toJson(new ErrorResponse("400", "Cuerpo de la petición (Body) mal formado."));
+        }
+        res.status(500);
+        return gson.toJson(new ErrorResponse("500", mensaje + e.getMessage()));
+    }
+
     // --- Clases internas para representar los cuerpos de las peticiones (Request Bodies) ---
     private static class AddItemRequest {
         int idProducto;
@@ -178,6 +282,33 @@ public class CarritoController {
         int cantidad;
     }
 
+    private static class BatchRequest {
+        List<BatchItem> items;
+    }
+
+    private static class BatchItem {
+        int id;
+        int idProducto;
+        int cantidad;
+    }
+
+    private static class BatchResponse {
+        int exitosos;
+        int fallidos;
+        List<CarritoRepository.ResultadoLinea> resultados;
+
+        BatchResponse(List<CarritoRepository.ResultadoLinea> resultados) {
+            this.resultados = resultados;
+            for (CarritoRepository.ResultadoLinea r : resultados) {
+                if (r.isExito()) {
+                    exitosos++;
+                } else {
+                    fallidos++;
+                }
+            }
+        }
+    }
+
     private static class StatusResponse {
         String message;
         StatusResponse(String message) { this.message = message; }
@@ -6,8 +6,9 @@ import mprower.javaspark.model.Cliente;
 import mprower.javaspark.repository.ClienteRepository;
 import mprower.javaspark.util.Auth;
 import mprower.javaspark.util.ErrorResponse;
-import org.mindrot.jbcrypt.BCrypt;
+import mprower.javaspark.util.PasswordHasher;
 import spark.ModelAndView;
+import spark.Response;
 import spark.template.mustache.MustacheTemplateEngine;
 
 import java.util.HashMap;
@@ -37,6 +38,15 @@ public class ClienteController {
                 String numero = req.queryParams("numero");
                 String password = req.queryParams("password");
 
+                if (nombre == null || nombre.isBlank()) {
+                    res.status(400);
+                    return gson.toJson(new ErrorResponse("400", "Customer name is required"));
+                }
+                if (repository.existeNombre(nombre)) {
+                    res.status(409);
+                    return gson.toJson(new ErrorResponse("409", "Customer name already registered"));
+                }
+
                 // Crear cliente
                 Cliente nuevoCliente = new Cliente();
                 nuevoCliente.setNombre(nombre);
@@ -50,6 +60,8 @@ public class ClienteController {
                 //res.redirect("/login");
                 //return gson.toJson(clienteRegistrado);
                 return gson.toJson(Map.of("success", true, "redirectUrl", "/login"));
+            } catch (PasswordHasher.SaturadoException e) {
+                return saturado(res, e);
             } catch (Exception e) {
                 res.status(500);
                 return gson.toJson(new ErrorResponse("500", "Error registering customer: " + e.getMessage()));
@@ -65,8 +77,16 @@ public class ClienteController {
 
                 Optional<Cliente> clienteOpt = repository.findByNombre(nombre);
 
-                if (clienteOpt.isPresent() && BCrypt.checkpw(password, clienteOpt.get().getPassword())) {
+                if (clienteOpt.isPresent() && PasswordHasher.verificar(password, clienteOpt.get().getPassword(), "login")) {
                     Cliente cliente = clienteOpt.get();
+                    repository.recordarAutenticado(cliente);
+
+                    // Si cambió security.bcrypt.cost, se aprovecha que tenemos la contraseña en claro
+                    if (PasswordHasher.necesitaRehash(cliente.getPassword())) {
+                        int id = cliente.getId();
+                        PasswordHasher.rehashEnSegundoPlano(password, "login-rehash",
+                                hash -> repository.actualizarPassword(id, hash));
+                    }
                     String token = Auth.generateToken(cliente.getId(), cliente.getNombre());
 
                     // Puedes redirigir al catálogo o devolver el token
@@ -77,12 +97,33 @@ public class ClienteController {
                     res.status(401);
                     return gson.toJson(new ErrorResponse("401", "Incorrect credentials"));
                 }
+            } catch (PasswordHasher.SaturadoException e) {
+                return saturado(res, e);
             } catch (Exception e) {
                 res.status(500);
                 return gson.toJson(new ErrorResponse("500", "Login error: " + e.getMessage()));
             }
         });
 
+        // Revoca el token JWT de la petición para que no se pueda volver a usar
+        post("/api/logout", (req, res) -> {
+            res.type("application/json");
+            String header = req.headers("Authorization");
+            if (header == null || !header.startsWith("Bearer ") || !Auth.revocarToken(header.substring(7))) {
+                res.status(401);
+                return gson.toJson(new ErrorResponse("401", "Token de autorización no provisto o inválido."));
+            }
+            return gson.toJson(Map.of("success", true, "redirectUrl", "/login"));
+        });
+
     }
 
-}
\ No newline at end of file
+    /**
+     * Respuesta cuando el pool de BCrypt está lleno: 503 con Retry-After para que el cliente espere.
+     */
+    private String saturado(Response res, PasswordHasher.SaturadoException e) {
+        res.status(503);
+        res.header("Retry-After", String.valueOf(e.getRetryAfterSegundos()));
+        return gson.toJson(new ErrorResponse("503", e.getMessage()));
+    }
+}
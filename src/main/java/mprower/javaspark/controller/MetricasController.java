@@ -0,0 +1,90 @@
+package mprower.javaspark.controller;
+
+import mprower.javaspark.assets.Miniaturas;
+import mprower.javaspark.assets.RecursosEstaticos;
+import mprower.javaspark.config.AppConfig;
+import mprower.javaspark.config.Database;
+import mprower.javaspark.config.PoolMetrics;
+import mprower.javaspark.config.Sentencias;
+import mprower.javaspark.inventory.Inventario;
+import mprower.javaspark.metrics.FormatoPrometheus;
+import mprower.javaspark.metrics.Metricas;
+import mprower.javaspark.repository.CarritoBuffer;
+import mprower.javaspark.util.Auth;
+import mprower.javaspark.util.PasswordHasher;
+import spark.Request;
+import spark.Response;
+
+import static spark.Spark.*;
+
+/**
+ * Mide cada petición con filtros before/afterAfter y exporta las métricas en GET /metrics
+ * (formato de texto de Prometheus). Debe crearse antes que los demás filtros y rutas para
+ * que la medición incluya su tiempo.
+ */
+public class MetricasController {
+
+    private static final String INICIO = "metricas.inicio";
+
+    private final Metricas metricas = Metricas.getInstance();
+    // Si hay token, /metrics exige "Authorization: Bearer <token>"
+    private final String token = AppConfig.get("metrics.token", "");
+
+    public MetricasController() {
+        before((req, res) -> {
+            metricas.peticionIniciada();
+            req.attribute(INICIO, System.nanoTime());
+        });
+        // afterAfter corre también tras un halt, una excepción o una respuesta ya enviada
+        afterAfter(this::registrar);
+        get("/metrics", this::exportar);
+    }
+
+    private void registrar(Request req, Response res) {
+        Long inicio = req.attribute(INICIO);
+        if (inicio == null) {
+            return;
+        }
+        req.raw().removeAttribute(INICIO); // Contar la petición una sola vez
+        metricas.peticionTerminada(req.requestMethod(), req.pathInfo(), res.raw().getStatus(),
+                System.nanoTime() - inicio);
+    }
+
+    private Object exportar(Request req, Response res) {
+        if (!token.isEmpty() && !("Bearer " + token).equals(req.headers("Authorization"))) {
+            res.status(401);
+            return "";
+        }
+        FormatoPrometheus salida = new FormatoPrometheus().metricas(metricas)
+                .sentencias(Sentencias.getRegistradas(), Sentencias.getVariables(), Database.getCacheSentencias())
+                .bcrypt(PasswordHasher.getMetricas())
+                .jvm();
+
+        PoolMetrics.Snapshot pool = Database.getPoolStats();
+        salida.medidor("db_pool_connections_active", "Conexiones prestadas.", pool.getActive())
+                .medidor("db_pool_connections_idle", "Conexiones libres en el pool.", pool.getIdle())
+                .medidor("db_pool_connections_pending", "Hilos esperando una conexión.", pool.getWaiters())
+                .medidor("db_permits_pending", "Peticiones esperando turno por db.maxConcurrent.",
+                        Database.getEsperandoPermiso())
+                .contador("db_pool_acquire_total", "Conexiones obtenidas del pool.", pool.getAcquireCount())
+                .contador("db_pool_acquire_seconds_total", "Tiempo total esperando conexiones.",
+                        pool.getAcquireNanosTotal() / 1e9)
+                .contador("db_pool_timeouts_total", "Esperas por conexión que vencieron.", pool.getTimeouts())
+                .medidor("bcrypt_queue_size", "Operaciones de BCrypt en cola.", PasswordHasher.getEnCola())
+                .medidor("bcrypt_active", "Operaciones de BCrypt en curso.", PasswordHasher.getActivas())
+                .contador("bcrypt_rejected_total", "Operaciones de BCrypt rechazadas por saturación.",
+                        PasswordHasher.getRechazadas())
+                .contador("auth_token_cache_hits_total", "Tokens resueltos desde la caché.", Auth.getTokenCacheHits())
+                .contador("auth_token_cache_misses_total", "Tokens verificados con su firma.", Auth.getTokenCacheMisses())
+                .medidor("cart_pending_units", "Unidades agregadas al carrito aún sin escribir.",
+                        CarritoBuffer.getInstance().getUnidadesPendientes())
+                .medidor("inventory_reservations_active", "Reservas de stock vigentes.",
+                        Inventario.getInstance().getReservasActivas())
+                .medidor("assets_files", "Archivos estáticos con huella.", RecursosEstaticos.getInstance().getArchivos())
+                .medidor("thumbnails_cache_bytes", "Bytes de miniaturas en disco.", Miniaturas.getInstance().getBytesEnDisco())
+                .medidor("thumbnails_cache_files", "Miniaturas en disco.", Miniaturas.getInstance().getVariantes());
+
+        res.type(FormatoPrometheus.TIPO);
+        return salida.toString();
+    }
+}
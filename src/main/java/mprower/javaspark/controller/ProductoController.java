@@ -1,30 +1,133 @@
 package mprower.javaspark.controller;
 
 import com.google.gson.Gson;
+import mprower.javaspark.cache.CatalogoCache;
+import mprower.javaspark.cache.RespuestaCache;
+import mprower.javaspark.config.AppConfig;
+import mprower.javaspark.model.PaginaProductos;
+import mprower.javaspark.repository.ConsultaProductos;
 import mprower.javaspark.repository.ProductoRepository;
+import mprower.javaspark.search.BuscadorCatalogo;
+import mprower.javaspark.util.Compresion;
 import mprower.javaspark.util.ErrorResponse;
+import mprower.javaspark.util.JsonStream;
 import mprower.javaspark.model.Producto;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 import static spark.Spark.*;
 
 public class ProductoController {
 
+    private final CatalogoCache catalogo;
+    private final BuscadorCatalogo buscador;
+    private final RespuestaCache respuestas;
     private final ProductoRepository repository;
+    private final boolean streaming;
     private final Gson gson;
 
     public ProductoController() {
+        this.catalogo = CatalogoCache.getInstance();
+        this.buscador = BuscadorCatalogo.getInstance();
+        this.respuestas = new RespuestaCache(AppConfig.getInt("api.cache.maxEntries", 10_000));
         this.repository = new ProductoRepository();
+        this.streaming = AppConfig.getBoolean("api.productos.stream", false);
         this.gson = new Gson();
         initializeRoutes();
     }
 
+    private static boolean esConsultaPaginada(Request req) {
+        return req.queryParams("limit") != null || req.queryParams("after") != null
+                || req.queryParams("sort") != null || req.queryParams("fields") != null;
+    }
+
+    /**
+     * Devuelve una página del catálogo: GET /api/productos?limit=20&after=...&sort=-precio&fields=id,nombre,precio
+     * El orden, el cursor y la proyección se resuelven en SQL; solo se serializan los campos pedidos.
+     */
+    private Object paginaProductos(Request req, Response res) {
+        ConsultaProductos consulta;
+        try {
+            consulta = ConsultaProductos.desdeParametros(req.queryParams("limit"), req.queryParams("after"),
+                    req.queryParams("sort"), req.queryParams("fields"));
+        } catch (IllegalArgumentException e) {
+            res.status(400);
+            return gson.toJson(new ErrorResponse("400", "Invalid query: " + e.getMessage()));
+        }
+        try {
+            PaginaProductos pagina = repository.getPagina(consulta);
+            List<Map<String, Object>> items = new ArrayList<>(pagina.getProductos().size());
+            for (Producto p : pagina.getProductos()) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                for (ConsultaProductos.Campo campo : consulta.campos) {
+                    item.put(campo.getNombre(), valorDe(p, campo));
+                }
+                items.add(item);
+            }
+            Map<String, Object> respuesta = new LinkedHashMap<>();
+            respuesta.put("items", items);
+            respuesta.put("nextCursor", pagina.getSiguiente());
+            return Compresion.responder(req, res, gson.toJson(respuesta));
+        } catch (Exception e) {
+            res.status(500);
+            return gson.toJson(new ErrorResponse("500", "Error retrieving products"));
+        }
+    }
+
+    private static Object valorDe(Producto p, ConsultaProductos.Campo campo) {
+        switch (campo) {
+            case NOMBRE: return p.getNombre();
+            case PRECIO: return p.getPrecio();
+            case FOTO: return p.getFoto();
+            case CANTIDAD: return p.getCantidad();
+            case DESCRIPCION: return p.getDescripcion();
+            default: return p.getId();
+        }
+    }
+
+    /**
+     * Escribe el catálogo directo desde la base de datos a la respuesta, fila por fila,
+     * sin pasar por el snapshot ni construir el JSON completo en memoria.
+     */
+    private Object streamProductos(Request req, Response res) {
+        JsonStream salida = new JsonStream(req, res, gson, Producto.class);
+        try {
+            repository.recorrerProductos(salida::escribir);
+            salida.terminar();
+            return "";
+        } catch (Exception e) {
+            if (salida.iniciado()) {
+                // Ya no se puede cambiar el status: el cliente recibe un arreglo sin cerrar
+                System.err.println("Error a mitad del streaming de productos: " + e.getMessage());
+                return "";
+            }
+            res.status(500);
+            return gson.toJson(new ErrorResponse("500", "Error retrieving products"));
+        }
+    }
+
     private void initializeRoutes() {
         // Obtener todos los productos (catálogo)
         get("/api/productos", (req, res) -> {
             res.type("application/json");
+            if (esConsultaPaginada(req)) {
+                return paginaProductos(req, res);
+            }
+            if (streaming || "true".equals(req.queryParams("stream"))) {
+                return streamProductos(req, res);
+            }
             try {
-                return gson.toJson(repository.getAllProductos());
+                // Se sirve la respuesta ya serializada; 304 si el cliente tiene la misma versión
+                Collection<Producto> productos = catalogo.getSnapshot().getProductos();
+                return RespuestaCache.responder(req, res,
+                        respuestas.obtener("productos", productos, () -> gson.toJson(productos)));
             } catch (Exception e) {
                 res.status(500);
                 return gson.toJson(new ErrorResponse("500", "Error retrieving products"));
@@ -36,12 +139,14 @@ public class ProductoController {
             res.type("application/json");
             try {
                 int id = Integer.parseInt(req.params(":id"));
-                return repository.getProductoById(id)
-                        .map(gson::toJson)
-                        .orElseGet(() -> {
-                            res.status(404);
-                            return gson.toJson(new ErrorResponse("404", "Product not found"));
-                        });
+                Optional<Producto> producto = catalogo.getSnapshot().getProducto(id);
+                if (!producto.isPresent()) {
+                    res.status(404);
+                    return gson.toJson(new ErrorResponse("404", "Product not found"));
+                }
+                Producto p = producto.get();
+                return RespuestaCache.responder(req, res,
+                        respuestas.obtener("producto:" + id, p, () -> gson.toJson(p)));
             } catch (NumberFormatException e) {
                 res.status(400);
                 return gson.toJson(new ErrorResponse("400", "Invalid product ID"));
@@ -51,11 +156,31 @@ public class ProductoController {
             }
         });
 
+        // Buscar productos por nombre o descripción, ordenados por relevancia
+        get("/api/buscar", (req, res) -> {
+            res.type("application/json");
+            String consulta = req.queryParams("q");
+            if (consulta == null || consulta.isBlank()) {
+                res.status(400);
+                return gson.toJson(new ErrorResponse("400", "The q parameter is required"));
+            }
+            try {
+                int limite = req.queryParams("limit") != null ? Integer.parseInt(req.queryParams("limit")) : 20;
+                return Compresion.responder(req, res, gson.toJson(buscador.buscar(consulta, Math.min(limite, 100))));
+            } catch (NumberFormatException e) {
+                res.status(400);
+                return gson.toJson(new ErrorResponse("400", "Invalid limit"));
+            } catch (Exception e) {
+                res.status(500);
+                return gson.toJson(new ErrorResponse("500", "Error searching products"));
+            }
+        });
+
         // Obtener todos los productos en oferta
         get("/api/ofertas", (req, res) -> {
             res.type("application/json");
             try {
-                Collection<Producto> ofertas = repository.getProductosEnOferta();
+                Collection<Producto> ofertas = catalogo.getSnapshot().getOfertas();
 
                 // Mantenemos el estilo de manejo de errores que ya tienes
                 if (ofertas.isEmpty()) {
@@ -63,7 +188,8 @@ public class ProductoController {
                     return gson.toJson(new ErrorResponse("404", "No offers were found at this time"));
                 }
 
-                return gson.toJson(ofertas);
+                return RespuestaCache.responder(req, res,
+                        respuestas.obtener("ofertas", ofertas, () -> gson.toJson(ofertas)));
             } catch (Exception e) {
                 res.status(500);
                 return gson.toJson(new ErrorResponse("500", "Error retrieving offers"));
@@ -0,0 +1,24 @@
+package mprower.javaspark.controller;
+
+import mprower.javaspark.assets.Miniaturas;
+import mprower.javaspark.assets.RecursosEstaticos;
+
+import static spark.Spark.*;
+
+/**
+ * Rutas de los archivos de /public (reemplaza a staticFiles.location de Spark).
+ */
+public class RecursosController {
+
+    public RecursosController(RecursosEstaticos recursos) {
+        // Una ruta por carpeta de /public: /img/*, /css/*
+        for (String directorio : recursos.getDirectorios()) {
+            get("/" + directorio + "/*", recursos::servir);
+        }
+        // Imágenes reducidas: /miniatura/320/img/gorraPP.beb1b1bb66.jpg
+        Miniaturas miniaturas = Miniaturas.getInstance();
+        if (miniaturas.iniciar()) {
+            get("/miniatura/:ancho/*", miniaturas::servir);
+        }
+    }
+}
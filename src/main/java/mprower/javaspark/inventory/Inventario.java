@@ -0,0 +1,386 @@
+package mprower.javaspark.inventory;
+
+import mprower.javaspark.config.AppConfig;
+import mprower.javaspark.config.Database;
+import mprower.javaspark.config.Sentencias;
+import mprower.javaspark.config.Sentencias.Sentencia;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Control de stock: reemplaza al trigger {@code cant} de detalle_venta.
+ * <p>
+ * El trigger, si no alcanzaba el stock, simplemente no descontaba (sobreventa). Ahora el descuento
+ * lo hace la compra, dentro de su propia transacción, con
+ * {@code UPDATE producto SET cantidad = cantidad - ? WHERE id = ? AND cantidad >= ?}: si alguna
+ * fila no se actualiza, la compra se deshace. Eso vale aunque haya varios nodos y aunque el
+ * inventario en memoria esté apagado ({@link #descontar}).
+ * <p>
+ * Encima de eso, con inventory.enabled, un inventario en memoria evita llegar a la base de datos
+ * con compras que no van a alcanzar:
+ * <ul>
+ *   <li>Cada producto tiene un contador atómico de unidades disponibles, cargado de producto.cantidad.</li>
+ *   <li>Agregar al carrito reserva unidades por inventory.reservationTtlMs; si nadie compra, se liberan solas.</li>
+ *   <li>Al comprar se toman las unidades reservadas (y las que falten); si no alcanza, la compra se
+ *       rechaza antes de escribir nada.</li>
+ * </ul>
+ * Es solo una verificación previa: el contador es por nodo y el resincronizado periódico
+ * (inventory.resyncMs) incorpora los cambios hechos por otros nodos o a mano. Si no se puede cargar
+ * al arrancar se reintenta, y mientras tanto las compras dependen solo del descuento en la base de datos.
+ * <p>
+ * Requiere quitar el trigger (ver ecommerce_DB.txt). Mientras siga existiendo, o no se pueda
+ * comprobar que no existe, las compras se rechazan para no descontar el stock dos veces.
+ */
+public class Inventario {
+
+    private static final Sentencia DESCONTAR = Sentencias.registrar("Inventario.descontar",
+            "UPDATE producto SET cantidad = cantidad - ? WHERE id = ? AND cantidad >= ?");
+    private static final Sentencia STOCK_DE = Sentencias.registrar("Inventario.stockDe",
+            "SELECT cantidad FROM producto WHERE id = ?");
+    private static final Inventario INSTANCE = new Inventario();
+
+    private final boolean configurado = AppConfig.getBoolean("inventory.enabled", false);
+    private final long ttlMs = AppConfig.getLong("inventory.reservationTtlMs", 900_000);
+    private final long reintentoMs = AppConfig.getLong("inventory.retryMs", 5_000);
+    private volatile boolean activo = false;
+    // Se comprueba con la primera compra; una vez quitado el trigger no vuelve a consultarse
+    private volatile boolean sinTrigger = false;
+
+    private final Map<Integer, Stock> stock = new ConcurrentHashMap<>();
+    // Reservas por (cliente, producto)
+    private final Map<Long, Reserva> reservas = new ConcurrentHashMap<>();
+
+    // Un solo hilo carga, resincroniza y libera reservas vencidas
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "inventario");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private Inventario() {
+    }
+
+    public static Inventario getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Carga el stock (reintentando cada inventory.retryMs si la base de datos no responde) y programa
+     * la liberación de reservas vencidas y el resincronizado.
+     */
+    public void iniciar() {
+        if (!configurado) {
+            return;
+        }
+        scheduler.execute(this::cargarOReintentar);
+
+        long resyncMs = AppConfig.getLong("inventory.resyncMs", 60_000);
+        long barridoMs = Math.max(1_000, Math.min(ttlMs / 4, 30_000));
+        scheduler.scheduleWithFixedDelay(this::liberarVencidas, barridoMs, barridoMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::resincronizarSilencioso, resyncMs, resyncMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Indica si el inventario en memoria ya está cargado y verifica las compras antes de escribirlas. */
+    public boolean isActivo() {
+        return activo;
+    }
+
+    /**
+     * Reserva unidades para el carrito de un cliente. Si ya tenía reservado el producto, se suma
+     * y se renueva el vencimiento.
+     * @throws StockInsuficienteException si no hay unidades disponibles.
+     */
+    public void reservar(int clienteId, int productoId, int cantidad) throws SQLException {
+        if (!activo || cantidad <= 0) {
+            return;
+        }
+        stockDe(productoId).tomar(productoId, cantidad);
+        long expira = System.currentTimeMillis() + ttlMs;
+        reservas.merge(clave(clienteId, productoId), new Reserva(cantidad, expira),
+                (previa, nueva) -> new Reserva(previa.cantidad + nueva.cantidad, expira));
+    }
+
+    /**
+     * Devuelve al stock lo reservado por el cliente para un producto (por ejemplo, si falló
+     * el INSERT en el carrito).
+     */
+    public void liberar(int clienteId, int productoId, int cantidad) {
+        if (!activo) {
+            return;
+        }
+        Reserva[] liberada = new Reserva[1];
+        reservas.computeIfPresent(clave(clienteId, productoId), (k, r) -> {
+            int devolver = Math.min(cantidad, r.cantidad);
+            liberada[0] = new Reserva(devolver, 0);
+            return r.cantidad > devolver ? new Reserva(r.cantidad - devolver, r.expiraEn) : null;
+        });
+        if (liberada[0] != null) {
+            stock.get(productoId).devolver(liberada[0].cantidad);
+        }
+    }
+
+    /**
+     * Toma el stock para una compra: usa lo reservado por el cliente y reserva lo que falte.
+     * Si algún producto no alcanza, no se toma nada.
+     * @param cantidades Unidades por ID de producto.
+     * @return La confirmación, que después se persiste (commit) o se revierte (rollback).
+     * @throws StockInsuficienteException si algún producto no tiene unidades suficientes.
+     */
+    public Confirmacion confirmar(int clienteId, Map<Integer, Integer> cantidades) throws SQLException {
+        if (!activo) {
+            return Confirmacion.VACIA;
+        }
+        Map<Integer, Integer> tomadas = new HashMap<>();
+        try {
+            for (Map.Entry<Integer, Integer> e : cantidades.entrySet()) {
+                int productoId = e.getKey();
+                int cantidad = e.getValue();
+                Stock s = stockDe(productoId);
+                Reserva reserva = reservas.remove(clave(clienteId, productoId));
+                int reservado = reserva != null ? reserva.cantidad : 0;
+                if (reservado < cantidad) {
+                    try {
+                        s.tomar(productoId, cantidad - reservado);
+                    } catch (StockInsuficienteException ex) {
+                        s.devolver(reservado);
+                        throw ex;
+                    }
+                } else if (reservado > cantidad) {
+                    s.devolver(reservado - cantidad); // El carrito tiene menos de lo que se reservó
+                }
+                tomadas.put(productoId, cantidad);
+            }
+        } catch (StockInsuficienteException | SQLException ex) {
+            tomadas.forEach((id, cant) -> stock.get(id).devolver(cant));
+            throw ex;
+        }
+        return new Confirmacion(tomadas);
+    }
+
+    /**
+     * Descuenta de producto.cantidad las unidades de una compra, en la transacción de la compra
+     * (la conexión no debe estar en autocommit). Solo descuenta si hay stock suficiente.
+     * @param conn Conexión de la transacción de la compra.
+     * @param cantidades Unidades por ID de producto.
+     * @throws StockInsuficienteException si algún producto no tiene unidades suficientes; quien
+     * llama debe deshacer la transacción (o el savepoint) para devolver lo que sí se descontó.
+     * @throws SQLException si falla la base de datos, o si el trigger 'cant' sigue existiendo
+     * (o no se puede comprobar) y el stock se descontaría dos veces.
+     */
+    public void descontar(Connection conn, Map<Integer, Integer> cantidades) throws SQLException {
+        verificarSinTrigger(conn);
+        try (PreparedStatement pstmt = DESCONTAR.preparar(conn)) {
+            for (Map.Entry<Integer, Integer> e : cantidades.entrySet()) {
+                pstmt.setInt(1, e.getValue());
+                pstmt.setInt(2, e.getKey());
+                pstmt.setInt(3, e.getValue());
+                if (pstmt.executeUpdate() == 0) {
+                    throw new StockInsuficienteException(e.getKey(), stockEnBd(conn, e.getKey()));
+                }
+            }
+        }
+    }
+
+    /**
+     * La compra se confirmó en la base de datos (con su descuento): este nodo ya sabe lo que
+     * quedó en producto.cantidad y no lo cuenta como un cambio externo al resincronizar.
+     */
+    public void vendido(Confirmacion confirmacion) {
+        confirmacion.unidades.forEach((id, cant) -> stock.get(id).enBd.addAndGet(-cant));
+    }
+
+    /** La compra no se guardó: las unidades vuelven a estar disponibles. */
+    public void revertir(Confirmacion confirmacion) {
+        confirmacion.unidades.forEach((id, cant) -> stock.get(id).devolver(cant));
+    }
+
+    /** Unidades disponibles (sin reservar) de un producto, o -1 si no se conoce. */
+    public int getDisponible(int productoId) {
+        Stock s = stock.get(productoId);
+        return s != null ? s.disponible.get() : -1;
+    }
+
+    public int getReservasActivas() {
+        return reservas.size();
+    }
+
+    // --- Carga y mantenimiento (hilo "inventario") ---
+
+    private void cargarOReintentar() {
+        try {
+            cargar();
+            activo = true;
+            System.out.println("Inventario en memoria activo: " + stock.size() + " productos");
+        } catch (SQLException e) {
+            System.err.println("No se pudo cargar el inventario, se reintentará en " + reintentoMs + " ms: " + e.getMessage());
+            scheduler.schedule(this::cargarOReintentar, reintentoMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void liberarVencidas() {
+        long ahora = System.currentTimeMillis();
+        reservas.forEach((k, r) -> {
+            if (r.expiraEn <= ahora && reservas.remove(k, r)) {
+                stock.get((int) (long) k).devolver(r.cantidad);
+            }
+        });
+    }
+
+    private void resincronizarSilencioso() {
+        if (!activo) {
+            return;
+        }
+        try {
+            resincronizar();
+        } catch (SQLException e) {
+            System.err.println("No se pudo resincronizar el inventario: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Aplica a los contadores los cambios de stock hechos fuera de este nodo (reabastecimiento
+     * manual, ventas de otro nodo): la diferencia entre lo que hay en la base de datos y lo que
+     * este nodo cree que hay. Una venta propia que se confirma mientras se lee el stock puede
+     * contarse como externa; el siguiente resincronizado lo corrige.
+     */
+    private void resincronizar() throws SQLException {
+        for (Map.Entry<Integer, Integer> e : leerStock().entrySet()) {
+            Stock s = stock.get(e.getKey());
+            if (s == null) {
+                stock.putIfAbsent(e.getKey(), new Stock(e.getValue()));
+                continue;
+            }
+            int externo = e.getValue() - s.enBd.getAndSet(e.getValue());
+            if (externo != 0) {
+                s.disponible.addAndGet(externo);
+            }
+        }
+    }
+
+    private void cargar() throws SQLException {
+        leerStock().forEach((id, cantidad) -> stock.put(id, new Stock(cantidad)));
+    }
+
+    private Map<Integer, Integer> leerStock() throws SQLException {
+        Map<Integer, Integer> resultado = new HashMap<>();
+        try (Connection conn = Database.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT id, cantidad FROM producto");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                resultado.put(rs.getInt("id"), rs.getInt("cantidad"));
+            }
+        }
+        return resultado;
+    }
+
+    /** Producto que no estaba al cargar (alta posterior): se lee su stock en ese momento. */
+    private Stock stockDe(int productoId) throws SQLException {
+        Stock s = stock.get(productoId);
+        if (s != null) {
+            return s;
+        }
+        try (Connection conn = Database.getConnection();
+             PreparedStatement pstmt = STOCK_DE.preparar(conn)) {
+            pstmt.setInt(1, productoId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                int cantidad = rs.next() ? rs.getInt(1) : 0;
+                Stock nuevo = new Stock(cantidad);
+                Stock previo = stock.putIfAbsent(productoId, nuevo);
+                return previo != null ? previo : nuevo;
+            }
+        }
+    }
+
+    private int stockEnBd(Connection conn, int productoId) throws SQLException {
+        try (PreparedStatement pstmt = STOCK_DE.preparar(conn)) {
+            pstmt.setInt(1, productoId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Con el trigger todavía en detalle_venta, cada compra descontaría dos veces. Si la consulta
+     * falla no se asume nada: la excepción llega a la compra y esta se deshace.
+     */
+    private void verificarSinTrigger(Connection conn) throws SQLException {
+        if (sinTrigger) {
+            return;
+        }
+        String sql = "SELECT COUNT(*) FROM information_schema.TRIGGERS WHERE TRIGGER_SCHEMA = DATABASE() AND TRIGGER_NAME = 'cant'";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next() && rs.getInt(1) > 0) {
+                throw new SQLException("El trigger 'cant' sigue en detalle_venta y el stock se descontaría dos veces;"
+                        + " elimínalo con: DROP TRIGGER cant;");
+            }
+        }
+        sinTrigger = true;
+    }
+
+    private static long clave(int clienteId, int productoId) {
+        return ((long) clienteId << 32) | (productoId & 0xffffffffL);
+    }
+
+    private static final class Stock {
+        final AtomicInteger disponible;
+        // Lo que este nodo cree que hay en producto.cantidad
+        final AtomicInteger enBd;
+
+        Stock(int cantidad) {
+            this.disponible = new AtomicInteger(cantidad);
+            this.enBd = new AtomicInteger(cantidad);
+        }
+
+        void tomar(int productoId, int cantidad) {
+            while (true) {
+                int actual = disponible.get();
+                if (actual < cantidad) {
+                    throw new StockInsuficienteException(productoId, actual);
+                }
+                if (disponible.compareAndSet(actual, actual - cantidad)) {
+                    return;
+                }
+            }
+        }
+
+        void devolver(int cantidad) {
+            disponible.addAndGet(cantidad);
+        }
+    }
+
+    private static final class Reserva {
+        final int cantidad;
+        final long expiraEn;
+
+        Reserva(int cantidad, long expiraEn) {
+            this.cantidad = cantidad;
+            this.expiraEn = expiraEn;
+        }
+    }
+
+    /**
+     * Unidades tomadas para una compra, pendientes de confirmarse o revertirse.
+     */
+    public static final class Confirmacion {
+        static final Confirmacion VACIA = new Confirmacion(Collections.emptyMap());
+
+        private final Map<Integer, Integer> unidades;
+
+        Confirmacion(Map<Integer, Integer> unidades) {
+            this.unidades = unidades;
+        }
+    }
+}
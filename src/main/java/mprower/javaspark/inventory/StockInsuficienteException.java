@@ -0,0 +1,24 @@
+package mprower.javaspark.inventory;
+
+/**
+ * No hay stock disponible para reservar o vender la cantidad pedida de un producto.
+ */
+public class StockInsuficienteException extends RuntimeException {
+
+    private final int productoId;
+    private final int disponible;
+
+    public StockInsuficienteException(int productoId, int disponible) {
+        super("Stock insuficiente para el producto " + productoId + " (disponible: " + Math.max(0, disponible) + ")");
+        this.productoId = productoId;
+        this.disponible = disponible;
+    }
+
+    public int getProductoId() {
+        return productoId;
+    }
+
+    public int getDisponible() {
+        return disponible;
+    }
+}
@@ -0,0 +1,202 @@
+package mprower.javaspark.metrics;
+
+import mprower.javaspark.config.Sentencias;
+import mprower.javaspark.util.PasswordHasher;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+
+/**
+ * Escribe métricas en el formato de texto de Prometheus (versión 0.0.4).
+ * <p>
+ * Las latencias se exportan como summary con los percentiles 0.5, 0.99 y 0.999 calculados
+ * desde que arrancó el proceso; para ver la tendencia reciente se usa rate() sobre _sum y _count.
+ */
+public final class FormatoPrometheus {
+
+    public static final String TIPO = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] CUANTILES = {0.5, 0.99, 0.999};
+
+    private final StringBuilder sb = new StringBuilder(16 * 1024);
+
+    /** Agrega las métricas de rutas HTTP y de repositorios del registro. */
+    public FormatoPrometheus metricas(Metricas metricas) {
+        Map<String, Metricas.Ruta> rutas = metricas.getRutas();
+        encabezado("http_request_duration_seconds", "summary", "Latencia de las peticiones por ruta.");
+        for (Metricas.Ruta r : rutas.values()) {
+            resumen("http_request_duration_seconds", etiquetasRuta(r), r.getLatencia());
+        }
+        encabezado("http_responses_total", "counter", "Respuestas por ruta y código de estado.");
+        for (Metricas.Ruta r : rutas.values()) {
+            for (Map.Entry<Integer, Long> e : r.getEstados().entrySet()) {
+                muestra("http_responses_total", etiquetasRuta(r) + ",status=\"" + e.getKey() + '"', e.getValue());
+            }
+        }
+        medidor("http_requests_in_flight", "Peticiones que se están atendiendo.", metricas.getEnCurso());
+
+        Map<String, Metricas.Consulta> consultas = metricas.getConsultas();
+        encabezado("db_query_duration_seconds", "summary", "Duración de cada método de repositorio, con la espera por conexión.");
+        for (Map.Entry<String, Metricas.Consulta> e : consultas.entrySet()) {
+            resumen("db_query_duration_seconds", "method=\"" + escapar(e.getKey()) + '"', e.getValue().getLatencia());
+        }
+        encabezado("db_query_rows_total", "counter", "Filas leídas o modificadas por método de repositorio.");
+        for (Map.Entry<String, Metricas.Consulta> e : consultas.entrySet()) {
+            muestra("db_query_rows_total", "method=\"" + escapar(e.getKey()) + '"', e.getValue().getFilas());
+        }
+        return this;
+    }
+
+    /**
+     * Agrega las preparaciones de cada sentencia registrada, separadas en la primera de cada
+     * conexión física y las repetidas (las que la caché del driver puede resolver; el driver no
+     * expone sus aciertos reales), y las consultas de texto variable preparadas en el cliente.
+     * @param tamanoCache Sentencias por conexión que guarda el driver (0 si la caché está desactivada).
+     */
+    public FormatoPrometheus sentencias(Map<String, Sentencias.Sentencia> sentencias, long variables, int tamanoCache) {
+        encabezado("db_statement_prepares_total", "counter",
+                "Sentencias registradas preparadas, por primera vez o repetida en la misma conexión física.");
+        long repetidas = 0;
+        long total = 0;
+        for (Map.Entry<String, Sentencias.Sentencia> e : sentencias.entrySet()) {
+            String etiqueta = "statement=\"" + escapar(e.getKey()) + '"';
+            Sentencias.Sentencia s = e.getValue();
+            muestra("db_statement_prepares_total", etiqueta + ",connection=\"first\"", s.getPrimeras());
+            muestra("db_statement_prepares_total", etiqueta + ",connection=\"repeat\"", s.getRepetidas());
+            repetidas += s.getRepetidas();
+            total += s.getPrimeras() + s.getRepetidas();
+        }
+        medidor("db_statement_repeat_ratio",
+                "Proporción de preparaciones repetidas en su conexión (máximo posible de aciertos de la caché).",
+                total == 0 ? 0 : (double) repetidas / total);
+        encabezado("db_statement_variable_prepares_total", "counter",
+                "Consultas de texto variable (con la caché activa se preparan en el cliente, sin ocuparla).");
+        muestra("db_statement_variable_prepares_total", null, variables);
+        medidor("db_statement_cache_size", "Sentencias por conexión en la caché del driver (0 = desactivada).", tamanoCache);
+        return this;
+    }
+
+    /**
+     * Agrega, por ruta, la espera en cola y el tiempo de BCrypt (como summary sin percentiles:
+     * el promedio reciente sale de rate(_sum) / rate(_count)) y el hash más lento.
+     */
+    public FormatoPrometheus bcrypt(Map<String, PasswordHasher.Latencia> rutas) {
+        encabezado("bcrypt_wait_seconds", "summary", "Espera en la cola de BCrypt por ruta.");
+        for (Map.Entry<String, PasswordHasher.Latencia> e : rutas.entrySet()) {
+            String etiqueta = "route=\"" + escapar(e.getKey()) + '"';
+            muestra("bcrypt_wait_seconds_sum", etiqueta, e.getValue().getEsperaSegundos());
+            muestra("bcrypt_wait_seconds_count", etiqueta, e.getValue().getOperaciones());
+        }
+        encabezado("bcrypt_hash_seconds", "summary", "Tiempo de BCrypt por ruta.");
+        for (Map.Entry<String, PasswordHasher.Latencia> e : rutas.entrySet()) {
+            String etiqueta = "route=\"" + escapar(e.getKey()) + '"';
+            muestra("bcrypt_hash_seconds_sum", etiqueta, e.getValue().getHashSegundos());
+            muestra("bcrypt_hash_seconds_count", etiqueta, e.getValue().getOperaciones());
+        }
+        encabezado("bcrypt_hash_max_seconds", "gauge", "Hash de BCrypt más lento por ruta desde que arrancó el proceso.");
+        for (Map.Entry<String, PasswordHasher.Latencia> e : rutas.entrySet()) {
+            muestra("bcrypt_hash_max_seconds", "route=\"" + escapar(e.getKey()) + '"', e.getValue().getHashSegundosMax());
+        }
+        return this;
+    }
+
+    /** Agrega memoria, recolector de basura, hilos, clases y CPU de la JVM. */
+    public FormatoPrometheus jvm() {
+        MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+        encabezado("jvm_memory_bytes_used", "gauge", "Memoria usada por área.");
+        memoria("jvm_memory_bytes_used", memoria.getHeapMemoryUsage().getUsed(), memoria.getNonHeapMemoryUsage().getUsed());
+        encabezado("jvm_memory_bytes_committed", "gauge", "Memoria reservada por área.");
+        memoria("jvm_memory_bytes_committed", memoria.getHeapMemoryUsage().getCommitted(),
+                memoria.getNonHeapMemoryUsage().getCommitted());
+        MemoryUsage heap = memoria.getHeapMemoryUsage();
+        medidor("jvm_memory_heap_max_bytes", "Tamaño máximo del heap (-1 si no tiene límite).", heap.getMax());
+
+        encabezado("jvm_gc_collection_seconds", "summary", "Recolecciones y tiempo acumulado por recolector.");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String etiqueta = "gc=\"" + escapar(gc.getName()) + '"';
+            muestra("jvm_gc_collection_seconds_count", etiqueta, Math.max(0, gc.getCollectionCount()));
+            muestra("jvm_gc_collection_seconds_sum", etiqueta, Math.max(0, gc.getCollectionTime()) / 1000.0);
+        }
+
+        ThreadMXBean hilos = ManagementFactory.getThreadMXBean();
+        medidor("jvm_threads_current", "Hilos de plataforma vivos.", hilos.getThreadCount());
+        medidor("jvm_threads_daemon", "Hilos daemon vivos.", hilos.getDaemonThreadCount());
+        medidor("jvm_threads_peak", "Máximo de hilos vivos a la vez.", hilos.getPeakThreadCount());
+        medidor("jvm_classes_loaded", "Clases cargadas.", ManagementFactory.getClassLoadingMXBean().getLoadedClassCount());
+        medidor("process_uptime_seconds", "Tiempo desde que arrancó la JVM.",
+                ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0);
+
+        OperatingSystemMXBean so = ManagementFactory.getOperatingSystemMXBean();
+        if (so instanceof com.sun.management.OperatingSystemMXBean) {
+            long cpu = ((com.sun.management.OperatingSystemMXBean) so).getProcessCpuTime();
+            if (cpu >= 0) {
+                contador("process_cpu_seconds_total", "Tiempo de CPU usado por el proceso.", cpu / 1e9);
+            }
+        }
+        medidor("system_load_average_1m", "Carga promedio del sistema en el último minuto.", so.getSystemLoadAverage());
+        return this;
+    }
+
+    public FormatoPrometheus medidor(String nombre, String ayuda, double valor) {
+        encabezado(nombre, "gauge", ayuda);
+        muestra(nombre, null, valor);
+        return this;
+    }
+
+    public FormatoPrometheus contador(String nombre, String ayuda, double valor) {
+        encabezado(nombre, "counter", ayuda);
+        muestra(nombre, null, valor);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+
+    private void memoria(String nombre, long heap, long noHeap) {
+        muestra(nombre, "area=\"heap\"", heap);
+        muestra(nombre, "area=\"nonheap\"", noHeap);
+    }
+
+    private void resumen(String nombre, String etiquetas, Histograma h) {
+        double[] valores = h.percentiles(CUANTILES);
+        for (int i = 0; i < CUANTILES.length; i++) {
+            muestra(nombre, etiquetas + ",quantile=\"" + CUANTILES[i] + '"', valores[i]);
+        }
+        muestra(nombre + "_sum", etiquetas, h.getSumaSegundos());
+        muestra(nombre + "_count", etiquetas, h.getCuenta());
+    }
+
+    private void encabezado(String nombre, String tipo, String ayuda) {
+        sb.append("# HELP ").append(nombre).append(' ').append(ayuda).append('\n');
+        sb.append("# TYPE ").append(nombre).append(' ').append(tipo).append('\n');
+    }
+
+    private void muestra(String nombre, String etiquetas, double valor) {
+        sb.append(nombre);
+        if (etiquetas != null) {
+            sb.append('{').append(etiquetas).append('}');
+        }
+        sb.append(' ');
+        if (valor == Math.rint(valor) && Math.abs(valor) < 1e15) {
+            sb.append((long) valor);
+        } else {
+            sb.append(valor);
+        }
+        sb.append('\n');
+    }
+
+    private static String etiquetasRuta(Metricas.Ruta r) {
+        return "method=\"" + escapar(r.getMetodo()) + "\",route=\"" + escapar(r.getRuta()) + '"';
+    }
+
+    private static String escapar(String valor) {
+        return valor.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,89 @@
+package mprower.javaspark.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias sin bloqueos, con cubetas logarítmicas en microsegundos.
+ * <p>
+ * Cada potencia de dos se divide en 8 cubetas, así que un percentil se conoce con un error
+ * relativo de como mucho 12.5%, con 272 contadores fijos (de 1 µs a unas 19 horas) y sin
+ * guardar las muestras. Registrar es un incremento atómico; leer los percentiles recorre
+ * las cubetas, lo que solo ocurre al exportar.
+ */
+public final class Histograma {
+
+    private static final int SUBCUBETAS_BITS = 3;
+    private static final int SUBCUBETAS = 1 << SUBCUBETAS_BITS;
+    private static final int LINEALES = 2 * SUBCUBETAS;
+    private static final int MAX_EXPONENTE = 35;
+    private static final int CUBETAS = LINEALES + (MAX_EXPONENTE - SUBCUBETAS_BITS) * SUBCUBETAS;
+
+    private final AtomicLongArray cubetas = new AtomicLongArray(CUBETAS);
+    private final LongAdder cuenta = new LongAdder();
+    private final LongAdder sumaNanos = new LongAdder();
+
+    public void registrar(long nanos) {
+        long micros = Math.max(0, nanos / 1_000);
+        cubetas.incrementAndGet(indice(micros));
+        cuenta.increment();
+        sumaNanos.add(Math.max(0, nanos));
+    }
+
+    public long getCuenta() {
+        return cuenta.sum();
+    }
+
+    public double getSumaSegundos() {
+        return sumaNanos.sum() / 1e9;
+    }
+
+    /**
+     * Calcula varios percentiles de una sola pasada sobre una copia de las cubetas.
+     * @param cuantiles Valores entre 0 y 1, en orden ascendente (por ejemplo 0.5, 0.99, 0.999).
+     * @return El límite superior, en segundos, de la cubeta donde cae cada percentil (0 si no hay datos).
+     */
+    public double[] percentiles(double... cuantiles) {
+        long[] copia = new long[CUBETAS];
+        long total = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            copia[i] = cubetas.get(i);
+            total += copia[i];
+        }
+        double[] resultado = new double[cuantiles.length];
+        if (total == 0) {
+            return resultado;
+        }
+        long acumulado = 0;
+        int q = 0;
+        for (int i = 0; i < CUBETAS && q < cuantiles.length; i++) {
+            acumulado += copia[i];
+            while (q < cuantiles.length && acumulado >= Math.max(1, (long) Math.ceil(cuantiles[q] * total))) {
+                resultado[q++] = limiteSuperior(i) / 1e6;
+            }
+        }
+        return resultado;
+    }
+
+    static int indice(long micros) {
+        if (micros < LINEALES) {
+            return (int) micros;
+        }
+        int exponente = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponente > MAX_EXPONENTE) {
+            return CUBETAS - 1;
+        }
+        int sub = (int) (micros >>> (exponente - SUBCUBETAS_BITS)) & (SUBCUBETAS - 1);
+        return LINEALES + (exponente - SUBCUBETAS_BITS - 1) * SUBCUBETAS + sub;
+    }
+
+    static long limiteSuperior(int indice) {
+        if (indice < LINEALES) {
+            return indice + 1;
+        }
+        int exponente = (indice - LINEALES) / SUBCUBETAS + SUBCUBETAS_BITS + 1;
+        int sub = (indice - LINEALES) % SUBCUBETAS;
+        long ancho = 1L << (exponente - SUBCUBETAS_BITS);
+        return (SUBCUBETAS + sub) * ancho + ancho;
+    }
+}
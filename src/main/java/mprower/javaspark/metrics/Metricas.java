@@ -0,0 +1,166 @@
+package mprower.javaspark.metrics;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registro de métricas de la aplicación: latencia y códigos de estado por ruta HTTP,
+ * peticiones en curso, y tiempo y filas por método de repositorio.
+ * <p>
+ * Todo se actualiza con contadores atómicos, sin bloqueos, en el hilo de la petición; el costo
+ * de ordenar y calcular percentiles lo paga solo quien exporta ({@code /metrics}).
+ */
+public final class Metricas {
+
+    private static final Metricas INSTANCE = new Metricas();
+
+    // Las URLs que no coinciden con ninguna ruta comparten una serie, para no crear una por URL
+    private static final String SIN_RUTA = "sin_ruta";
+    private static final Set<String> METODOS = Set.of("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS");
+
+    private final TablaRutas tablaRutas = new TablaRutas();
+    private final Map<String, Ruta> rutas = new ConcurrentHashMap<>();
+    private final Map<String, Consulta> consultas = new ConcurrentHashMap<>();
+    private final AtomicInteger enCurso = new AtomicInteger();
+
+    private Metricas() {
+    }
+
+    public static Metricas getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Empieza a medir una llamada a la base de datos. Se usa en un try-with-resources y,
+     * si la llamada devuelve filas, se indican con {@link Medicion#filas}.
+     * @param metodo Nombre del método, como "ProductoRepository.getPagina".
+     */
+    public static Medicion consulta(String metodo) {
+        return new Medicion(INSTANCE.consultas.computeIfAbsent(metodo, m -> new Consulta()));
+    }
+
+    /** Marca el inicio de una petición. */
+    public void peticionIniciada() {
+        enCurso.incrementAndGet();
+    }
+
+    /**
+     * Registra una petición terminada bajo la plantilla de la ruta que la atendió.
+     * @param path La URL pedida, sin query string.
+     */
+    public void peticionTerminada(String metodo, String path, int status, long nanos) {
+        enCurso.decrementAndGet();
+        String ruta = tablaRutas.resolver(metodo, path);
+        if (ruta == null) {
+            // Sin ruta, Spark responde 404 después de los filtros afterAfter
+            ruta = SIN_RUTA;
+            metodo = METODOS.contains(metodo) ? metodo : "OTRO";
+            if (status == 200) {
+                status = 404;
+            }
+        }
+        String m = metodo;
+        String nombre = ruta;
+        Ruta r = rutas.computeIfAbsent(m + ' ' + ruta, k -> new Ruta(m, nombre));
+        r.latencia.registrar(nanos);
+        if (status >= 100 && status < 600) {
+            r.estados.incrementAndGet(status);
+        }
+    }
+
+    public int getEnCurso() {
+        return enCurso.get();
+    }
+
+    /** Rutas con su latencia y estados, ordenadas por método y ruta. */
+    public Map<String, Ruta> getRutas() {
+        return new TreeMap<>(rutas);
+    }
+
+    /** Métodos de repositorio con su latencia y filas, ordenados por nombre. */
+    public Map<String, Consulta> getConsultas() {
+        return new TreeMap<>(consultas);
+    }
+
+    /**
+     * Latencia y conteo por código de estado de una ruta.
+     */
+    public static final class Ruta {
+        private final String metodo;
+        private final String ruta;
+        private final Histograma latencia = new Histograma();
+        private final AtomicLongArray estados = new AtomicLongArray(600);
+
+        Ruta(String metodo, String ruta) {
+            this.metodo = metodo;
+            this.ruta = ruta;
+        }
+
+        public String getMetodo() {
+            return metodo;
+        }
+
+        public String getRuta() {
+            return ruta;
+        }
+
+        public Histograma getLatencia() {
+            return latencia;
+        }
+
+        /** Respuestas por código de estado (solo los que han ocurrido). */
+        public Map<Integer, Long> getEstados() {
+            Map<Integer, Long> resultado = new TreeMap<>();
+            for (int i = 100; i < 600; i++) {
+                long n = estados.get(i);
+                if (n > 0) {
+                    resultado.put(i, n);
+                }
+            }
+            return resultado;
+        }
+    }
+
+    /**
+     * Latencia y filas de un método de repositorio.
+     */
+    public static final class Consulta {
+        private final Histograma latencia = new Histograma();
+        private final LongAdder filas = new LongAdder();
+
+        public Histograma getLatencia() {
+            return latencia;
+        }
+
+        public long getFilas() {
+            return filas.sum();
+        }
+    }
+
+    /**
+     * Una llamada en curso; al cerrarse registra su duración (también si terminó con excepción).
+     */
+    public static final class Medicion implements AutoCloseable {
+        private final Consulta consulta;
+        private final long inicio = System.nanoTime();
+
+        private Medicion(Consulta consulta) {
+            this.consulta = consulta;
+        }
+
+        /** Suma las filas leídas o modificadas por la llamada. */
+        public void filas(long n) {
+            consulta.filas.add(n);
+        }
+
+        @Override
+        public void close() {
+            consulta.latencia.registrar(System.nanoTime() - inicio);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package mprower.javaspark.metrics;
+
+import spark.Spark;
+import spark.route.HttpMethod;
+import spark.routematch.RouteMatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resuelve a qué ruta registrada en Spark corresponde una URL ("/api/productos/7" es
+ * "/api/productos/:id"), para etiquetar las métricas por plantilla y no por URL.
+ * <p>
+ * Spark no deja ver la ruta elegida desde un filtro afterAfter, así que se repite su
+ * coincidencia por segmentos sobre {@link Spark#routes()}. La tabla se copia la primera vez y
+ * se vuelve a leer, como mucho una vez por segundo, si llega una URL que no coincide con
+ * ninguna ruta (por si se registraron rutas después).
+ */
+final class TablaRutas {
+
+    private static final long RECARGA_MS = 1_000;
+
+    private volatile Map<String, List<String[]>> porMetodo;
+    private volatile long cargadaEn;
+
+    /**
+     * @return La plantilla de la ruta, o null si ninguna ruta atiende ese método y URL.
+     */
+    String resolver(String metodo, String path) {
+        String[] segmentos = segmentos(path);
+        String plantilla = buscar(tabla(false), metodo, segmentos);
+        if (plantilla == null && System.currentTimeMillis() - cargadaEn >= RECARGA_MS) {
+            plantilla = buscar(tabla(true), metodo, segmentos);
+        }
+        return plantilla;
+    }
+
+    private Map<String, List<String[]>> tabla(boolean recargar) {
+        Map<String, List<String[]>> actual = porMetodo;
+        if (actual != null && !recargar) {
+            return actual;
+        }
+        Map<String, List<String[]>> nueva = new HashMap<>();
+        for (RouteMatch r : Spark.routes()) {
+            HttpMethod m = r.getHttpMethod();
+            if (m == HttpMethod.before || m == HttpMethod.after || m == HttpMethod.afterafter) {
+                continue;
+            }
+            nueva.computeIfAbsent(m.name().toUpperCase(), k -> new ArrayList<>()).add(segmentos(r.getMatchUri()));
+        }
+        porMetodo = nueva;
+        cargadaEn = System.currentTimeMillis();
+        return nueva;
+    }
+
+    private static String buscar(Map<String, List<String[]>> tabla, String metodo, String[] segmentos) {
+        String plantilla = buscar(tabla.get(metodo), segmentos);
+        if (plantilla == null && metodo.equals("HEAD")) {
+            plantilla = buscar(tabla.get("GET"), segmentos); // Spark atiende HEAD con la ruta GET
+        }
+        return plantilla;
+    }
+
+    private static String buscar(List<String[]> rutas, String[] segmentos) {
+        if (rutas == null) {
+            return null;
+        }
+        for (String[] ruta : rutas) {
+            if (coincide(ruta, segmentos)) {
+                return ruta.length == 0 ? "/" : "/" + String.join("/", ruta);
+            }
+        }
+        return null;
+    }
+
+    /** ":param" acepta cualquier segmento y un "*" al final acepta el resto de la URL. */
+    private static boolean coincide(String[] ruta, String[] segmentos) {
+        for (int i = 0; i < ruta.length; i++) {
+            if (ruta[i].equals("*") && i == ruta.length - 1) {
+                return segmentos.length >= ruta.length;
+            }
+            if (i >= segmentos.length) {
+                return false;
+            }
+            if (!ruta[i].startsWith(":") && !ruta[i].equals("*") && !ruta[i].equals(segmentos[i])) {
+                return false;
+            }
+        }
+        return ruta.length == segmentos.length;
+    }
+
+    private static String[] segmentos(String path) {
+        List<String> partes = new ArrayList<>();
+        for (String s : path.split("/")) {
+            if (!s.isEmpty()) {
+                partes.add(s);
+            }
+        }
+        return partes.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,26 @@
+package mprower.javaspark.model;
+
+import java.util.List;
+
+// Carrito de un cliente con el producto de cada línea ya cargado y los totales calculados en el servidor
+public class CarritoResumen {
+    private final List<CarritoItem> items;
+    private final double total;
+    private final int totalArticulos;
+
+    public CarritoResumen(List<CarritoItem> items) {
+        this.items = items;
+        double suma = 0;
+        int articulos = 0;
+        for (CarritoItem item : items) {
+            suma += item.producto.precio * item.cantidad;
+            articulos += item.cantidad;
+        }
+        this.total = suma;
+        this.totalArticulos = articulos;
+    }
+
+    public List<CarritoItem> getItems() { return items; }
+    public double getTotal() { return total; }
+    public int getTotalArticulos() { return totalArticulos; }
+}
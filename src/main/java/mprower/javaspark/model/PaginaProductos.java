@@ -0,0 +1,17 @@
+package mprower.javaspark.model;
+
+import java.util.List;
+
+// Una página del catálogo y el cursor para pedir la siguiente (null si es la última)
+public class PaginaProductos {
+    private final List<Producto> productos;
+    private final String siguiente;
+
+    public PaginaProductos(List<Producto> productos, String siguiente) {
+        this.productos = productos;
+        this.siguiente = siguiente;
+    }
+
+    public List<Producto> getProductos() { return productos; }
+    public String getSiguiente() { return siguiente; }
+}
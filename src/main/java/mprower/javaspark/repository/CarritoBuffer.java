@@ -0,0 +1,429 @@
+package mprower.javaspark.repository;
+
+import mprower.javaspark.config.AppConfig;
+import mprower.javaspark.config.Database;
+import mprower.javaspark.config.Sentencias;
+import mprower.javaspark.config.Sentencias.Sentencia;
+import mprower.javaspark.inventory.Inventario;
+import mprower.javaspark.metrics.Metricas;
+import mprower.javaspark.model.CarritoItem;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Carrito con escritura diferida (write-behind).
+ * <p>
+ * Cada "agregar" del formulario suma unidades a un agregado en memoria por cliente y producto;
+ * un hilo escribe los incrementos acumulados cada cart.writeBehind.flushMs, en una transacción
+ * y con un UPDATE/INSERT por línea de carrito, sin importar cuántos clics hubo. Antes de leer el
+ * carrito de un cliente, de comprar, o de cambiar o borrar una línea, se escriben sus pendientes,
+ * así que quien lee siempre ve sus propios cambios.
+ * <p>
+ * Durabilidad: un incremento aceptado vive solo en memoria hasta la siguiente escritura (como
+ * mucho flushMs). Si el proceso muere en ese intervalo se pierde, igual que la reserva de stock
+ * del inventario, que también es en memoria. Al apagar la aplicación se escriben los pendientes
+ * (antes de que se cierre el pool, ver {@link Database#alCerrar}).
+ * Si la escritura falla, los incrementos vuelven a la cola y se reintentan. Una línea que la base
+ * de datos rechaza por integridad (por ejemplo, el producto o el cliente ya no existen) nunca se
+ * podrá escribir: se descarta, se reporta y se libera su reserva de stock, sin detener al resto del lote.
+ * <p>
+ * Las escrituras de un mismo cliente se serializan con un lock por franja (el cliente elige una
+ * de FRANJAS); las de clientes distintos corren en paralelo. Solo vaciarTodo toma varias franjas.
+ */
+public class CarritoBuffer {
+
+    private static final Sentencia SUMAR = Sentencias.registrar("CarritoBuffer.actualizar",
+            "UPDATE carrito SET cantidad = cantidad + ? WHERE id_cli = ? AND id_pro = ?");
+    private static final Sentencia INSERTAR = Sentencias.registrar("CarritoBuffer.insertar",
+            "INSERT INTO carrito (id_cli, id_pro, cantidad) VALUES (?, ?, ?)");
+    private static final CarritoBuffer INSTANCE = new CarritoBuffer();
+
+    private final boolean habilitado = AppConfig.getBoolean("cart.writeBehind.enabled", true);
+    // cliente -> (producto -> unidades por agregar)
+    private final Map<Integer, Map<Integer, Integer>> pendientes = new ConcurrentHashMap<>();
+    private final LongAdder unidadesPendientes = new LongAdder();
+    // Serializa las escrituras de cada cliente: quien lee espera a que termine una escritura en curso
+    private static final int FRANJAS = 64;
+    private final ReentrantLock[] escritura = new ReentrantLock[FRANJAS];
+
+    private CarritoBuffer() {
+        for (int i = 0; i < FRANJAS; i++) {
+            escritura[i] = new ReentrantLock();
+        }
+        if (habilitado) {
+            long flushMs = AppConfig.getLong("cart.writeBehind.flushMs", 250);
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "carrito-write-behind");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(this::vaciarTodoSilencioso, flushMs, flushMs, TimeUnit.MILLISECONDS);
+            Database.alCerrar(this::vaciarTodoSilencioso);
+        }
+    }
+
+    public static CarritoBuffer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Acumula unidades para escribirlas después. Sin write-behind se escriben de inmediato.
+     */
+    public void agregar(int clienteId, int productoId, int cantidad) throws SQLException {
+        if (!habilitado) {
+            agregarYGuardar(clienteId, productoId, cantidad);
+            return;
+        }
+        pendientes.compute(clienteId, (k, carrito) -> {
+            Map<Integer, Integer> c = carrito != null ? carrito : new LinkedHashMap<>();
+            c.merge(productoId, cantidad, Integer::sum);
+            return c;
+        });
+        unidadesPendientes.add(cantidad);
+    }
+
+    /**
+     * Agrega unidades y las escribe ya (junto con lo que hubiera pendiente de ese producto).
+     * @return La línea del carrito con su cantidad total.
+     */
+    public CarritoItem agregarYGuardar(int clienteId, int productoId, int cantidad) throws SQLException {
+        return agregarYGuardar(clienteId, Collections.singletonMap(productoId, cantidad)).get(0);
+    }
+
+    /**
+     * Agrega unidades de varios productos y las escribe ya, en una sola transacción, junto con
+     * lo que el cliente tuviera pendiente.
+     * @param cantidades Unidades por ID de producto.
+     * @return Las líneas del carrito de esos productos con su cantidad total, en el mismo orden.
+     */
+    public List<CarritoItem> agregarYGuardar(int clienteId, Map<Integer, Integer> cantidades) throws SQLException {
+        ReentrantLock lock = escritura[franja(clienteId)];
+        lock.lock();
+        try {
+            Map<Long, Integer> pendientesCliente = new LinkedHashMap<>();
+            tomarPendientes(clienteId).forEach((pro, cant) -> pendientesCliente.put(clave(clienteId, pro), cant));
+            Map<Long, Integer> lote = new LinkedHashMap<>(pendientesCliente);
+            cantidades.forEach((pro, cant) -> lote.merge(clave(clienteId, pro), cant, Integer::sum));
+            try {
+                escribir(lote);
+            } catch (SQLException e) {
+                // Solo vuelve a la cola lo que ya estaba pendiente; este agregado falla con la excepción
+                restaurar(pendientesCliente);
+                throw e;
+            }
+            return leerLineas(clienteId, cantidades.keySet());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Escribe los pendientes de los clientes dados (antes de leer su carrito o de comprar).
+     */
+    public void vaciar(Collection<Integer> clientes) throws SQLException {
+        if (!habilitado) {
+            return;
+        }
+        // Siempre en orden ascendente, para que dos vaciados de varias franjas no se bloqueen entre sí
+        TreeSet<Integer> franjas = new TreeSet<>();
+        for (int clienteId : clientes) {
+            franjas.add(franja(clienteId));
+        }
+        List<ReentrantLock> tomados = new ArrayList<>(franjas.size());
+        try {
+            for (int f : franjas) {
+                escritura[f].lock();
+                tomados.add(escritura[f]);
+            }
+            Map<Long, Integer> lote = new LinkedHashMap<>();
+            for (int clienteId : clientes) {
+                tomarPendientes(clienteId).forEach((pro, cant) -> lote.merge(clave(clienteId, pro), cant, Integer::sum));
+            }
+            escribirORestaurar(lote);
+        } finally {
+            tomados.forEach(ReentrantLock::unlock);
+        }
+    }
+
+    public void vaciar(int clienteId) throws SQLException {
+        vaciar(Collections.singletonList(clienteId));
+    }
+
+    /**
+     * Escribe los pendientes de todos los clientes.
+     */
+    public void vaciarTodo() throws SQLException {
+        if (!habilitado) {
+            return;
+        }
+        vaciar(new ArrayList<>(pendientes.keySet()));
+    }
+
+    /** Unidades aceptadas que aún no están en la base de datos. */
+    public long getUnidadesPendientes() {
+        return unidadesPendientes.sum();
+    }
+
+    private void vaciarTodoSilencioso() {
+        try {
+            vaciarTodo();
+        } catch (SQLException e) {
+            System.err.println("No se pudieron guardar los carritos pendientes, se reintentará: " + e.getMessage());
+        }
+    }
+
+    private Map<Integer, Integer> tomarPendientes(int clienteId) {
+        Map<Integer, Integer> carrito = pendientes.remove(clienteId);
+        if (carrito == null) {
+            return Collections.emptyMap();
+        }
+        carrito.values().forEach(cant -> unidadesPendientes.add(-cant));
+        return carrito;
+    }
+
+    private void escribirORestaurar(Map<Long, Integer> lote) throws SQLException {
+        if (lote.isEmpty()) {
+            return;
+        }
+        try {
+            escribir(lote);
+        } catch (SQLException e) {
+            restaurar(lote); // Devolver los incrementos a la cola para no perderlos
+            throw e;
+        }
+    }
+
+    private void restaurar(Map<Long, Integer> lote) {
+        lote.forEach((clave, cant) -> {
+            pendientes.compute((int) (clave >>> 32), (k, carrito) -> {
+                Map<Integer, Integer> c = carrito != null ? carrito : new LinkedHashMap<>();
+                c.merge((int) (long) clave, cant, Integer::sum);
+                return c;
+            });
+            unidadesPendientes.add(cant);
+        });
+    }
+
+    /**
+     * Suma las unidades a cada línea del carrito (una línea por cliente y producto): primero un
+     * UPDATE en lote y, para las líneas que no existían, un INSERT en lote. Si el lote choca con
+     * una restricción que no es la del índice único, se escribe línea por línea para descartar
+     * solo las que fallan. Todo va en una transacción: si lanza la excepción, no se escribió nada.
+     */
+    private void escribir(Map<Long, Integer> lote) throws SQLException {
+        try (Metricas.Medicion m = Metricas.consulta("CarritoBuffer.escribir");
+             Connection conn = Database.getConnection()) {
+            conn.setAutoCommit(false);
+            Map<Long, Integer> descartadas = Collections.emptyMap();
+            try {
+                try {
+                    escribirLote(conn, lote);
+                } catch (SQLException e) {
+                    if (!esIntegridad(e)) {
+                        throw e;
+                    }
+                    conn.rollback();
+                    descartadas = escribirPorLinea(conn, lote);
+                }
+                conn.commit();
+                m.filas(lote.size());
+                // Esas unidades nunca llegarán al carrito: no deben seguir apartadas en el inventario
+                descartadas.forEach((clave, cant) ->
+                        Inventario.getInstance().liberar((int) (clave >>> 32), (int) (long) clave, cant));
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void escribirLote(Connection conn, Map<Long, Integer> lote) throws SQLException {
+        List<Long> nuevas = actualizar(conn, lote);
+        if (nuevas.isEmpty()) {
+            return;
+        }
+        try {
+            insertar(conn, nuevas, lote);
+        } catch (SQLException e) {
+            if (!esDuplicado(e)) {
+                throw e;
+            }
+            // Otro nodo creó la línea al mismo tiempo (índice único id_cli, id_pro): sumar sobre ella
+            conn.rollback();
+            List<Long> faltantes = actualizar(conn, lote);
+            if (!faltantes.isEmpty()) {
+                insertar(conn, faltantes, lote);
+            }
+        }
+    }
+
+    /**
+     * Cada línea en su savepoint: la que viola una restricción se deshace y se descarta.
+     * @return Las líneas descartadas.
+     */
+    private Map<Long, Integer> escribirPorLinea(Connection conn, Map<Long, Integer> lote) throws SQLException {
+        Map<Long, Integer> descartadas = new LinkedHashMap<>();
+        for (Map.Entry<Long, Integer> linea : lote.entrySet()) {
+            Map<Long, Integer> una = Collections.singletonMap(linea.getKey(), linea.getValue());
+            Savepoint savepoint = conn.setSavepoint();
+            try {
+                escribirLinea(conn, una);
+                conn.releaseSavepoint(savepoint);
+            } catch (SQLException e) {
+                if (!esIntegridad(e)) {
+                    throw e;
+                }
+                conn.rollback(savepoint);
+                descartadas.put(linea.getKey(), linea.getValue());
+                System.err.println("Se descartan " + linea.getValue() + " unidades del producto " + (int) (long) linea.getKey()
+                        + " en el carrito del cliente " + (linea.getKey() >>> 32) + ": " + e.getMessage());
+            }
+        }
+        return descartadas;
+    }
+
+    private void escribirLinea(Connection conn, Map<Long, Integer> una) throws SQLException {
+        if (actualizar(conn, una).isEmpty()) {
+            return;
+        }
+        Savepoint savepoint = conn.setSavepoint();
+        try {
+            insertar(conn, new ArrayList<>(una.keySet()), una);
+        } catch (SQLException e) {
+            if (!esDuplicado(e)) {
+                throw e;
+            }
+            conn.rollback(savepoint);
+            actualizar(conn, una); // La creó otro nodo entre el UPDATE y el INSERT
+        }
+    }
+
+    /**
+     * Clave duplicada en el índice único: 1062 en MySQL; 23505 es el SQLState estándar, el que
+     * usa H2 (las demás violaciones de integridad, como una llave foránea, también son clase 23).
+     */
+    private static boolean esDuplicado(SQLException e) {
+        for (SQLException ex : causas(e)) {
+            if (ex.getErrorCode() == 1062 || "23505".equals(ex.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean esIntegridad(SQLException e) {
+        for (SQLException ex : causas(e)) {
+            if (ex.getSQLState() != null && ex.getSQLState().startsWith("23")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** La excepción y sus causas; en un lote el error del driver puede venir como causa. */
+    private static List<SQLException> causas(SQLException e) {
+        List<SQLException> causas = new ArrayList<>();
+        for (Throwable t = e; t instanceof SQLException && causas.size() < 5; t = t.getCause()) {
+            causas.add((SQLException) t);
+        }
+        return causas;
+    }
+
+    /** @return las claves cuya línea no existía. */
+    private List<Long> actualizar(Connection conn, Map<Long, Integer> lote) throws SQLException {
+        List<Long> claves = new ArrayList<>(lote.keySet());
+        List<Long> nuevas = new ArrayList<>();
+        try (PreparedStatement pstmt = SUMAR.preparar(conn)) {
+            for (long clave : claves) {
+                pstmt.setInt(1, lote.get(clave));
+                pstmt.setInt(2, (int) (clave >>> 32));
+                pstmt.setInt(3, (int) clave);
+                pstmt.addBatch();
+            }
+            int[] filas = pstmt.executeBatch();
+            for (int i = 0; i < filas.length; i++) {
+                if (filas[i] == 0) {
+                    nuevas.add(claves.get(i));
+                }
+            }
+        }
+        return nuevas;
+    }
+
+    private void insertar(Connection conn, List<Long> claves, Map<Long, Integer> lote) throws SQLException {
+        try (PreparedStatement pstmt = INSERTAR.preparar(conn)) {
+            for (long clave : claves) {
+                pstmt.setInt(1, (int) (clave >>> 32));
+                pstmt.setInt(2, (int) clave);
+                pstmt.setInt(3, lote.get(clave));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private List<CarritoItem> leerLineas(int clienteId, Collection<Integer> productos) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT id, id_pro, cantidad FROM carrito WHERE id_cli = ? AND id_pro IN (");
+        for (int i = 0; i < productos.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+        Map<Integer, CarritoItem> lineas = new LinkedHashMap<>();
+        try (Metricas.Medicion m = Metricas.consulta("CarritoBuffer.leerLineas");
+             Connection conn = Database.getConnection();
+             PreparedStatement pstmt = Sentencias.prepararVariable(conn, sql.toString())) {
+            pstmt.setInt(1, clienteId);
+            int i = 2;
+            for (int productoId : productos) {
+                pstmt.setInt(i++, productoId);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    CarritoItem item = new CarritoItem();
+                    item.id = rs.getInt("id");
+                    item.id_cli = clienteId;
+                    item.id_pro = rs.getInt("id_pro");
+                    item.cantidad = rs.getInt("cantidad");
+                    lineas.put(item.id_pro, item);
+                }
+            }
+            m.filas(lineas.size());
+        }
+        List<CarritoItem> resultado = new ArrayList<>(productos.size());
+        for (int productoId : productos) {
+            CarritoItem item = lineas.get(productoId);
+            if (item == null) {
+                throw new SQLException("Fallo al agregar al carrito, no se encontró la línea.");
+            }
+            resultado.add(item);
+        }
+        return resultado;
+    }
+
+    private static int franja(int clienteId) {
+        return Math.floorMod(clienteId, FRANJAS);
+    }
+
+    private static long clave(int clienteId, int productoId) {
+        return ((long) clienteId << 32) | (productoId & 0xffffffffL);
+    }
+}
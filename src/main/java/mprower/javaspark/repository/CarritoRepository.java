@@ -1,47 +1,286 @@
 package mprower.javaspark.repository;
 
+import mprower.javaspark.cache.CatalogoCache;
+import mprower.javaspark.cache.CatalogoSnapshot;
 import mprower.javaspark.config.Database;
+import mprower.javaspark.config.Sentencias;
+import mprower.javaspark.config.Sentencias.Sentencia;
+import mprower.javaspark.inventory.Inventario;
+import mprower.javaspark.inventory.StockInsuficienteException;
+import mprower.javaspark.metrics.Metricas;
 import mprower.javaspark.model.CarritoItem;
+import mprower.javaspark.model.CarritoResumen;
+import mprower.javaspark.model.Producto;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class CarritoRepository {
 
+    private static final Sentencia ACTUALIZAR_LINEA = Sentencias.registrar("CarritoRepository.escribirCantidades.update",
+            "UPDATE carrito SET cantidad = ? WHERE id = ? AND id_cli = ?");
+    private static final Sentencia ELIMINAR_LINEA = Sentencias.registrar("CarritoRepository.escribirCantidades.delete",
+            "DELETE FROM carrito WHERE id = ? AND id_cli = ?");
+    private static final Sentencia POR_CLIENTE = Sentencias.registrar("CarritoRepository.getCarritoByClienteId",
+            "SELECT * FROM carrito WHERE id_cli = ?");
+    private static final Sentencia DETALLADO = Sentencias.registrar("CarritoRepository.getCarritoDetallado",
+            "SELECT c.id, c.id_cli, c.id_pro, c.cantidad, " +
+            "p.nombre, p.prec, p.foto, p.cantidad AS stock, d.descripcion " +
+            "FROM carrito c " +
+            "JOIN producto p ON c.id_pro = p.id " +
+            "JOIN descripcion d ON p.id_descr = d.id " +
+            "WHERE c.id_cli = ? ORDER BY c.id");
+    private static final Sentencia LINEA_PARA_CAMBIAR = Sentencias.registrar("CarritoRepository.cambiarLinea",
+            "SELECT * FROM carrito WHERE id = ? FOR UPDATE");
+    private static final Sentencia CLIENTE_DE_LINEA = Sentencias.registrar("CarritoRepository.clienteDeLinea",
+            "SELECT id_cli FROM carrito WHERE id = ?");
+
+    private final CarritoBuffer buffer = CarritoBuffer.getInstance();
+
     /**
-     * Agrega un nuevo producto al carrito de un cliente específico.
+     * Agrega un producto al carrito de un cliente. Si el producto ya está en el carrito, suma
+     * la cantidad a esa misma línea en lugar de crear otra.
      * @param idCliente El ID del cliente.
      * @param idProducto El ID del producto a agregar.
-     * @param cantidad La cantidad del producto.
-     * @return El objeto CarritoItem recién creado.
+     * @param cantidad La cantidad del producto (mayor que cero).
+     * @return La línea del carrito con la cantidad total.
      * @throws SQLException Si ocurre un error en la base de datos.
+     * @throws mprower.javaspark.inventory.StockInsuficienteException Si no hay unidades para reservar.
      */
     public CarritoItem agregarAlCarrito(int idCliente, int idProducto, int cantidad) throws SQLException {
-        // Podrías añadir lógica aquí para verificar si el item ya existe y en su lugar actualizar la cantidad.
-        // Por ahora, simplemente lo inserta.
-        String sql = "INSERT INTO carrito (id_cli, id_pro, cantidad) VALUES (?, ?, ?)";
-        try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        validarCantidad(cantidad);
+        // Reservar primero: si no hay stock, el producto ni siquiera entra al carrito
+        Inventario.getInstance().reservar(idCliente, idProducto, cantidad);
+        try {
+            return buffer.agregarYGuardar(idCliente, idProducto, cantidad);
+        } catch (SQLException | RuntimeException e) {
+            Inventario.getInstance().liberar(idCliente, idProducto, cantidad);
+            throw e;
+        }
+    }
 
+    /**
+     * Igual que {@link #agregarAlCarrito}, pero la escritura se difiere y se agrupa con otros
+     * agregados ({@link CarritoBuffer}). Para los clics del formulario, donde no hace falta
+     * devolver la línea.
+     * @throws SQLException Si ocurre un error en la base de datos (solo sin write-behind).
+     * @throws mprower.javaspark.inventory.StockInsuficienteException Si no hay unidades para reservar.
+     */
+    public void agregarDiferido(int idCliente, int idProducto, int cantidad) throws SQLException {
+        validarCantidad(cantidad);
+        Inventario.getInstance().reservar(idCliente, idProducto, cantidad);
+        try {
+            buffer.agregar(idCliente, idProducto, cantidad);
+        } catch (SQLException | RuntimeException e) {
+            Inventario.getInstance().liberar(idCliente, idProducto, cantidad);
+            throw e;
+        }
+    }
+
+    /**
+     * Agrega varios productos al carrito de un cliente (por ejemplo, al restaurar un carrito
+     * guardado). Todos se validan primero contra el catálogo en memoria y se reservan; los
+     * válidos se escriben juntos en una transacción, con sentencias en lote.
+     * @param idCliente El ID del cliente.
+     * @param items Productos a agregar (id_pro y cantidad de cada uno).
+     * @return Un resultado por item, en el mismo orden: la línea con la cantidad total, o el error.
+     * @throws SQLException Si falla la escritura; en ese caso no se agregó ningún item.
+     */
+    public List<ResultadoLinea> agregarVarios(int idCliente, List<CarritoItem> items) throws SQLException {
+        CatalogoSnapshot catalogo = CatalogoCache.getInstance().getSnapshot();
+        Inventario inventario = Inventario.getInstance();
+        ResultadoLinea[] resultados = new ResultadoLinea[items.size()];
+        Map<Integer, Integer> reservadas = new LinkedHashMap<>();
+
+        for (int i = 0; i < items.size(); i++) {
+            CarritoItem item = items.get(i);
+            if (item.cantidad <= 0) {
+                resultados[i] = ResultadoLinea.fallo(item, 400, "La cantidad debe ser mayor que cero.");
+            } else if (!catalogo.getProducto(item.id_pro).isPresent()) {
+                resultados[i] = ResultadoLinea.fallo(item, 404, "Producto no encontrado.");
+            } else {
+                try {
+                    inventario.reservar(idCliente, item.id_pro, item.cantidad);
+                    reservadas.merge(item.id_pro, item.cantidad, Integer::sum);
+                } catch (StockInsuficienteException e) {
+                    resultados[i] = ResultadoLinea.fallo(item, 409, e.getMessage());
+                }
+            }
+        }
+        if (reservadas.isEmpty()) {
+            return List.of(resultados);
+        }
+
+        Map<Integer, CarritoItem> lineas = new HashMap<>();
+        try {
+            buffer.agregarYGuardar(idCliente, reservadas).forEach(linea -> lineas.put(linea.id_pro, linea));
+        } catch (SQLException | RuntimeException e) {
+            reservadas.forEach((pro, cant) -> inventario.liberar(idCliente, pro, cant));
+            throw e;
+        }
+        for (int i = 0; i < resultados.length; i++) {
+            if (resultados[i] == null) {
+                resultados[i] = ResultadoLinea.exito(201, lineas.get(items.get(i).id_pro));
+            }
+        }
+        return List.of(resultados);
+    }
+
+    /**
+     * Cambia la cantidad de varias líneas del carrito de un cliente en una transacción. Una
+     * cantidad de 0 o menos elimina la línea. Solo se modifican líneas del propio cliente.
+     * Las líneas se leen con SELECT ... FOR UPDATE en la misma transacción que las escribe, así
+     * que otro cambio concurrente sobre ellas espera y la diferencia de stock se calcula sobre
+     * la cantidad que realmente se reemplaza.
+     * @param idCliente El ID del cliente.
+     * @param items Líneas a cambiar (id de la línea y cantidad nueva de cada una).
+     * @return Un resultado por item, en el mismo orden.
+     * @throws SQLException Si falla la escritura; en ese caso no se cambió ninguna línea.
+     */
+    public List<ResultadoLinea> actualizarVarios(int idCliente, List<CarritoItem> items) throws SQLException {
+        buffer.vaciar(idCliente);
+        Inventario inventario = Inventario.getInstance();
+        ResultadoLinea[] resultados = new ResultadoLinea[items.size()];
+        Map<Integer, Integer> nuevas = new LinkedHashMap<>(); // id de línea -> cantidad nueva
+        List<CarritoItem> reservadas = new ArrayList<>();
+        List<CarritoItem> porLiberar = new ArrayList<>();
+
+        try (Connection conn = Database.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Map<Integer, CarritoItem> actuales = leerLineas(conn, idCliente, items);
+                calcularCambios(idCliente, items, actuales, resultados, nuevas, reservadas, porLiberar);
+                escribirCantidades(conn, idCliente, nuevas);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                reservadas.forEach(r -> inventario.liberar(idCliente, r.id_pro, r.cantidad));
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        porLiberar.forEach(r -> inventario.liberar(idCliente, r.id_pro, r.cantidad));
+        return List.of(resultados);
+    }
+
+    /**
+     * Compara cada item con la línea actual: reserva el stock de lo que aumenta y anota lo que
+     * se libera cuando el cambio ya esté guardado.
+     */
+    private void calcularCambios(int idCliente, List<CarritoItem> items, Map<Integer, CarritoItem> actuales,
+                                 ResultadoLinea[] resultados, Map<Integer, Integer> nuevas,
+                                 List<CarritoItem> reservadas, List<CarritoItem> porLiberar) throws SQLException {
+        Inventario inventario = Inventario.getInstance();
+        for (int i = 0; i < items.size(); i++) {
+            CarritoItem item = items.get(i);
+            CarritoItem actual = actuales.get(item.id);
+            if (actual == null) {
+                resultados[i] = ResultadoLinea.fallo(item, 404, "Item del carrito no encontrado.");
+                continue;
+            }
+            int cantidad = Math.max(0, item.cantidad);
+            int diferencia = cantidad - nuevas.getOrDefault(item.id, actual.cantidad);
+            CarritoItem cambio = linea(actual.id, idCliente, actual.id_pro, Math.abs(diferencia));
+            if (diferencia > 0) {
+                try {
+                    inventario.reservar(idCliente, actual.id_pro, diferencia);
+                    reservadas.add(cambio);
+                } catch (StockInsuficienteException e) {
+                    resultados[i] = ResultadoLinea.fallo(item, 409, e.getMessage());
+                    continue;
+                }
+            } else if (diferencia < 0) {
+                porLiberar.add(cambio); // Se devuelve al stock cuando el cambio ya esté guardado
+            }
+            nuevas.put(item.id, cantidad);
+            resultados[i] = ResultadoLinea.exito(200, linea(actual.id, idCliente, actual.id_pro, cantidad));
+        }
+    }
+
+    private Map<Integer, CarritoItem> leerLineas(Connection conn, int idCliente, List<CarritoItem> items) throws SQLException {
+        Map<Integer, CarritoItem> lineas = new HashMap<>();
+        if (items.isEmpty()) {
+            return lineas;
+        }
+        StringBuilder sql = new StringBuilder("SELECT * FROM carrito WHERE id_cli = ? AND id IN (");
+        for (int i = 0; i < items.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") FOR UPDATE");
+        try (Metricas.Medicion m = Metricas.consulta("CarritoRepository.leerLineas");
+             PreparedStatement pstmt = Sentencias.prepararVariable(conn, sql.toString())) {
             pstmt.setInt(1, idCliente);
-            pstmt.setInt(2, idProducto);
-            pstmt.setInt(3, cantidad);
-            pstmt.executeUpdate();
-
-            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    CarritoItem item = new CarritoItem();
-                    item.id = generatedKeys.getInt(1);
-                    item.id_cli = idCliente;
-                    item.id_pro = idProducto;
-                    item.cantidad = cantidad;
-                    return item;
+            for (int i = 0; i < items.size(); i++) {
+                pstmt.setInt(i + 2, items.get(i).id);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    CarritoItem item = mapRowToCarritoItem(rs);
+                    lineas.put(item.id, item);
+                }
+            }
+            m.filas(lineas.size());
+        }
+        return lineas;
+    }
+
+    /**
+     * Escribe las cantidades nuevas en la transacción de {@code conn}: un UPDATE en lote para las
+     * líneas que quedan y un DELETE en lote para las que llegan a cero.
+     */
+    private void escribirCantidades(Connection conn, int idCliente, Map<Integer, Integer> nuevas) throws SQLException {
+        if (nuevas.isEmpty()) {
+            return;
+        }
+        try (Metricas.Medicion m = Metricas.consulta("CarritoRepository.escribirCantidades");
+             PreparedStatement update = ACTUALIZAR_LINEA.preparar(conn);
+             PreparedStatement delete = ELIMINAR_LINEA.preparar(conn)) {
+            boolean hayUpdates = false;
+            boolean hayDeletes = false;
+            for (Map.Entry<Integer, Integer> e : nuevas.entrySet()) {
+                if (e.getValue() > 0) {
+                    update.setInt(1, e.getValue());
+                    update.setInt(2, e.getKey());
+                    update.setInt(3, idCliente);
+                    update.addBatch();
+                    hayUpdates = true;
                 } else {
-                    throw new SQLException("Fallo al agregar al carrito, no se obtuvo ID.");
+                    delete.setInt(1, e.getKey());
+                    delete.setInt(2, idCliente);
+                    delete.addBatch();
+                    hayDeletes = true;
                 }
             }
+            if (hayUpdates) {
+                update.executeBatch();
+            }
+            if (hayDeletes) {
+                delete.executeBatch();
+            }
+            m.filas(nuevas.size());
+        }
+    }
+
+    private static CarritoItem linea(int id, int idCliente, int idProducto, int cantidad) {
+        CarritoItem item = new CarritoItem();
+        item.id = id;
+        item.id_cli = idCliente;
+        item.id_pro = idProducto;
+        item.cantidad = cantidad;
+        return item;
+    }
+
+    private static void validarCantidad(int cantidad) {
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("La cantidad debe ser mayor que cero.");
         }
     }
 
@@ -52,43 +291,69 @@ public class CarritoRepository {
      * @throws SQLException Si ocurre un error en la base de datos.
      */
     public Collection<CarritoItem> getCarritoByClienteId(int idCliente) throws SQLException {
+        buffer.vaciar(idCliente);
         Collection<CarritoItem> carrito = new ArrayList<>();
-        String sql = "SELECT * FROM carrito WHERE id_cli = ?";
-        try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Metricas.Medicion m = Metricas.consulta("CarritoRepository.getCarritoByClienteId");
+             Connection conn = Database.getConnection();
+             PreparedStatement pstmt = POR_CLIENTE.preparar(conn)) {
             pstmt.setInt(1, idCliente);
             try (ResultSet rs = pstmt.executeQuery()) {
                 while(rs.next()) {
                     carrito.add(mapRowToCarritoItem(rs));
                 }
             }
+            m.filas(carrito.size());
         }
         return carrito;
     }
 
+    /**
+     * Obtiene el carrito de un cliente con los datos de cada producto en una sola consulta
+     * (JOIN con producto y descripcion), en lugar de una consulta por línea.
+     * @param idCliente El ID del cliente cuyo carrito se quiere obtener.
+     * @return Un CarritoResumen con las líneas y los totales ya calculados.
+     * @throws SQLException Si ocurre un error en la base de datos.
+     */
+    public CarritoResumen getCarritoDetallado(int idCliente) throws SQLException {
+        buffer.vaciar(idCliente);
+        List<CarritoItem> items = new ArrayList<>();
+        try (Metricas.Medicion m = Metricas.consulta("CarritoRepository.getCarritoDetallado");
+             Connection conn = Database.getConnection();
+             PreparedStatement pstmt = DETALLADO.preparar(conn)) {
+            pstmt.setInt(1, idCliente);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    CarritoItem item = mapRowToCarritoItem(rs);
+                    Producto p = new Producto();
+                    p.id = item.id_pro;
+                    p.nombre = rs.getString("nombre");
+                    p.precio = rs.getDouble("prec");
+                    p.foto = rs.getString("foto");
+                    p.cantidad = rs.getInt("stock");
+                    p.descripcion = rs.getString("descripcion");
+                    item.producto = p;
+                    items.add(item);
+                }
+            }
+            m.filas(items.size());
+        }
+        return new CarritoResumen(items);
+    }
+
     /**
      * Actualiza la cantidad de un item específico en el carrito.
      * @param idCarrito El ID del registro en la tabla 'carrito' a actualizar.
      * @param nuevaCantidad La nueva cantidad para el item.
      * @return true si la actualización fue exitosa, false si el item no fue encontrado.
      * @throws SQLException Si ocurre un error en la base de datos.
+     * @throws mprower.javaspark.inventory.StockInsuficienteException Si la cantidad aumenta y no hay unidades para reservar.
      */
     public boolean actualizarCantidad(int idCarrito, int nuevaCantidad) throws SQLException {
         // Si la nueva cantidad es 0 o menos, eliminamos el item.
         if (nuevaCantidad <= 0) {
             return eliminarDelCarrito(idCarrito);
         }
-
-        String sql = "UPDATE carrito SET cantidad = ? WHERE id = ?";
-        try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, nuevaCantidad);
-            pstmt.setInt(2, idCarrito);
-
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
-        }
+        return cambiarLinea(idCarrito, nuevaCantidad, "CarritoRepository.actualizarCantidad");
     }
 
     /**
@@ -98,13 +363,79 @@ public class CarritoRepository {
      * @throws SQLException Si ocurre un error en la base de datos.
      */
     public boolean eliminarDelCarrito(int idCarrito) throws SQLException {
-        String sql = "DELETE FROM carrito WHERE id = ?";
-        try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        return cambiarLinea(idCarrito, 0, "CarritoRepository.eliminarDelCarrito");
+    }
 
+    /**
+     * Cambia la cantidad de una línea (0 la elimina) y ajusta su reserva de stock como
+     * {@link #actualizarVarios}: la línea se lee con SELECT ... FOR UPDATE en la transacción que
+     * la escribe, lo que aumenta se reserva antes de escribir y lo que disminuye se libera
+     * cuando el cambio ya está guardado.
+     */
+    private boolean cambiarLinea(int idCarrito, int nuevaCantidad, String operacion) throws SQLException {
+        // Los pendientes del cliente se escriben antes, o sumarían sobre la cantidad nueva después
+        Integer idCliente = clienteDeLinea(idCarrito);
+        if (idCliente == null) {
+            return false;
+        }
+        buffer.vaciar(idCliente);
+        Inventario inventario = Inventario.getInstance();
+        CarritoItem actual = null;
+        int diferencia = 0;
+        try (Metricas.Medicion m = Metricas.consulta(operacion);
+             Connection conn = Database.getConnection()) {
+            conn.setAutoCommit(false);
+            boolean reservado = false;
+            try {
+                actual = leerLinea(conn, idCarrito);
+                if (actual == null) {
+                    conn.rollback();
+                    return false;
+                }
+                diferencia = nuevaCantidad - actual.cantidad;
+                if (diferencia > 0) {
+                    inventario.reservar(actual.id_cli, actual.id_pro, diferencia);
+                    reservado = true;
+                }
+                escribirCantidades(conn, actual.id_cli, Collections.singletonMap(idCarrito, nuevaCantidad));
+                conn.commit();
+                m.filas(1);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                if (reservado) {
+                    inventario.liberar(actual.id_cli, actual.id_pro, diferencia);
+                }
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        if (diferencia < 0) {
+            inventario.liberar(actual.id_cli, actual.id_pro, -diferencia);
+        }
+        return true;
+    }
+
+    private CarritoItem leerLinea(Connection conn, int idCarrito) throws SQLException {
+        try (PreparedStatement pstmt = LINEA_PARA_CAMBIAR.preparar(conn)) {
+            pstmt.setInt(1, idCarrito);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? mapRowToCarritoItem(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * Cliente dueño de una línea del carrito, para escribir solo sus pendientes.
+     * @return El ID del cliente, o null si la línea no existe.
+     */
+    private Integer clienteDeLinea(int idCarrito) throws SQLException {
+        try (Connection conn = Database.getConnection();
+             PreparedStatement pstmt = CLIENTE_DE_LINEA.preparar(conn)) {
             pstmt.setInt(1, idCarrito);
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
         }
     }
 
@@ -122,4 +453,35 @@ public class CarritoRepository {
         item.cantidad = rs.getInt("cantidad");
         return item;
     }
-}
\ No newline at end of file
+
+    /**
+     * Resultado de un item en una operación por lotes: la línea del carrito o el error.
+     */
+    public static class ResultadoLinea {
+        public final int id;
+        public final int idProducto;
+        public final int cantidad;
+        public final int status;
+        public final String error;
+
+        private ResultadoLinea(int id, int idProducto, int cantidad, int status, String error) {
+            this.id = id;
+            this.idProducto = idProducto;
+            this.cantidad = cantidad;
+            this.status = status;
+            this.error = error;
+        }
+
+        static ResultadoLinea exito(int status, CarritoItem linea) {
+            return new ResultadoLinea(linea.id, linea.id_pro, linea.cantidad, status, null);
+        }
+
+        static ResultadoLinea fallo(CarritoItem item, int status, String error) {
+            return new ResultadoLinea(item.id, item.id_pro, item.cantidad, status, error);
+        }
+
+        public boolean isExito() {
+            return error == null;
+        }
+    }
+}
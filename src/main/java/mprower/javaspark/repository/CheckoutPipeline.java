@@ -0,0 +1,160 @@
+package mprower.javaspark.repository;
+
+import mprower.javaspark.config.AppConfig;
+import mprower.javaspark.model.Venta;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cola de compras con group commit.
+ * <p>
+ * En una venta masiva el límite es la latencia del commit en MySQL (un fsync por compra).
+ * Aquí las compras concurrentes se encolan y un solo hilo las procesa en grupos de hasta
+ * checkout.groupCommit.maxSize, con una transacción y un commit por grupo
+ * ({@link VentaRepository#crearVentasEnGrupo}). Mientras un grupo se confirma, las compras
+ * que llegan se acumulan para el siguiente, así que el tamaño del grupo crece solo con la carga.
+ * <p>
+ * Cada cliente recibe su propio resultado. Si el grupo completo falla (por ejemplo, el commit),
+ * sus compras se reintentan una por una con la transacción normal.
+ * <p>
+ * Una compra que sigue en la cola al vencer checkout.groupCommit.timeoutMs se cancela y se
+ * saca de la cola, así que el error que recibe el cliente significa que no se compró nada y
+ * puede reintentar. Si el hilo del grupo ya la había tomado, se espera su resultado real.
+ */
+public class CheckoutPipeline {
+
+    private static final CheckoutPipeline INSTANCE = new CheckoutPipeline(new VentaRepository());
+
+    private final VentaRepository ventaRepository;
+    private final boolean habilitado = AppConfig.getBoolean("checkout.groupCommit.enabled", true);
+    private final int maxGrupo = AppConfig.getInt("checkout.groupCommit.maxSize", 32);
+    private final long esperaMs = AppConfig.getLong("checkout.groupCommit.maxWaitMs", 2);
+    private final long timeoutMs = AppConfig.getLong("checkout.groupCommit.timeoutMs", 30_000);
+    private final BlockingQueue<Pendiente> cola = new LinkedBlockingQueue<>();
+
+    private CheckoutPipeline(VentaRepository ventaRepository) {
+        this.ventaRepository = ventaRepository;
+        if (habilitado) {
+            Thread worker = new Thread(this::procesarCola, "checkout-group-commit");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    public static CheckoutPipeline getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Realiza la compra del carrito del cliente y espera su resultado.
+     * @return La venta creada.
+     * @throws SQLException si la compra falló en la base de datos.
+     * @throws IllegalStateException si el carrito está vacío.
+     */
+    public Venta comprar(int clienteId) throws SQLException {
+        if (!habilitado) {
+            return ventaRepository.crearVentaDesdeCarrito(clienteId);
+        }
+        Pendiente pendiente = new Pendiente(clienteId);
+        cola.add(pendiente);
+        try {
+            try {
+                return pendiente.resultado.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (pendiente.estado.compareAndSet(Pendiente.EN_COLA, Pendiente.CANCELADA)) {
+                    cola.remove(pendiente);
+                    throw new SQLException("La compra no se pudo procesar a tiempo y no se realizó; intenta de nuevo.", e);
+                }
+                // Ya está en una transacción: su resultado (venta o error) es el que cuenta
+                return pendiente.resultado.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof SQLException) {
+                throw (SQLException) causa;
+            }
+            if (causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            throw new SQLException(causa);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Compra interrumpida", e);
+        }
+    }
+
+    private void procesarCola() {
+        List<Pendiente> grupo = new ArrayList<>(maxGrupo);
+        while (true) {
+            try {
+                grupo.add(cola.take());
+                // Dar unos milisegundos para que se sumen más compras al grupo
+                if (esperaMs > 0 && cola.size() < maxGrupo - 1) {
+                    Thread.sleep(esperaMs);
+                }
+                cola.drainTo(grupo, maxGrupo - 1);
+                // Las que el cliente canceló por tiempo no se compran
+                grupo.removeIf(p -> !p.estado.compareAndSet(Pendiente.EN_COLA, Pendiente.TOMADA));
+                if (!grupo.isEmpty()) {
+                    procesarGrupo(grupo);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                grupo.forEach(p -> p.resultado.completeExceptionally(e));
+            } finally {
+                grupo.clear();
+            }
+        }
+    }
+
+    private void procesarGrupo(List<Pendiente> grupo) {
+        List<Integer> clientes = new ArrayList<>(grupo.size());
+        grupo.forEach(p -> clientes.add(p.clienteId));
+        try {
+            List<VentaRepository.ResultadoCheckout> resultados = ventaRepository.crearVentasEnGrupo(clientes);
+            for (int i = 0; i < grupo.size(); i++) {
+                VentaRepository.ResultadoCheckout r = resultados.get(i);
+                if (r.error == null) {
+                    grupo.get(i).resultado.complete(r.venta);
+                } else {
+                    grupo.get(i).resultado.completeExceptionally(r.error);
+                }
+            }
+        } catch (SQLException e) {
+            // Falló el grupo entero: cada compra por separado, para que un problema no afecte a todas
+            System.err.println("Falló el group commit de " + grupo.size() + " compras, se reintentan una por una: " + e.getMessage());
+            for (Pendiente p : grupo) {
+                try {
+                    p.resultado.complete(ventaRepository.crearVentaDesdeCarrito(p.clienteId));
+                } catch (SQLException | RuntimeException ex) {
+                    p.resultado.completeExceptionally(ex);
+                }
+            }
+        }
+    }
+
+    private static final class Pendiente {
+        static final int EN_COLA = 0;
+        static final int TOMADA = 1;
+        static final int CANCELADA = 2;
+
+        final int clienteId;
+        final CompletableFuture<Venta> resultado = new CompletableFuture<>();
+        final AtomicInteger estado = new AtomicInteger(EN_COLA);
+
+        Pendiente(int clienteId) {
+            this.clienteId = clienteId;
+        }
+    }
+}
@@ -1,29 +1,45 @@
 package mprower.javaspark.repository;
 
+import mprower.javaspark.cache.NombresClientes;
 import mprower.javaspark.config.Database;
+import mprower.javaspark.config.Sentencias;
+import mprower.javaspark.config.Sentencias.Sentencia;
+import mprower.javaspark.metrics.Metricas;
 import mprower.javaspark.model.Cliente;
-import org.mindrot.jbcrypt.BCrypt;
+import mprower.javaspark.util.PasswordHasher;
 
 import java.sql.*;
 import java.util.Optional;
 
 public class ClienteRepository {
 
+    private static final Sentencia INSERTAR = Sentencias.registrar("ClienteRepository.registrar",
+            "INSERT INTO cliente (nombre, password, numero) VALUES (?, ?, ?)");
+    private static final Sentencia POR_NOMBRE = Sentencias.registrar("ClienteRepository.findByNombre",
+            "SELECT * FROM cliente WHERE nombre = ?");
+    private static final Sentencia EXISTE_NOMBRE = Sentencias.registrar("ClienteRepository.existeNombre",
+            "SELECT 1 FROM cliente WHERE nombre = ? LIMIT 1");
+    private static final Sentencia ACTUALIZAR_PASSWORD = Sentencias.registrar("ClienteRepository.actualizarPassword",
+            "UPDATE cliente SET password = ? WHERE id = ?");
+
+    private final NombresClientes nombres = NombresClientes.getInstance();
+
     public Cliente registrar(Cliente cliente) throws SQLException {
-        // Hashear la contraseña antes de guardarla
-        String hashedPassword = BCrypt.hashpw(cliente.password, BCrypt.gensalt());
+        // Hashear la contraseña antes de guardarla (en el pool de BCrypt, no en el hilo de la petición)
+        String hashedPassword = PasswordHasher.hash(cliente.password, "register");
 
-        String sql = "INSERT INTO cliente (nombre, password, numero) VALUES (?, ?, ?)";
-        try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (Metricas.Medicion m = Metricas.consulta("ClienteRepository.registrar");
+             Connection conn = Database.getConnection();
+             PreparedStatement pstmt = INSERTAR.preparar(conn, Statement.RETURN_GENERATED_KEYS)) {
 
             pstmt.setString(1, cliente.nombre);
             pstmt.setString(2, hashedPassword);
             pstmt.setString(3, cliente.numero);
-            pstmt.executeUpdate();
+            m.filas(pstmt.executeUpdate());
 
             try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
                 if (generatedKeys.next()) {
+                    nombres.agregar(cliente.nombre);
                     cliente.id = generatedKeys.getInt(1);
                     cliente.password = null; // No devolver el hash
                     return cliente;
@@ -35,14 +51,23 @@ public class ClienteRepository {
     }
 
     public Optional<Cliente> findByNombre(String nombre) throws SQLException {
-        String sql = "SELECT * FROM cliente WHERE nombre = ?";
-        try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        Optional<Cliente> reciente = nombres.reciente(nombre);
+        if (reciente.isPresent()) {
+            return reciente;
+        }
+        if (!nombres.podriaExistir(nombre)) {
+            return Optional.empty();
+        }
+
+        try (Metricas.Medicion m = Metricas.consulta("ClienteRepository.findByNombre");
+             Connection conn = Database.getConnection();
+             PreparedStatement pstmt = POR_NOMBRE.preparar(conn)) {
 
             pstmt.setString(1, nombre);
             ResultSet rs = pstmt.executeQuery();
 
             if (rs.next()) {
+                m.filas(1);
                 Cliente cliente = new Cliente();
                 cliente.id = rs.getInt("id");
                 cliente.nombre = rs.getString("nombre");
@@ -53,4 +78,45 @@ public class ClienteRepository {
         }
         return Optional.empty();
     }
-}
\ No newline at end of file
+
+    /**
+     * Indica si ya hay un cliente con ese nombre. Siempre consulta la base de datos: el filtro
+     * en memoria puede no conocer aún un nombre dado de alta en otro nodo, y aquí un falso
+     * "no existe" duplicaría al cliente.
+     */
+    public boolean existeNombre(String nombre) throws SQLException {
+        try (Metricas.Medicion m = Metricas.consulta("ClienteRepository.existeNombre");
+             Connection conn = Database.getConnection();
+             PreparedStatement pstmt = EXISTE_NOMBRE.preparar(conn)) {
+
+            pstmt.setString(1, nombre);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                boolean existe = rs.next();
+                m.filas(existe ? 1 : 0);
+                return existe;
+            }
+        }
+    }
+
+    /**
+     * Guarda al cliente recién autenticado para que su siguiente login no consulte la base de datos.
+     */
+    public void recordarAutenticado(Cliente cliente) {
+        nombres.recordar(cliente);
+    }
+
+    /**
+     * Reemplaza el hash de la contraseña (por ejemplo, al regenerarlo con un costo nuevo).
+     */
+    public void actualizarPassword(int id, String hashedPassword) throws SQLException {
+        try (Metricas.Medicion m = Metricas.consulta("ClienteRepository.actualizarPassword");
+             Connection conn = Database.getConnection();
+             PreparedStatement pstmt = ACTUALIZAR_PASSWORD.preparar(conn)) {
+
+            pstmt.setString(1, hashedPassword);
+            pstmt.setInt(2, id);
+            m.filas(pstmt.executeUpdate());
+        }
+        nombres.olvidar(id);
+    }
+}
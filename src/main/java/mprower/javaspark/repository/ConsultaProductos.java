@@ -0,0 +1,149 @@
+package mprower.javaspark.repository;
+
+import mprower.javaspark.model.Producto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Parámetros de una página del catálogo: orden, tamaño, cursor y campos a devolver.
+ * <p>
+ * La paginación es por cursor (keyset): en lugar de OFFSET, cada página empieza después
+ * del último producto de la anterior, identificado por el valor del campo de orden y su ID.
+ * Así la base de datos salta directo a la posición con el índice y no recorre las filas previas.
+ */
+public class ConsultaProductos {
+
+    public static final int LIMITE_POR_DEFECTO = 50;
+    public static final int LIMITE_MAXIMO = 200;
+
+    /**
+     * Campos de producto que se pueden pedir, con su nombre en el JSON y su columna en SQL.
+     */
+    public enum Campo {
+        ID("id", "p.id", "id"),
+        NOMBRE("nombre", "p.nombre", "nombre"),
+        PRECIO("precio", "p.prec", "prec"),
+        FOTO("foto", "p.foto", "foto"),
+        CANTIDAD("cantidad", "p.cantidad", "cantidad"),
+        DESCRIPCION("descripcion", "d.descripcion", "descripcion");
+
+        final String nombre;
+        final String columna;
+        final String etiqueta;
+
+        Campo(String nombre, String columna, String etiqueta) {
+            this.nombre = nombre;
+            this.columna = columna;
+            this.etiqueta = etiqueta;
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+
+        public static Campo desdeNombre(String nombre) {
+            for (Campo c : values()) {
+                if (c.nombre.equalsIgnoreCase(nombre.trim())) {
+                    return c;
+                }
+            }
+            throw new IllegalArgumentException("Campo desconocido: " + nombre);
+        }
+    }
+
+    private static final Set<Campo> ORDENABLES = EnumSet.of(Campo.ID, Campo.NOMBRE, Campo.PRECIO, Campo.CANTIDAD);
+
+    public Campo orden = Campo.ID;
+    public boolean descendente = false;
+    public int limite = LIMITE_POR_DEFECTO;
+    public Set<Campo> campos = EnumSet.allOf(Campo.class);
+
+    // Posición del último producto de la página anterior (null = primera página)
+    public String despuesDeValor;
+    public int despuesDeId;
+
+    /**
+     * Construye la consulta a partir de los parámetros de la URL (todos opcionales).
+     * @param limit Tamaño de página, entre 1 y LIMITE_MAXIMO.
+     * @param after Cursor devuelto por la página anterior.
+     * @param sort Campo de orden (id, nombre, precio, cantidad); con "-" delante es descendente.
+     * @param fields Lista de campos separados por coma.
+     * @throws IllegalArgumentException si algún parámetro no es válido.
+     */
+    public static ConsultaProductos desdeParametros(String limit, String after, String sort, String fields) {
+        ConsultaProductos c = new ConsultaProductos();
+        if (limit != null) {
+            c.limite = Integer.parseInt(limit);
+            if (c.limite < 1 || c.limite > LIMITE_MAXIMO) {
+                throw new IllegalArgumentException("limit debe estar entre 1 y " + LIMITE_MAXIMO);
+            }
+        }
+        if (sort != null && !sort.isBlank()) {
+            c.descendente = sort.startsWith("-");
+            c.orden = Campo.desdeNombre(c.descendente ? sort.substring(1) : sort);
+            if (!ORDENABLES.contains(c.orden)) {
+                throw new IllegalArgumentException("No se puede ordenar por " + c.orden.nombre);
+            }
+        }
+        if (fields != null && !fields.isBlank()) {
+            c.campos = EnumSet.noneOf(Campo.class);
+            for (String f : fields.split(",")) {
+                c.campos.add(Campo.desdeNombre(f));
+            }
+            // El ID siempre se devuelve: identifica al producto y es parte del cursor
+            c.campos.add(Campo.ID);
+        }
+        if (after != null && !after.isBlank()) {
+            c.leerCursor(after);
+        }
+        return c;
+    }
+
+    /**
+     * Genera el cursor que apunta justo después del producto dado.
+     */
+    public String cursorDespuesDe(Producto ultimo) {
+        String valor;
+        switch (orden) {
+            case NOMBRE: valor = ultimo.getNombre(); break;
+            case PRECIO: valor = Double.toString(ultimo.getPrecio()); break;
+            case CANTIDAD: valor = Integer.toString(ultimo.getCantidad()); break;
+            default: valor = Integer.toString(ultimo.getId()); break;
+        }
+        String plano = orden.nombre + (descendente ? "-" : "+") + "|" + ultimo.getId() + "|" + valor;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plano.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void leerCursor(String cursor) {
+        String plano;
+        try {
+            plano = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+        // orden|id|valor (el valor va al final porque un nombre puede contener '|')
+        String[] partes = plano.split("\\|", 3);
+        String ordenEsperado = orden.nombre + (descendente ? "-" : "+");
+        if (partes.length != 3 || !partes[0].equals(ordenEsperado)) {
+            throw new IllegalArgumentException("El cursor no corresponde al orden solicitado");
+        }
+        try {
+            despuesDeId = Integer.parseInt(partes[1]);
+            if (orden == Campo.PRECIO) {
+                Double.parseDouble(partes[2]);
+            } else if (orden != Campo.NOMBRE) {
+                Integer.parseInt(partes[2]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+        despuesDeValor = partes[2];
+    }
+
+    boolean necesitaDescripcion() {
+        return campos.contains(Campo.DESCRIPCION);
+    }
+}
@@ -0,0 +1,168 @@
+package mprower.javaspark.repository;
+
+import mprower.javaspark.config.AppConfig;
+import mprower.javaspark.config.Database;
+import mprower.javaspark.config.Sentencias;
+import mprower.javaspark.config.Sentencias.Sentencia;
+import mprower.javaspark.metrics.Metricas;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Asigna folios de venta únicos sin ir a la base de datos en cada compra.
+ * <p>
+ * Cada nodo reserva un bloque de valores consecutivos de la tabla folio_secuencia
+ * (SELECT ... FOR UPDATE + UPDATE en su propia transacción), y los reparte en memoria con un
+ * contador atómico. Como los bloques nunca se solapan, los folios son únicos aunque haya
+ * varios nodos. Los valores de un bloque que no se usen (por ejemplo, al reiniciar) se pierden:
+ * los folios son únicos y crecientes por nodo, pero no consecutivos.
+ * <p>
+ * Reservar un bloque toma una conexión del pool mientras los demás esperan el lock. Por eso los
+ * folios se piden antes de abrir la conexión de la compra: si quien espera tuviera ya su conexión
+ * (y su permiso de db.maxConcurrent), todas podrían quedar ocupadas por compras esperando un
+ * bloque que nadie puede reservar.
+ */
+public class FolioAllocator {
+
+    private static final Sentencia LEER = Sentencias.registrar("FolioAllocator.leer",
+            "SELECT siguiente FROM folio_secuencia WHERE nombre = ? FOR UPDATE");
+    private static final Sentencia CREAR = Sentencias.registrar("FolioAllocator.crear",
+            "INSERT INTO folio_secuencia (nombre, siguiente) VALUES (?, ?)");
+    private static final Sentencia AVANZAR = Sentencias.registrar("FolioAllocator.avanzar",
+            "UPDATE folio_secuencia SET siguiente = siguiente + ? WHERE nombre = ?");
+
+    private static final FolioAllocator INSTANCE =
+            new FolioAllocator("venta", AppConfig.getInt("ventas.folio.bloque", 1000), 1_000_000);
+
+    private final String secuencia;
+    private final int tamanoBloque;
+    private final int valorInicial;
+    private final AtomicReference<Bloque> actual = new AtomicReference<>(Bloque.AGOTADO);
+    // Lock y no synchronized: la reserva bloquea en JDBC (ver server.virtualThreads)
+    private final ReentrantLock reserva = new ReentrantLock();
+
+    private FolioAllocator(String secuencia, int tamanoBloque, int valorInicial) {
+        this.secuencia = secuencia;
+        this.tamanoBloque = tamanoBloque;
+        this.valorInicial = valorInicial;
+    }
+
+    public static FolioAllocator getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Devuelve el siguiente folio. Solo consulta la base de datos cuando se acaba el bloque, así
+     * que no debe llamarse con una conexión del pool abierta.
+     * @throws SQLException si no se pudo reservar un bloque nuevo.
+     */
+    public int siguiente() throws SQLException {
+        while (true) {
+            Bloque bloque = actual.get();
+            int folio = bloque.tomar();
+            if (folio >= 0) {
+                return folio;
+            }
+            reserva.lock();
+            try {
+                // Otro hilo pudo haber reservado mientras esperábamos el lock
+                if (actual.get() == bloque) {
+                    int inicio;
+                    try {
+                        inicio = reservarBloque();
+                    } catch (SQLIntegrityConstraintViolationException e) {
+                        // Otro nodo creó la fila de la secuencia al mismo tiempo; ahora ya existe
+                        inicio = reservarBloque();
+                    }
+                    actual.set(new Bloque(inicio, inicio + tamanoBloque));
+                }
+            } finally {
+                reserva.unlock();
+            }
+        }
+    }
+
+    /**
+     * Devuelve varios folios a la vez (por ejemplo, uno por compra de un grupo). Los que no se
+     * usen se pierden, como los de un bloque al reiniciar.
+     * @throws SQLException si no se pudo reservar un bloque nuevo.
+     */
+    public int[] siguientes(int cantidad) throws SQLException {
+        int[] folios = new int[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            folios[i] = siguiente();
+        }
+        return folios;
+    }
+
+    /**
+     * Avanza la secuencia en la base de datos y devuelve el inicio del bloque reservado.
+     * Usa su propia conexión para que el bloqueo de la fila dure lo mínimo.
+     */
+    private int reservarBloque() throws SQLException {
+        try (Metricas.Medicion m = Metricas.consulta("FolioAllocator.reservarBloque");
+             Connection conn = Database.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                int inicio;
+                try (PreparedStatement pstmt = LEER.preparar(conn)) {
+                    pstmt.setString(1, secuencia);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        inicio = rs.next() ? rs.getInt(1) : -1;
+                    }
+                }
+                if (inicio < 0) {
+                    // Primera vez: crear la fila (si otro nodo la creó antes, falla por la llave y se reintenta)
+                    inicio = valorInicial;
+                    try (PreparedStatement pstmt = CREAR.preparar(conn)) {
+                        pstmt.setString(1, secuencia);
+                        pstmt.setInt(2, inicio + tamanoBloque);
+                        pstmt.executeUpdate();
+                    }
+                } else {
+                    try (PreparedStatement pstmt = AVANZAR.preparar(conn)) {
+                        pstmt.setInt(1, tamanoBloque);
+                        pstmt.setString(2, secuencia);
+                        pstmt.executeUpdate();
+                    }
+                }
+                conn.commit();
+                m.filas(1);
+                return inicio;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Rango [siguiente, fin) de folios reservados por este nodo.
+     */
+    private static final class Bloque {
+        static final Bloque AGOTADO = new Bloque(0, 0);
+
+        private final AtomicInteger siguiente;
+        private final int fin;
+
+        Bloque(int inicio, int fin) {
+            this.siguiente = new AtomicInteger(inicio);
+            this.fin = fin;
+        }
+
+        /** @return un folio del bloque, o -1 si ya se acabó. */
+        int tomar() {
+            int folio = siguiente.getAndIncrement();
+            return folio < fin ? folio : -1;
+        }
+    }
+}
@@ -1,40 +1,168 @@
 package mprower.javaspark.repository;
 
+import mprower.javaspark.cache.IndiceOfertas;
 import mprower.javaspark.config.Database;
+import mprower.javaspark.config.Sentencias;
+import mprower.javaspark.config.Sentencias.Sentencia;
+import mprower.javaspark.metrics.Metricas;
+import mprower.javaspark.model.PaginaProductos;
 import mprower.javaspark.model.Producto;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import mprower.javaspark.model.Producto; // Asegúrate de que la ruta sea correcta
 import mprower.javaspark.config.Database;
 
 public class ProductoRepository {
 
+    private static final Sentencia POR_ID = Sentencias.registrar("ProductoRepository.getProductoById",
+            "SELECT p.*, d.descripcion FROM producto p JOIN descripcion d ON p.id_descr = d.id WHERE p.id = ?");
+
     public Collection<Producto> getAllProductos() throws SQLException {
         Collection<Producto> productos = new ArrayList<>();
         // Usamos un JOIN para obtener la descripción
         String sql = "SELECT p.*, d.descripcion FROM producto p JOIN descripcion d ON p.id_descr = d.id";
-        try (Connection conn = Database.getConnection();
+        try (Metricas.Medicion m = Metricas.consulta("ProductoRepository.getAllProductos");
+             Connection conn = Database.getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
             while (rs.next()) {
                 productos.add(mapRowToProducto(rs));
             }
+            m.filas(productos.size());
         }
         return productos;
     }
 
+    /**
+     * Recorre todo el catálogo fila por fila con un cursor de solo avance, entregando cada
+     * producto al consumidor sin acumularlos en una lista.
+     * @param consumidor Recibe cada producto (por ejemplo, para escribirlo en la respuesta).
+     * @return El número de productos leídos.
+     * @throws SQLException si ocurre un error en la base de datos.
+     * @throws IOException si el consumidor falla al escribir.
+     */
+    public int recorrerProductos(Streaming.Consumidor<Producto> consumidor) throws SQLException, IOException {
+        String sql = "SELECT p.*, d.descripcion FROM producto p JOIN descripcion d ON p.id_descr = d.id";
+        try (Metricas.Medicion m = Metricas.consulta("ProductoRepository.recorrerProductos")) {
+            int filas = Streaming.recorrer(sql, this::mapRowToProducto, consumidor);
+            m.filas(filas);
+            return filas;
+        }
+    }
+
+    /**
+     * Obtiene una página del catálogo con paginación por cursor, orden y proyección
+     * resueltos en SQL. Si no se pide la descripción, no se hace el JOIN con descripcion.
+     * @param consulta Orden, tamaño de página, cursor y campos a leer.
+     * @return Los productos de la página (solo con los campos pedidos) y el cursor siguiente.
+     * @throws SQLException si ocurre un error en la base de datos.
+     */
+    public PaginaProductos getPagina(ConsultaProductos consulta) throws SQLException {
+        Set<ConsultaProductos.Campo> columnas = EnumSet.copyOf(consulta.campos);
+        columnas.add(ConsultaProductos.Campo.ID);
+        columnas.add(consulta.orden);
+
+        StringBuilder sql = new StringBuilder("SELECT ");
+        String separador = "";
+        for (ConsultaProductos.Campo c : columnas) {
+            sql.append(separador).append(c.columna);
+            separador = ", ";
+        }
+        sql.append(" FROM producto p");
+        if (consulta.necesitaDescripcion()) {
+            sql.append(" JOIN descripcion d ON p.id_descr = d.id");
+        }
+
+        String col = consulta.orden.columna;
+        String op = consulta.descendente ? "<" : ">";
+        if (consulta.despuesDeValor != null) {
+            if (consulta.orden == ConsultaProductos.Campo.ID) {
+                sql.append(" WHERE p.id ").append(op).append(" ?");
+            } else if (consulta.orden == ConsultaProductos.Campo.PRECIO) {
+                // prec es FLOAT: en vez de igualdad exacta se usa una ventana menor a un centavo
+                sql.append(" WHERE (p.prec ").append(op).append(" ? OR (p.prec BETWEEN ? AND ? AND p.id ")
+                        .append(op).append(" ?))");
+            } else {
+                sql.append(" WHERE (").append(col).append(' ').append(op).append(" ? OR (")
+                        .append(col).append(" = ? AND p.id ").append(op).append(" ?))");
+            }
+        }
+        String dir = consulta.descendente ? " DESC" : " ASC";
+        sql.append(" ORDER BY ").append(col).append(dir);
+        if (consulta.orden != ConsultaProductos.Campo.ID) {
+            sql.append(", p.id").append(dir);
+        }
+        sql.append(" LIMIT ?");
+
+        List<Producto> productos = new ArrayList<>();
+        try (Metricas.Medicion m = Metricas.consulta("ProductoRepository.getPagina");
+             Connection conn = Database.getConnection();
+             PreparedStatement pstmt = Sentencias.prepararVariable(conn, sql.toString())) {
+            int i = 1;
+            if (consulta.despuesDeValor != null) {
+                switch (consulta.orden) {
+                    case ID:
+                        pstmt.setInt(i++, consulta.despuesDeId);
+                        break;
+                    case PRECIO:
+                        double precio = Double.parseDouble(consulta.despuesDeValor);
+                        pstmt.setDouble(i++, consulta.descendente ? precio - 0.005 : precio + 0.005);
+                        pstmt.setDouble(i++, precio - 0.005);
+                        pstmt.setDouble(i++, precio + 0.005);
+                        pstmt.setInt(i++, consulta.despuesDeId);
+                        break;
+                    case CANTIDAD:
+                        int cantidad = Integer.parseInt(consulta.despuesDeValor);
+                        pstmt.setInt(i++, cantidad);
+                        pstmt.setInt(i++, cantidad);
+                        pstmt.setInt(i++, consulta.despuesDeId);
+                        break;
+                    default:
+                        pstmt.setString(i++, consulta.despuesDeValor);
+                        pstmt.setString(i++, consulta.despuesDeValor);
+                        pstmt.setInt(i++, consulta.despuesDeId);
+                        break;
+                }
+            }
+            // Se pide una fila de más para saber si hay otra página
+            pstmt.setInt(i, consulta.limite + 1);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    productos.add(mapRowToProducto(rs, columnas));
+                }
+            }
+            m.filas(productos.size());
+        }
+
+        String siguiente = null;
+        if (productos.size() > consulta.limite) {
+            productos.remove(productos.size() - 1);
+            siguiente = consulta.cursorDespuesDe(productos.get(productos.size() - 1));
+        }
+        return new PaginaProductos(productos, siguiente);
+    }
+
     public Optional<Producto> getProductoById(int id) throws SQLException {
-        String sql = "SELECT p.*, d.descripcion FROM producto p JOIN descripcion d ON p.id_descr = d.id WHERE p.id = ?";
-        try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Metricas.Medicion m = Metricas.consulta("ProductoRepository.getProductoById");
+             Connection conn = Database.getConnection();
+             PreparedStatement pstmt = POR_ID.preparar(conn)) {
             pstmt.setInt(1, id);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
+                    m.filas(1);
                     return Optional.of(mapRowToProducto(rs));
                 }
             }
@@ -43,34 +171,66 @@ public class ProductoRepository {
     }
 
     /**
-     * Obtiene una lista de todos los productos que están marcados como oferta.
-     * Reutiliza la lógica de mapeo y se une a la tabla de ofertas y descripciones.
-     * @return Una colección de objetos Producto en oferta.
+     * Carga los IDs de producto de la tabla oferta en un índice de bits.
+     * @return Un IndiceOfertas con un bit encendido por cada producto en oferta.
      * @throws SQLException si ocurre un error en la base de datos.
      */
-    public Collection<Producto> getProductosEnOferta() throws SQLException {
-        Collection<Producto> productos = new ArrayList<>();
-        // Este SQL es la clave: une producto, oferta y descripcion para obtener toda la info.
-        String sql = "SELECT p.*, d.descripcion " +
-                "FROM producto p " +
-                "JOIN oferta o ON p.id = o.id_pro " +
-                "JOIN descripcion d ON p.id_descr = d.id";
+    public IndiceOfertas cargarIndiceOfertas() throws SQLException {
+        BitSet ids = new BitSet();
+        String sql = "SELECT id_pro FROM oferta";
+        try (Metricas.Medicion m = Metricas.consulta("ProductoRepository.cargarIndiceOfertas");
+             Connection conn = Database.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+
+            while (rs.next()) {
+                ids.set(rs.getInt("id_pro"));
+            }
+            m.filas(ids.cardinality());
+        }
+        return new IndiceOfertas(ids);
+    }
 
-        try (Connection conn = Database.getConnection();
+    /**
+     * Obtiene solo el stock (cantidad) de cada producto, sin el JOIN con descripcion.
+     * Lo usa CatalogoCache para refrescar el único campo que cambia seguido.
+     * @return Un mapa de ID de producto a cantidad disponible.
+     * @throws SQLException si ocurre un error en la base de datos.
+     */
+    public Map<Integer, Integer> getStockActual() throws SQLException {
+        Map<Integer, Integer> stock = new HashMap<>();
+        String sql = "SELECT id, cantidad FROM producto";
+        try (Metricas.Medicion m = Metricas.consulta("ProductoRepository.getStockActual");
+             Connection conn = Database.getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
             while (rs.next()) {
-                // Reutilizamos tu método existente para convertir la fila en un objeto Producto. ¡Perfecto!
-                productos.add(mapRowToProducto(rs));
+                stock.put(rs.getInt("id"), rs.getInt("cantidad"));
             }
+            m.filas(stock.size());
         }
-        return productos;
+        return stock;
     }
 
 
     // CRUD de productos (Create, Update, Delete) puede ser añadido aquí
 
+    private Producto mapRowToProducto(ResultSet rs, Set<ConsultaProductos.Campo> columnas) throws SQLException {
+        Producto p = new Producto();
+        for (ConsultaProductos.Campo c : columnas) {
+            switch (c) {
+                case ID: p.id = rs.getInt(c.etiqueta); break;
+                case NOMBRE: p.nombre = rs.getString(c.etiqueta); break;
+                case PRECIO: p.precio = rs.getDouble(c.etiqueta); break;
+                case FOTO: p.foto = rs.getString(c.etiqueta); break;
+                case CANTIDAD: p.cantidad = rs.getInt(c.etiqueta); break;
+                case DESCRIPCION: p.descripcion = rs.getString(c.etiqueta); break;
+            }
+        }
+        return p;
+    }
+
     private Producto mapRowToProducto(ResultSet rs) throws SQLException {
         Producto p = new Producto();
         p.id = rs.getInt("id");
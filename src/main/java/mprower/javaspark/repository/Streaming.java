@@ -0,0 +1,61 @@
+package mprower.javaspark.repository;
+
+import mprower.javaspark.config.AppConfig;
+import mprower.javaspark.config.Database;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Lectura de consultas grandes fila por fila, sin cargar el resultado completo en memoria.
+ * El ResultSet es de solo avance y solo lectura, con un fetch size limitado
+ * (db.stream.fetchSize); con MySQL hace falta useCursorFetch=true en db.url para que
+ * el servidor entregue las filas por bloques en lugar de todas de golpe.
+ */
+public final class Streaming {
+
+    private static final int FETCH_SIZE = AppConfig.getInt("db.stream.fetchSize", 500);
+
+    private Streaming() {
+    }
+
+    /** Convierte la fila actual del ResultSet en un objeto. */
+    @FunctionalInterface
+    public interface Mapeador<T> {
+        T mapear(ResultSet rs) throws SQLException;
+    }
+
+    /** Recibe cada objeto leído, normalmente para escribirlo en la respuesta. */
+    @FunctionalInterface
+    public interface Consumidor<T> {
+        void aceptar(T valor) throws IOException;
+    }
+
+    /**
+     * Ejecuta la consulta y entrega cada fila al consumidor en cuanto se lee.
+     * @param sql La consulta a ejecutar (sin parámetros).
+     * @param mapeador Convierte cada fila en un objeto.
+     * @param consumidor Recibe los objetos uno por uno.
+     * @return El número de filas procesadas.
+     * @throws SQLException Si ocurre un error en la base de datos.
+     * @throws IOException Si el consumidor no puede escribir (por ejemplo, el cliente cerró la conexión).
+     */
+    public static <T> int recorrer(String sql, Mapeador<T> mapeador, Consumidor<T> consumidor)
+            throws SQLException, IOException {
+        int filas = 0;
+        try (Connection conn = Database.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            pstmt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    consumidor.aceptar(mapeador.mapear(rs));
+                    filas++;
+                }
+            }
+        }
+        return filas;
+    }
+}
@@ -1,29 +1,55 @@
 package mprower.javaspark.repository;
 
+import mprower.javaspark.cache.CatalogoCache;
 import mprower.javaspark.config.Database;
+import mprower.javaspark.config.Sentencias;
+import mprower.javaspark.config.Sentencias.Sentencia;
+import mprower.javaspark.inventory.Inventario;
+import mprower.javaspark.inventory.StockInsuficienteException;
+import mprower.javaspark.metrics.Metricas;
 import mprower.javaspark.model.Producto;
 import mprower.javaspark.model.Venta;
 
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.Set;
 
 public class VentaRepository {
 
+    private static final Sentencia LEER_CARRITO = Sentencias.registrar("VentaRepository.leerCarrito",
+            "SELECT c.id_pro, c.cantidad, p.prec FROM carrito c JOIN producto p ON c.id_pro = p.id WHERE c.id_cli = ?");
+    private static final Sentencia INSERTAR_VENTA = Sentencias.registrar("VentaRepository.insertarVenta",
+            "INSERT INTO venta (fech, folio, total, id_cli) VALUES (?, ?, ?, ?)");
+    private static final Sentencia INSERTAR_DETALLE = Sentencias.registrar("VentaRepository.insertarDetalle",
+            "INSERT INTO detalle_venta (subtotal, cant, prec, id_vent, id_pro) VALUES (?, ?, ?, ?, ?)");
+    private static final Sentencia VACIAR_CARRITO = Sentencias.registrar("VentaRepository.vaciarCarrito",
+            "DELETE FROM carrito WHERE id_cli = ?");
+
+    private final FolioAllocator folios = FolioAllocator.getInstance();
+    private final Inventario inventario = Inventario.getInstance();
+
     public Venta crearVentaDesdeCarrito(int clienteId) throws SQLException {
+        // Lo que el cliente agregó y sigue en memoria también se compra
+        CarritoBuffer.getInstance().vaciar(clienteId);
+        // El folio se pide antes de tomar la conexión (ver FolioAllocator)
+        int folio = folios.siguiente();
+        Metricas.Medicion medicion = Metricas.consulta("VentaRepository.crearVentaDesdeCarrito");
         Connection conn = null;
+        Inventario.Confirmacion stock = null;
         try {
             conn = Database.getConnection();
             conn.setAutoCommit(false); // ¡Iniciamos una transacción!
 
             // 1. Obtener los productos del carrito
-            String sqlCarrito = "SELECT c.id_pro, c.cantidad, p.prec FROM carrito c JOIN producto p ON c.id_pro = p.id WHERE c.id_cli = ?";
             List<Object[]> itemsParaVenta = new ArrayList<>();
             double totalVenta = 0;
 
-            try (PreparedStatement pstmt = conn.prepareStatement(sqlCarrito)) {
+            try (PreparedStatement pstmt = LEER_CARRITO.preparar(conn)) {
                 pstmt.setInt(1, clienteId);
                 ResultSet rs = pstmt.executeQuery();
                 while (rs.next()) {
@@ -35,18 +61,22 @@ public class VentaRepository {
                 }
             }
 
+            medicion.filas(itemsParaVenta.size());
             if (itemsParaVenta.isEmpty()) {
                 throw new IllegalStateException("El carrito está vacío, no se puede realizar la compra.");
             }
 
+            // Tomar el stock antes de escribir nada: si no alcanza, la compra se rechaza aquí
+            Map<Integer, Integer> unidades = unidadesPorProducto(itemsParaVenta);
+            stock = inventario.confirmar(clienteId, unidades);
+
             // 2. Crear el registro en la tabla 'venta'
             Venta nuevaVenta = new Venta();
-            nuevaVenta.setFolio(new Random().nextInt(900000) + 100000); // Folio aleatorio de 6 dígitos
+            nuevaVenta.setFolio(folio); // Folio único, de un bloque reservado por este nodo
             nuevaVenta.setTotal(totalVenta);
             nuevaVenta.setId_cli(clienteId);
 
-            String sqlVenta = "INSERT INTO venta (fech, folio, total, id_cli) VALUES (?, ?, ?, ?)";
-            try (PreparedStatement pstmt = conn.prepareStatement(sqlVenta, Statement.RETURN_GENERATED_KEYS)) {
+            try (PreparedStatement pstmt = INSERTAR_VENTA.preparar(conn, Statement.RETURN_GENERATED_KEYS)) {
                 pstmt.setDate(1, Date.valueOf(LocalDate.now()));
                 pstmt.setInt(2, nuevaVenta.getFolio());
                 pstmt.setDouble(3, nuevaVenta.getTotal());
@@ -61,9 +91,8 @@ public class VentaRepository {
                 }
             }
 
-            // 3. Crear los registros en 'detalle_venta' (el trigger de la BD se encargará del stock)
-            String sqlDetalle = "INSERT INTO detalle_venta (subtotal, cant, prec, id_vent, id_pro) VALUES (?, ?, ?, ?, ?)";
-            try (PreparedStatement pstmt = conn.prepareStatement(sqlDetalle)) {
+            // 3. Crear los registros en 'detalle_venta'
+            try (PreparedStatement pstmt = INSERTAR_DETALLE.preparar(conn)) {
                 for (Object[] item : itemsParaVenta) {
                     int idPro = (int) item[0];
                     int cantidad = (int) item[1];
@@ -79,24 +108,231 @@ public class VentaRepository {
                 pstmt.executeBatch(); // Ejecutamos todas las inserciones
             }
 
-            // 4. Vaciar el carrito del cliente
-            String sqlDeleteCarrito = "DELETE FROM carrito WHERE id_cli = ?";
-            try (PreparedStatement pstmt = conn.prepareStatement(sqlDeleteCarrito)) {
+            // 4. Descontar el stock en esta misma transacción; si no alcanza, se deshace todo
+            inventario.descontar(conn, unidades);
+
+            // 5. Vaciar el carrito del cliente
+            try (PreparedStatement pstmt = VACIAR_CARRITO.preparar(conn)) {
                 pstmt.setInt(1, clienteId);
                 pstmt.executeUpdate();
             }
 
             conn.commit(); // ¡Confirmamos la transacción! Todo salió bien.
+            inventario.vendido(stock);
+            CatalogoCache.getInstance().descontarStock(unidades);
             return nuevaVenta;
 
-        } catch (SQLException e) {
+        } catch (SQLException | RuntimeException e) {
             if (conn != null) conn.rollback(); // Si algo falla, deshacemos todo
+            if (stock != null) inventario.revertir(stock);
             throw e; // Relanzamos la excepción para que el controlador la maneje
         } finally {
             if (conn != null) {
                 conn.setAutoCommit(true);
                 conn.close();
             }
+            medicion.close();
+        }
+    }
+
+    /**
+     * Procesa las compras de varios clientes en una sola transacción (group commit).
+     * <p>
+     * Los carritos se leen con una sola consulta. Cada compra se inserta dentro de su propio
+     * savepoint (la venta, todos sus detalles en un INSERT de varias filas y el descuento de stock),
+     * así que si un carrito falla (por ejemplo, no alcanza el stock) solo se deshace esa compra y
+     * el resto del grupo sigue. Al final se vacían juntos los carritos que sí se compraron y
+     * se hace un único commit.
+     * @param clientes IDs de cliente en el orden en que llegaron (puede repetirse alguno).
+     * @return Un resultado por cliente, en el mismo orden.
+     * @throws SQLException si falla algo que afecta a todo el grupo (conexión, commit).
+     */
+    public List<ResultadoCheckout> crearVentasEnGrupo(List<Integer> clientes) throws SQLException {
+        CarritoBuffer.getInstance().vaciar(clientes);
+        // Un folio por compra, antes de tomar la conexión (ver FolioAllocator)
+        int[] foliosGrupo = folios.siguientes(clientes.size());
+        int usados = 0;
+        List<ResultadoCheckout> resultados = new ArrayList<>(clientes.size());
+        List<Inventario.Confirmacion> stockTomado = new ArrayList<>();
+        Map<Integer, Integer> vendidas = new LinkedHashMap<>();
+        Metricas.Medicion medicion = Metricas.consulta("VentaRepository.crearVentasEnGrupo");
+        Connection conn = null;
+        try {
+            conn = Database.getConnection();
+            conn.setAutoCommit(false);
+
+            // 1. Todos los carritos del grupo en una consulta
+            Map<Integer, List<Object[]>> carritos = leerCarritos(conn, new HashSet<>(clientes));
+            carritos.values().forEach(items -> medicion.filas(items.size()));
+
+            // 2. Una compra por cliente, cada una aislada en su savepoint
+            Set<Integer> comprados = new HashSet<>();
+            for (int clienteId : clientes) {
+                List<Object[]> items = comprados.contains(clienteId) ? null : carritos.get(clienteId);
+                if (items == null || items.isEmpty()) {
+                    resultados.add(ResultadoCheckout.fallo(clienteId,
+                            new IllegalStateException("El carrito está vacío, no se puede realizar la compra.")));
+                    continue;
+                }
+                Map<Integer, Integer> unidades = unidadesPorProducto(items);
+                Inventario.Confirmacion stock;
+                try {
+                    stock = inventario.confirmar(clienteId, unidades);
+                } catch (StockInsuficienteException e) {
+                    resultados.add(ResultadoCheckout.fallo(clienteId, e));
+                    continue;
+                }
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    Venta venta = insertarVenta(conn, clienteId, foliosGrupo[usados++], items);
+                    inventario.descontar(conn, unidades);
+                    conn.releaseSavepoint(savepoint);
+                    comprados.add(clienteId);
+                    stockTomado.add(stock);
+                    unidades.forEach((id, cantidad) -> vendidas.merge(id, cantidad, Integer::sum));
+                    resultados.add(ResultadoCheckout.exito(clienteId, venta));
+                } catch (SQLException | StockInsuficienteException e) {
+                    inventario.revertir(stock);
+                    conn.rollback(savepoint);
+                    resultados.add(ResultadoCheckout.fallo(clienteId, e));
+                }
+            }
+
+            // 3. Vaciar de una vez los carritos comprados
+            if (!comprados.isEmpty()) {
+                String sqlDelete = "DELETE FROM carrito WHERE id_cli IN (" + marcadores(comprados.size()) + ")";
+                try (PreparedStatement pstmt = Sentencias.prepararVariable(conn, sqlDelete)) {
+                    int i = 1;
+                    for (int clienteId : comprados) {
+                        pstmt.setInt(i++, clienteId);
+                    }
+                    pstmt.executeUpdate();
+                }
+            }
+
+            conn.commit(); // Un solo commit para todo el grupo
+            stockTomado.forEach(inventario::vendido);
+            if (!vendidas.isEmpty()) {
+                CatalogoCache.getInstance().descontarStock(vendidas);
+            }
+            return resultados;
+
+        } catch (SQLException | RuntimeException e) {
+            if (conn != null) conn.rollback();
+            stockTomado.forEach(inventario::revertir);
+            throw e;
+        } finally {
+            if (conn != null) {
+                conn.setAutoCommit(true);
+                conn.close();
+            }
+            medicion.close();
+        }
+    }
+
+    private Map<Integer, List<Object[]>> leerCarritos(Connection conn, Set<Integer> clientes) throws SQLException {
+        String sql = "SELECT c.id_cli, c.id_pro, c.cantidad, p.prec FROM carrito c JOIN producto p ON c.id_pro = p.id"
+                + " WHERE c.id_cli IN (" + marcadores(clientes.size()) + ") ORDER BY c.id_cli, c.id";
+        Map<Integer, List<Object[]>> carritos = new LinkedHashMap<>();
+        try (PreparedStatement pstmt = Sentencias.prepararVariable(conn, sql)) {
+            int i = 1;
+            for (int clienteId : clientes) {
+                pstmt.setInt(i++, clienteId);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    carritos.computeIfAbsent(rs.getInt("id_cli"), k -> new ArrayList<>())
+                            .add(new Object[]{rs.getInt("id_pro"), rs.getInt("cantidad"), rs.getDouble("prec")});
+                }
+            }
+        }
+        return carritos;
+    }
+
+    private Venta insertarVenta(Connection conn, int clienteId, int folio, List<Object[]> items) throws SQLException {
+        double totalVenta = 0;
+        for (Object[] item : items) {
+            totalVenta += (int) item[1] * (double) item[2];
+        }
+
+        Venta nuevaVenta = new Venta();
+        nuevaVenta.setFolio(folio); // Folio único, de un bloque reservado por este nodo
+        nuevaVenta.setTotal(totalVenta);
+        nuevaVenta.setId_cli(clienteId);
+
+        try (PreparedStatement pstmt = INSERTAR_VENTA.preparar(conn, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setDate(1, Date.valueOf(LocalDate.now()));
+            pstmt.setInt(2, nuevaVenta.getFolio());
+            pstmt.setDouble(3, nuevaVenta.getTotal());
+            pstmt.setInt(4, clienteId);
+            pstmt.executeUpdate();
+
+            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                if (!generatedKeys.next()) {
+                    throw new SQLException("No se pudo obtener el ID de la venta.");
+                }
+                nuevaVenta.setId(generatedKeys.getInt(1));
+            }
+        }
+
+        // Todos los detalles en un solo INSERT de varias filas
+        StringBuilder sqlDetalle = new StringBuilder("INSERT INTO detalle_venta (subtotal, cant, prec, id_vent, id_pro) VALUES ");
+        for (int i = 0; i < items.size(); i++) {
+            sqlDetalle.append(i == 0 ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+        }
+        try (PreparedStatement pstmt = Sentencias.prepararVariable(conn, sqlDetalle.toString())) {
+            int p = 1;
+            for (Object[] item : items) {
+                int cantidad = (int) item[1];
+                double precio = (double) item[2];
+                pstmt.setDouble(p++, cantidad * precio);
+                pstmt.setInt(p++, cantidad);
+                pstmt.setDouble(p++, precio);
+                pstmt.setInt(p++, nuevaVenta.getId());
+                pstmt.setInt(p++, (int) item[0]);
+            }
+            pstmt.executeUpdate();
+        }
+        return nuevaVenta;
+    }
+
+    /** Unidades por producto (un mismo producto puede estar en varias filas del carrito). */
+    private static Map<Integer, Integer> unidadesPorProducto(List<Object[]> items) {
+        Map<Integer, Integer> unidades = new LinkedHashMap<>();
+        for (Object[] item : items) {
+            unidades.merge((int) item[0], (int) item[1], Integer::sum);
+        }
+        return unidades;
+    }
+
+    private static String marcadores(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Resultado de la compra de un cliente dentro de un grupo: la venta creada o el error.
+     */
+    public static class ResultadoCheckout {
+        public final int clienteId;
+        public final Venta venta;
+        public final Exception error;
+
+        private ResultadoCheckout(int clienteId, Venta venta, Exception error) {
+            this.clienteId = clienteId;
+            this.venta = venta;
+            this.error = error;
+        }
+
+        static ResultadoCheckout exito(int clienteId, Venta venta) {
+            return new ResultadoCheckout(clienteId, venta, null);
+        }
+
+        static ResultadoCheckout fallo(int clienteId, Exception error) {
+            return new ResultadoCheckout(clienteId, null, error);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,80 @@
+package mprower.javaspark.search;
+
+import mprower.javaspark.cache.CatalogoCache;
+import mprower.javaspark.cache.CatalogoSnapshot;
+import mprower.javaspark.model.Producto;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Búsqueda de productos del catálogo.
+ * Mantiene un IndiceBusqueda que se actualiza de forma incremental cada vez que
+ * CatalogoCache publica un snapshot nuevo; las búsquedas usan el índice vigente sin bloquearse.
+ */
+public class BuscadorCatalogo {
+
+    private static final BuscadorCatalogo INSTANCE = new BuscadorCatalogo(CatalogoCache.getInstance());
+
+    private final CatalogoCache catalogo;
+    private final AtomicReference<IndiceBusqueda> indice = new AtomicReference<>(IndiceBusqueda.VACIO);
+
+    private BuscadorCatalogo(CatalogoCache catalogo) {
+        this.catalogo = catalogo;
+        catalogo.suscribir(this::sincronizar);
+    }
+
+    public static BuscadorCatalogo getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Construye el índice con el catálogo ya cargado para que la primera búsqueda no lo pague.
+     */
+    public void iniciar() {
+        try {
+            sincronizar(catalogo.getSnapshot());
+        } catch (SQLException e) {
+            System.err.println("No se pudo construir el índice de búsqueda: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Busca productos por nombre y descripción, ordenados por relevancia.
+     * @param consulta Texto libre; se ignoran mayúsculas y acentos.
+     * @param limite Número máximo de resultados.
+     * @throws SQLException si el catálogo nunca se ha podido cargar.
+     */
+    public List<ResultadoBusqueda> buscar(String consulta, int limite) throws SQLException {
+        CatalogoSnapshot snapshot = catalogo.getSnapshot();
+        IndiceBusqueda vigente = indice.get();
+        if (vigente == IndiceBusqueda.VACIO) {
+            // Primera búsqueda: el índice aún no se ha construido
+            vigente = sincronizar(snapshot);
+        }
+
+        List<ResultadoBusqueda> resultados = new ArrayList<>();
+        for (IndiceBusqueda.Coincidencia c : vigente.buscar(consulta, limite)) {
+            // El índice puede ir un paso detrás del snapshot: se ignoran productos eliminados
+            Optional<Producto> producto = snapshot.getProducto(c.getId());
+            producto.ifPresent(p -> resultados.add(new ResultadoBusqueda(p, c.getScore())));
+        }
+        return resultados;
+    }
+
+    /**
+     * Lleva el índice a la versión del snapshot dado, reindexando solo lo que cambió.
+     */
+    private synchronized IndiceBusqueda sincronizar(CatalogoSnapshot snapshot) {
+        IndiceBusqueda vigente = indice.get();
+        if (vigente.getVersion() >= snapshot.getVersion()) {
+            return vigente;
+        }
+        IndiceBusqueda nuevo = vigente.actualizar(snapshot.getProductos(), snapshot.getVersion());
+        indice.set(nuevo);
+        return nuevo;
+    }
+}
@@ -0,0 +1,332 @@
+package mprower.javaspark.search;
+
+import mprower.javaspark.model.Producto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Índice invertido sobre el nombre y la descripción de los productos.
+ * <p>
+ * Cada término apunta a la lista ordenada de IDs de producto que lo contienen.
+ * Para coincidencias parciales se guardan además los términos ordenados (búsqueda
+ * por prefijo con búsqueda binaria) y un índice de trigramas de términos (búsqueda
+ * de subcadenas, como hacía el antiguo {@code contains}).
+ * <p>
+ * Es inmutable: {@link #actualizar} devuelve un índice nuevo que solo recalcula los
+ * términos de los productos que cambiaron, así que se puede compartir entre hilos.
+ */
+public class IndiceBusqueda {
+
+    static final int NGRAMA = 3;
+
+    private static final double PESO_EXACTO = 1.0;
+    private static final double PESO_PREFIJO = 0.6;
+    private static final double PESO_PARCIAL = 0.3;
+    private static final double BONO_NOMBRE = 2.0;
+
+    public static final IndiceBusqueda VACIO =
+            new IndiceBusqueda(0, Collections.emptyMap(), Collections.emptyMap(), new String[0], Collections.emptyMap());
+
+    private final long version;
+    private final Map<Integer, Documento> documentos;
+    private final Map<String, int[]> postings;
+    private final String[] terminos;
+    private final Map<String, String[]> ngramas;
+
+    private IndiceBusqueda(long version, Map<Integer, Documento> documentos, Map<String, int[]> postings,
+                           String[] terminos, Map<String, String[]> ngramas) {
+        this.version = version;
+        this.documentos = documentos;
+        this.postings = postings;
+        this.terminos = terminos;
+        this.ngramas = ngramas;
+    }
+
+    /** Versión del catálogo con la que se construyó este índice. */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getTotalDocumentos() {
+        return documentos.size();
+    }
+
+    public int getTotalTerminos() {
+        return terminos.length;
+    }
+
+    /**
+     * Aplica los cambios del catálogo de forma incremental: solo se reindexan los
+     * productos nuevos, eliminados o cuyo nombre/descripción cambió.
+     * @param productos El catálogo completo en su nueva versión.
+     * @param nuevaVersion La versión del snapshot del que vienen los productos.
+     * @return un índice nuevo (o uno que comparte todo con este si nada cambió).
+     */
+    public IndiceBusqueda actualizar(Collection<Producto> productos, long nuevaVersion) {
+        Map<Integer, Documento> altas = new HashMap<>();
+        Map<Integer, Documento> bajas = new HashMap<>();
+        Set<Integer> vistos = new HashSet<>(productos.size() * 2);
+
+        for (Producto p : productos) {
+            vistos.add(p.getId());
+            Documento previo = documentos.get(p.getId());
+            String huella = p.getNombre() + '\u0000' + p.getDescripcion();
+            if (previo == null || !previo.huella.equals(huella)) {
+                if (previo != null) {
+                    bajas.put(p.getId(), previo);
+                }
+                altas.put(p.getId(), new Documento(huella, p.getNombre(), p.getDescripcion()));
+            }
+        }
+        for (Map.Entry<Integer, Documento> e : documentos.entrySet()) {
+            if (!vistos.contains(e.getKey())) {
+                bajas.put(e.getKey(), e.getValue());
+            }
+        }
+
+        if (altas.isEmpty() && bajas.isEmpty()) {
+            return new IndiceBusqueda(nuevaVersion, documentos, postings, terminos, ngramas);
+        }
+
+        // 1. Documentos
+        Map<Integer, Documento> nuevosDocumentos = new HashMap<>(documentos);
+        bajas.keySet().forEach(nuevosDocumentos::remove);
+        nuevosDocumentos.putAll(altas);
+
+        // 2. Listas de IDs de los términos afectados
+        Map<String, Set<Integer>> quitar = new HashMap<>();
+        bajas.forEach((id, doc) -> doc.terminos.forEach(t -> quitar.computeIfAbsent(t, k -> new HashSet<>()).add(id)));
+        Map<String, List<Integer>> agregar = new HashMap<>();
+        altas.forEach((id, doc) -> doc.terminos.forEach(t -> agregar.computeIfAbsent(t, k -> new ArrayList<>()).add(id)));
+
+        Set<String> afectados = new HashSet<>(quitar.keySet());
+        afectados.addAll(agregar.keySet());
+
+        Map<String, int[]> nuevosPostings = new HashMap<>(postings);
+        Set<String> terminosNuevos = new HashSet<>();
+        Set<String> terminosEliminados = new HashSet<>();
+        for (String termino : afectados) {
+            int[] previo = postings.getOrDefault(termino, new int[0]);
+            int[] lista = fusionar(previo,
+                    quitar.getOrDefault(termino, Collections.emptySet()),
+                    agregar.getOrDefault(termino, Collections.emptyList()));
+            if (lista.length == 0) {
+                nuevosPostings.remove(termino);
+                if (previo.length > 0) {
+                    terminosEliminados.add(termino);
+                }
+            } else {
+                nuevosPostings.put(termino, lista);
+                if (previo.length == 0) {
+                    terminosNuevos.add(termino);
+                }
+            }
+        }
+
+        // 3. Diccionario de términos y trigramas, solo si aparecieron o desaparecieron términos
+        String[] nuevosTerminos = terminos;
+        Map<String, String[]> nuevosNgramas = ngramas;
+        if (!terminosNuevos.isEmpty() || !terminosEliminados.isEmpty()) {
+            nuevosTerminos = nuevosPostings.keySet().toArray(new String[0]);
+            Arrays.sort(nuevosTerminos);
+            nuevosNgramas = actualizarNgramas(terminosNuevos, terminosEliminados);
+        }
+
+        return new IndiceBusqueda(nuevaVersion, nuevosDocumentos, nuevosPostings, nuevosTerminos, nuevosNgramas);
+    }
+
+    private Map<String, String[]> actualizarNgramas(Set<String> nuevos, Set<String> eliminados) {
+        Map<String, Set<String>> agregar = new HashMap<>();
+        Map<String, Set<String>> quitar = new HashMap<>();
+        for (String t : nuevos) {
+            for (String g : ngramasDe(t)) {
+                agregar.computeIfAbsent(g, k -> new HashSet<>()).add(t);
+            }
+        }
+        for (String t : eliminados) {
+            for (String g : ngramasDe(t)) {
+                quitar.computeIfAbsent(g, k -> new HashSet<>()).add(t);
+            }
+        }
+
+        Map<String, String[]> resultado = new HashMap<>(ngramas);
+        Set<String> afectados = new HashSet<>(agregar.keySet());
+        afectados.addAll(quitar.keySet());
+        for (String g : afectados) {
+            Set<String> lista = new LinkedHashSet<>(Arrays.asList(ngramas.getOrDefault(g, new String[0])));
+            lista.removeAll(quitar.getOrDefault(g, Collections.emptySet()));
+            lista.addAll(agregar.getOrDefault(g, Collections.emptySet()));
+            if (lista.isEmpty()) {
+                resultado.remove(g);
+            } else {
+                resultado.put(g, lista.toArray(new String[0]));
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Busca los productos que contienen todos los términos de la consulta (exactos,
+     * como prefijo o como subcadena) y los ordena por relevancia. Una coincidencia
+     * en el nombre vale más que una en la descripción.
+     * @param consulta Texto libre escrito por el usuario.
+     * @param limite Número máximo de resultados.
+     * @return Los IDs de producto con su puntuación, del más al menos relevante.
+     */
+    public List<Coincidencia> buscar(String consulta, int limite) {
+        List<String> tokens = Tokenizador.tokens(consulta);
+        if (tokens.isEmpty() || limite <= 0) {
+            return Collections.emptyList();
+        }
+
+        Map<Integer, Double> acumulado = null;
+        for (String token : new LinkedHashSet<>(tokens)) {
+            Map<Integer, Double> puntosToken = puntuarToken(token);
+            if (acumulado == null) {
+                acumulado = puntosToken;
+            } else {
+                // Todos los términos de la consulta deben aparecer (AND)
+                Map<Integer, Double> interseccion = new HashMap<>();
+                for (Map.Entry<Integer, Double> e : acumulado.entrySet()) {
+                    Double s = puntosToken.get(e.getKey());
+                    if (s != null) {
+                        interseccion.put(e.getKey(), e.getValue() + s);
+                    }
+                }
+                acumulado = interseccion;
+            }
+            if (acumulado.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+
+        List<Coincidencia> resultados = new ArrayList<>(acumulado.size());
+        acumulado.forEach((id, score) -> resultados.add(new Coincidencia(id, score)));
+        resultados.sort((a, b) -> a.score != b.score ? Double.compare(b.score, a.score) : Integer.compare(a.id, b.id));
+        return resultados.size() > limite ? new ArrayList<>(resultados.subList(0, limite)) : resultados;
+    }
+
+    private Map<Integer, Double> puntuarToken(String token) {
+        Map<Integer, Double> puntos = new HashMap<>();
+
+        // Exacto
+        if (postings.containsKey(token)) {
+            sumarTermino(puntos, token, PESO_EXACTO);
+        }
+
+        // Prefijo: rango de términos ordenados que empiezan con el token
+        int desde = Arrays.binarySearch(terminos, token);
+        desde = desde >= 0 ? desde + 1 : -desde - 1;
+        for (int i = desde; i < terminos.length && terminos[i].startsWith(token); i++) {
+            sumarTermino(puntos, terminos[i], PESO_PREFIJO);
+        }
+
+        // Subcadena: intersección de los trigramas del token y verificación final
+        if (token.length() >= NGRAMA) {
+            for (String termino : candidatosPorNgramas(token)) {
+                if (!termino.startsWith(token) && termino.contains(token)) {
+                    sumarTermino(puntos, termino, PESO_PARCIAL);
+                }
+            }
+        }
+        return puntos;
+    }
+
+    private Set<String> candidatosPorNgramas(String token) {
+        Set<String> candidatos = null;
+        for (String g : ngramasDe(token)) {
+            String[] lista = ngramas.get(g);
+            if (lista == null) {
+                return Collections.emptySet();
+            }
+            if (candidatos == null) {
+                candidatos = new HashSet<>(Arrays.asList(lista));
+            } else {
+                candidatos.retainAll(Arrays.asList(lista));
+            }
+            if (candidatos.isEmpty()) {
+                break;
+            }
+        }
+        return candidatos != null ? candidatos : Collections.emptySet();
+    }
+
+    private void sumarTermino(Map<Integer, Double> puntos, String termino, double peso) {
+        for (int id : postings.get(termino)) {
+            Documento doc = documentos.get(id);
+            double score = doc != null && doc.terminosNombre.contains(termino) ? peso * BONO_NOMBRE : peso;
+            // Por token nos quedamos con la mejor coincidencia del documento
+            puntos.merge(id, score, Math::max);
+        }
+    }
+
+    private static Set<String> ngramasDe(String termino) {
+        Set<String> gramas = new HashSet<>();
+        for (int i = 0; i + NGRAMA <= termino.length(); i++) {
+            gramas.add(termino.substring(i, i + NGRAMA));
+        }
+        return gramas;
+    }
+
+    private static int[] fusionar(int[] previo, Set<Integer> quitar, List<Integer> agregar) {
+        int[] resultado = new int[previo.length + agregar.size()];
+        int n = 0;
+        for (int id : previo) {
+            if (!quitar.contains(id)) {
+                resultado[n++] = id;
+            }
+        }
+        for (int id : agregar) {
+            resultado[n++] = id;
+        }
+        resultado = Arrays.copyOf(resultado, n);
+        Arrays.sort(resultado);
+        return resultado;
+    }
+
+    /**
+     * Términos indexados de un producto.
+     */
+    private static final class Documento {
+        final String huella;
+        final Set<String> terminosNombre;
+        final Set<String> terminos;
+
+        Documento(String huella, String nombre, String descripcion) {
+            this.huella = huella;
+            this.terminosNombre = new HashSet<>(Tokenizador.tokens(nombre));
+            this.terminos = new HashSet<>(terminosNombre);
+            this.terminos.addAll(Tokenizador.tokens(descripcion));
+        }
+    }
+
+    /**
+     * Un ID de producto con su puntuación de relevancia.
+     */
+    public static final class Coincidencia {
+        private final int id;
+        private final double score;
+
+        Coincidencia(int id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package mprower.javaspark.search;
+
+import mprower.javaspark.model.Producto;
+
+/**
+ * Un producto encontrado por la búsqueda junto con su puntuación de relevancia.
+ */
+public class ResultadoBusqueda {
+    private final Producto producto;
+    private final double score;
+
+    public ResultadoBusqueda(Producto producto, double score) {
+        this.producto = producto;
+        this.score = score;
+    }
+
+    public Producto getProducto() {
+        return producto;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
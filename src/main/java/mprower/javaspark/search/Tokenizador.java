@@ -0,0 +1,52 @@
+package mprower.javaspark.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Convierte texto libre en términos de búsqueda: minúsculas, sin acentos
+ * ("Rosalía" -> "rosalia") y separado por cualquier caracter que no sea letra o dígito.
+ */
+public final class Tokenizador {
+
+    private Tokenizador() {
+    }
+
+    /**
+     * Quita acentos y diacríticos y pasa a minúsculas.
+     */
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String sinAcentos = Normalizer.normalize(texto, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(sinAcentos.length());
+        for (int i = 0; i < sinAcentos.length(); i++) {
+            char c = sinAcentos.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Divide el texto normalizado en términos.
+     */
+    public static List<String> tokens(String texto) {
+        String normalizado = normalizar(texto);
+        List<String> tokens = new ArrayList<>();
+        int inicio = -1;
+        for (int i = 0; i <= normalizado.length(); i++) {
+            boolean esParte = i < normalizado.length() && Character.isLetterOrDigit(normalizado.charAt(i));
+            if (esParte && inicio < 0) {
+                inicio = i;
+            } else if (!esParte && inicio >= 0) {
+                tokens.add(normalizado.substring(inicio, i));
+                inicio = -1;
+            }
+        }
+        return tokens;
+    }
+}
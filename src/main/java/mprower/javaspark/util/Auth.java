@@ -6,8 +6,15 @@ import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTCreationException;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import mprower.javaspark.config.AppConfig;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Auth {
 
@@ -16,6 +23,23 @@ public class Auth {
     private static final String ISSUER = "ecommerce-api";
     private static final Algorithm ALGORITHM = Algorithm.HMAC256(SECRET_KEY);
 
+    // El verificador es inmutable y seguro entre hilos: se construye una sola vez.
+    private static final JWTVerifier VERIFIER = JWT.require(ALGORITHM)
+            .withIssuer(ISSUER)
+            .build();
+
+    // Tokens ya verificados, por hash SHA-256 del token (no se guarda el token en claro).
+    // Un mismo token llega en cada petición del carrito; así solo se decodifica y se
+    // comprueba la firma la primera vez. Cada entrada caduca junto con el token (exp).
+    private static final int MAX_TOKENS = AppConfig.getInt("auth.tokenCache.maxEntries", 10_000);
+    private static final ConcurrentHashMap<String, TokenVerificado> VERIFICADOS = new ConcurrentHashMap<>();
+
+    // Tokens revocados (logout) hasta que expiren por sí solos; después ya no hace falta recordarlos.
+    private static final ConcurrentHashMap<String, Long> REVOCADOS = new ConcurrentHashMap<>();
+
+    private static final LongAdder ACIERTOS = new LongAdder();
+    private static final LongAdder FALLOS = new LongAdder();
+
     public static String generateToken(int clienteId, String nombre) {
         try {
             long expirationTimeMillis = System.currentTimeMillis() + (24 * 60 * 60 * 1000); // 24 horas
@@ -33,14 +57,98 @@ public class Auth {
     }
 
     public static int verifyTokenAndGetId(String token) throws JWTVerificationException {
-        // Creamos un verificador con exactamente el mismo algoritmo y emisor.
-        JWTVerifier verifier = JWT.require(ALGORITHM)
-                .withIssuer(ISSUER)
-                .build();
+        String clave = hash(token);
+        long ahora = System.currentTimeMillis();
+
+        if (REVOCADOS.containsKey(clave)) {
+            throw new JWTVerificationException("El token fue revocado.");
+        }
+
+        TokenVerificado cacheado = VERIFICADOS.get(clave);
+        if (cacheado != null) {
+            if (ahora < cacheado.expiraEn) {
+                ACIERTOS.increment();
+                return cacheado.clienteId;
+            }
+            // Expiró: se descarta y verify() lanza el error de expiración de siempre
+            VERIFICADOS.remove(clave, cacheado);
+        }
+        FALLOS.increment();
 
         // verify() lanzará una excepción si la firma, el emisor o la fecha no son válidos.
-        DecodedJWT decodedJWT = verifier.verify(token);
+        DecodedJWT decodedJWT = VERIFIER.verify(token);
+        int clienteId = decodedJWT.getClaim("clienteId").asInt();
+
+        Date exp = decodedJWT.getExpiresAt();
+        if (exp != null) {
+            if (VERIFICADOS.size() >= MAX_TOKENS) {
+                purgar(ahora);
+            }
+            VERIFICADOS.put(clave, new TokenVerificado(clienteId, exp.getTime()));
+        }
+        return clienteId;
+    }
+
+    /**
+     * Invalida un token antes de su expiración (por ejemplo, al cerrar sesión).
+     * Las siguientes peticiones con ese token fallan aunque la firma sea válida.
+     * @return false si el token no es válido (firma, emisor o fecha), en cuyo caso no hay nada que revocar.
+     */
+    public static boolean revocarToken(String token) {
+        DecodedJWT decodedJWT;
+        try {
+            decodedJWT = VERIFIER.verify(token);
+        } catch (JWTVerificationException e) {
+            return false;
+        }
+        String clave = hash(token);
+        Date exp = decodedJWT.getExpiresAt();
+        REVOCADOS.put(clave, exp != null ? exp.getTime() : Long.MAX_VALUE);
+        VERIFICADOS.remove(clave);
+        REVOCADOS.values().removeIf(expira -> expira <= System.currentTimeMillis());
+        return true;
+    }
 
-        return decodedJWT.getClaim("clienteId").asInt();
+    /** Peticiones resueltas con la caché de tokens, sin verificar la firma. */
+    public static long getTokenCacheHits() {
+        return ACIERTOS.sum();
+    }
+
+    /** Peticiones que tuvieron que decodificar y verificar el token. */
+    public static long getTokenCacheMisses() {
+        return FALLOS.sum();
+    }
+
+    public static int getTokenCacheSize() {
+        return VERIFICADOS.size();
+    }
+
+    /**
+     * Libera espacio: primero quita los tokens expirados y, si siguen sin caber, vacía la caché.
+     */
+    private static void purgar(long ahora) {
+        VERIFICADOS.values().removeIf(t -> t.expiraEn <= ahora);
+        if (VERIFICADOS.size() >= MAX_TOKENS) {
+            VERIFICADOS.clear();
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private static final class TokenVerificado {
+        final int clienteId;
+        final long expiraEn;
+
+        TokenVerificado(int clienteId, long expiraEn) {
+            this.clienteId = clienteId;
+            this.expiraEn = expiraEn;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,192 @@
+package mprower.javaspark.util;
+
+import mprower.javaspark.config.AppConfig;
+import spark.Request;
+import spark.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresión gzip de las respuestas según el Accept-Encoding del cliente.
+ * <p>
+ * Hay tres formas de responder:
+ * <ul>
+ *   <li>{@link #responder(Request, Response, Precomprimido)}: respuestas que se repiten (JSON del
+ *       catálogo, páginas renderizadas). Los bytes gzip se calculan una vez, con el nivel máximo, y se
+ *       escriben tal cual en cada petición.</li>
+ *   <li>{@link #responder(Request, Response, byte[])}: respuestas que se generan en cada petición. Solo
+ *       se marca Content-Encoding y Spark comprime al escribir, en streaming.</li>
+ *   <li>{@link #abrirSalida}: para quien escribe directo en la respuesta ({@link JsonStream}).</li>
+ * </ul>
+ * Por debajo de compression.minBytes no se comprime: la cabecera gzip y el costo de CPU no
+ * compensan. Brotli no se ofrece porque el JDK no trae codificador; un cliente que solo acepta
+ * br recibe la respuesta sin comprimir.
+ */
+public final class Compresion {
+
+    private static final boolean HABILITADA = AppConfig.getBoolean("compression.enabled", true);
+    private static final int MIN_BYTES = AppConfig.getInt("compression.minBytes", 1024);
+
+    private Compresion() {
+    }
+
+    /**
+     * Responde con la variante precomprimida si el cliente acepta gzip y conviene.
+     * Los bytes gzip se escriben directo en la respuesta para que Spark no los vuelva a comprimir.
+     * @return el cuerpo que la ruta debe devolver.
+     */
+    public static Object responder(Request req, Response res, Precomprimido cuerpo) throws IOException {
+        if (!usarGzip(req, res, cuerpo)) {
+            return cuerpo.getOriginal();
+        }
+        byte[] gzip = cuerpo.getGzip();
+        res.raw().setHeader("Content-Encoding", "gzip");
+        res.raw().setContentLength(gzip.length);
+        OutputStream salida = res.raw().getOutputStream();
+        salida.write(gzip);
+        salida.flush(); // Con la respuesta ya enviada, Spark no escribe nada más
+        return "";
+    }
+
+    /**
+     * Indica si a este cliente se le enviará la variante gzip (por ejemplo, para elegir el ETag).
+     */
+    public static boolean usarGzip(Request req, Response res, Precomprimido cuerpo) {
+        // Si comprimido no queda más chico, se envía el original
+        return aplica(req, res, cuerpo.getOriginal().length) && cuerpo.getGzip() != null;
+    }
+
+    /**
+     * Responde un cuerpo generado para esta petición; si se comprime, Spark lo hace en streaming.
+     * @return el cuerpo que la ruta debe devolver.
+     */
+    public static Object responder(Request req, Response res, byte[] cuerpo) {
+        if (aplica(req, res, cuerpo.length)) {
+            res.raw().setHeader("Content-Encoding", "gzip");
+        }
+        return cuerpo;
+    }
+
+    public static Object responder(Request req, Response res, String cuerpo) {
+        return responder(req, res, cuerpo.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Devuelve el stream donde escribir una respuesta de tamaño desconocido, comprimido si el
+     * cliente acepta gzip. Hay que llamar a {@link #terminar} al final para cerrar el gzip.
+     */
+    public static OutputStream abrirSalida(Request req, Response res) throws IOException {
+        OutputStream salida = res.raw().getOutputStream();
+        if (!aplica(req, res, Integer.MAX_VALUE)) {
+            return salida;
+        }
+        res.raw().setHeader("Content-Encoding", "gzip");
+        return new GZIPOutputStream(salida, 8192, true);
+    }
+
+    /** Escribe el final del gzip (si lo hay) y envía lo pendiente. */
+    public static void terminar(OutputStream salida) throws IOException {
+        if (salida instanceof GZIPOutputStream) {
+            ((GZIPOutputStream) salida).finish();
+        }
+        salida.flush();
+    }
+
+    /**
+     * Decide si se comprime y, si la respuesta podría variar según el cliente, lo indica en Vary.
+     */
+    private static boolean aplica(Request req, Response res, long longitud) {
+        if (!HABILITADA || longitud < MIN_BYTES || res.raw().containsHeader("Content-Encoding")) {
+            return false;
+        }
+        res.raw().setHeader("Vary", "Accept-Encoding");
+        return aceptaGzip(req.headers("Accept-Encoding"));
+    }
+
+    /**
+     * Interpreta Accept-Encoding con sus pesos: "gzip;q=0" lo rechaza y "*" lo acepta
+     * si gzip no aparece por nombre.
+     */
+    public static boolean aceptaGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean comodin = null;
+        for (String parte : acceptEncoding.split(",")) {
+            String[] valores = parte.trim().split(";");
+            String codificacion = valores[0].trim().toLowerCase();
+            boolean aceptada = true;
+            for (int i = 1; i < valores.length; i++) {
+                String parametro = valores[i].trim();
+                if (parametro.startsWith("q=")) {
+                    try {
+                        aceptada = Double.parseDouble(parametro.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        aceptada = false;
+                    }
+                }
+            }
+            if (codificacion.equals("gzip") || codificacion.equals("x-gzip")) {
+                return aceptada;
+            }
+            if (codificacion.equals("*")) {
+                comodin = aceptada;
+            }
+        }
+        return Boolean.TRUE.equals(comodin);
+    }
+
+    /**
+     * Comprime con el nivel máximo: se usa para variantes que se guardan y se sirven muchas veces.
+     */
+    public static byte[] gzip(byte[] datos) {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(Math.max(64, datos.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(salida, 8192) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(datos);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // En memoria no ocurre
+        }
+        return salida.toByteArray();
+    }
+
+    /**
+     * Un cuerpo de respuesta que se sirve muchas veces, con su variante gzip calculada
+     * la primera vez que un cliente la pide.
+     */
+    public static final class Precomprimido {
+        private static final byte[] NO_CONVIENE = new byte[0];
+
+        private final byte[] original;
+        private volatile byte[] gzip;
+
+        public Precomprimido(byte[] original) {
+            this.original = original;
+        }
+
+        public byte[] getOriginal() {
+            return original;
+        }
+
+        /** @return los bytes gzip, o null si comprimido no queda más chico. */
+        public byte[] getGzip() {
+            byte[] actual = gzip;
+            if (actual == null) {
+                // Si dos hilos llegan a la vez ambos comprimen; el resultado es el mismo
+                byte[] comprimido = gzip(original);
+                actual = comprimido.length < original.length ? comprimido : NO_CONVIENE;
+                gzip = actual;
+            }
+            return actual == NO_CONVIENE ? null : actual;
+        }
+    }
+}
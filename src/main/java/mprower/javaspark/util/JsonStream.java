@@ -0,0 +1,72 @@
+package mprower.javaspark.util;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import spark.Request;
+import spark.Response;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Escribe un arreglo JSON directamente en el output stream de la respuesta, elemento por
+ * elemento, en lugar de construir primero la lista completa y luego un String gigante.
+ * Sirve para cualquier endpoint de listas: la memoria usada no depende del tamaño del resultado.
+ * <p>
+ * La respuesta no se toca hasta el primer elemento, así que un error al ejecutar la consulta
+ * todavía puede responderse con un 500 normal. Si algo falla a media escritura, el arreglo
+ * se queda sin cerrar y el cliente recibe un JSON incompleto en vez de uno que parezca válido.
+ * Si el cliente acepta gzip, se comprime mientras se escribe ({@link Compresion#abrirSalida}).
+ */
+public class JsonStream {
+
+    private final Request req;
+    private final Response res;
+    private final Gson gson;
+    private final Type tipo;
+    private OutputStream salida;
+    private JsonWriter writer;
+
+    public JsonStream(Request req, Response res, Gson gson, Type tipo) {
+        this.req = req;
+        this.res = res;
+        this.gson = gson;
+        this.tipo = tipo;
+    }
+
+    public void escribir(Object elemento) throws IOException {
+        if (writer == null) {
+            abrir();
+        }
+        gson.toJson(elemento, tipo, writer);
+    }
+
+    /**
+     * Cierra el arreglo y envía lo que quede en el buffer. Solo debe llamarse si todo salió bien.
+     */
+    public void terminar() throws IOException {
+        if (writer == null) {
+            abrir();
+        }
+        writer.endArray();
+        writer.flush();
+        Compresion.terminar(salida);
+    }
+
+    /** Indica si ya se empezó a escribir la respuesta (y por lo tanto ya no se puede cambiar el status). */
+    public boolean iniciado() {
+        return writer != null;
+    }
+
+    private void abrir() throws IOException {
+        res.type("application/json");
+        salida = Compresion.abrirSalida(req, res);
+        writer = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(salida, StandardCharsets.UTF_8), 8192));
+        writer.beginArray();
+    }
+}
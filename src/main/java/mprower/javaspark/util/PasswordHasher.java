@@ -0,0 +1,236 @@
+package mprower.javaspark.util;
+
+import mprower.javaspark.config.AppConfig;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hash y verificación de contraseñas con BCrypt en un pool de hilos propio y acotado.
+ * <p>
+ * BCrypt es caro a propósito (~decenas de ms por operación). Si se ejecuta en los hilos de
+ * Jetty, una ráfaga de logins los ocupa todos y deja sin atender al catálogo. Aquí solo
+ * security.hash.threads hilos hacen BCrypt y como mucho security.hash.queue peticiones esperan;
+ * el resto se rechaza de inmediato con {@link SaturadoException} (el controlador responde 503).
+ */
+public class PasswordHasher {
+
+    private static final int COSTO = AppConfig.getInt("security.bcrypt.cost", 10);
+    private static final int HILOS = AppConfig.getInt("security.hash.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int COLA = AppConfig.getInt("security.hash.queue", 64);
+    private static final long TIMEOUT_MS = AppConfig.getLong("security.hash.timeoutMs", 10_000);
+
+    private static final ThreadPoolExecutor EXECUTOR = crearExecutor();
+    private static final Map<String, Latencia> METRICAS = new ConcurrentHashMap<>();
+    private static final LongAdder RECHAZADAS = new LongAdder();
+
+    private static ThreadPoolExecutor crearExecutor() {
+        AtomicInteger contador = new AtomicInteger();
+        return new ThreadPoolExecutor(HILOS, HILOS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(COLA),
+                r -> {
+                    Thread t = new Thread(r, "bcrypt-" + contador.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Genera el hash de una contraseña con el costo configurado (security.bcrypt.cost).
+     * @param ruta Nombre de la ruta que lo pide, para las métricas (por ejemplo "register").
+     * @throws SaturadoException si el pool está lleno o no respondió a tiempo.
+     */
+    public static String hash(String password, String ruta) {
+        return ejecutar(ruta, () -> BCrypt.hashpw(password, BCrypt.gensalt(COSTO)));
+    }
+
+    /**
+     * Compara una contraseña con su hash guardado.
+     * @throws SaturadoException si el pool está lleno o no respondió a tiempo.
+     */
+    public static boolean verificar(String password, String hash, String ruta) {
+        return ejecutar(ruta, () -> BCrypt.checkpw(password, hash));
+    }
+
+    /**
+     * Indica si el hash se generó con un costo distinto al configurado y conviene regenerarlo.
+     * El formato de BCrypt es $2a$NN$..., donde NN es el costo.
+     */
+    public static boolean necesitaRehash(String hash) {
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$') {
+            return false;
+        }
+        try {
+            return Integer.parseInt(hash.substring(4, 6)) != COSTO;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Regenera el hash en segundo plano y lo entrega a quien lo guarda; si el pool está
+     * ocupado simplemente no se hace (se intentará en el siguiente login).
+     */
+    public static void rehashEnSegundoPlano(String password, String ruta, HashListo guardar) {
+        try {
+            EXECUTOR.execute(() -> {
+                long inicio = System.nanoTime();
+                String nuevo = BCrypt.hashpw(password, BCrypt.gensalt(COSTO));
+                metrica(ruta).registrar(0, System.nanoTime() - inicio);
+                try {
+                    guardar.guardar(nuevo);
+                } catch (Exception e) {
+                    System.err.println("No se pudo actualizar el hash de la contraseña: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Sin espacio; no es urgente
+        }
+    }
+
+    private static <T> T ejecutar(String ruta, Callable<T> operacion) {
+        long encolado = System.nanoTime();
+        long[] inicio = new long[1];
+        Future<T> future;
+        try {
+            future = EXECUTOR.submit(() -> {
+                inicio[0] = System.nanoTime();
+                return operacion.call();
+            });
+        } catch (RejectedExecutionException e) {
+            RECHAZADAS.increment();
+            throw new SaturadoException(segundosParaReintentar());
+        }
+
+        try {
+            T resultado = future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            long fin = System.nanoTime();
+            metrica(ruta).registrar(inicio[0] - encolado, fin - inicio[0]);
+            return resultado;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            RECHAZADAS.increment();
+            throw new SaturadoException(segundosParaReintentar());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new SaturadoException(1);
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            throw causa instanceof RuntimeException ? (RuntimeException) causa : new RuntimeException(causa);
+        }
+    }
+
+    /**
+     * Estimación de cuándo habrá hueco: lo que hay en cola por el tiempo medio de un hash,
+     * repartido entre los hilos.
+     */
+    private static int segundosParaReintentar() {
+        long operaciones = 0;
+        long nanos = 0;
+        for (Latencia l : METRICAS.values()) {
+            operaciones += l.operaciones.sum();
+            nanos += l.hashNanos.sum();
+        }
+        double msPorHash = operaciones > 0 ? nanos / 1e6 / operaciones : 100;
+        double segundos = EXECUTOR.getQueue().size() * msPorHash / HILOS / 1000;
+        return (int) Math.max(1, Math.ceil(segundos));
+    }
+
+    private static Latencia metrica(String ruta) {
+        return METRICAS.computeIfAbsent(ruta, r -> new Latencia());
+    }
+
+    /** Latencias por ruta (espera en cola y tiempo de BCrypt), ordenadas por nombre. */
+    public static Map<String, Latencia> getMetricas() {
+        return Collections.unmodifiableMap(new TreeMap<>(METRICAS));
+    }
+
+    /** Operaciones rechazadas por pool lleno o timeout. */
+    public static long getRechazadas() {
+        return RECHAZADAS.sum();
+    }
+
+    public static int getEnCola() {
+        return EXECUTOR.getQueue().size();
+    }
+
+    public static int getActivas() {
+        return EXECUTOR.getActiveCount();
+    }
+
+    /**
+     * Recibe el hash regenerado para guardarlo.
+     */
+    @FunctionalInterface
+    public interface HashListo {
+        void guardar(String hash) throws Exception;
+    }
+
+    /**
+     * El pool de BCrypt no tiene capacidad; la petición debe reintentarse más tarde.
+     */
+    public static class SaturadoException extends RuntimeException {
+        private final int retryAfterSegundos;
+
+        SaturadoException(int retryAfterSegundos) {
+            super("El servicio de autenticación está saturado, intenta de nuevo en unos segundos.");
+            this.retryAfterSegundos = retryAfterSegundos;
+        }
+
+        public int getRetryAfterSegundos() {
+            return retryAfterSegundos;
+        }
+    }
+
+    /**
+     * Contadores de latencia de una ruta.
+     */
+    public static class Latencia {
+        private final LongAdder operaciones = new LongAdder();
+        private final LongAdder esperaNanos = new LongAdder();
+        private final LongAdder hashNanos = new LongAdder();
+        private final LongAccumulator hashMaxNanos = new LongAccumulator(Math::max, 0);
+
+        void registrar(long espera, long hash) {
+            operaciones.increment();
+            esperaNanos.add(espera);
+            hashNanos.add(hash);
+            hashMaxNanos.accumulate(hash);
+        }
+
+        public long getOperaciones() {
+            return operaciones.sum();
+        }
+
+        /** Tiempo total en cola antes de que un hilo de BCrypt tomara la operación. */
+        public double getEsperaSegundos() {
+            return esperaNanos.sum() / 1e9;
+        }
+
+        /** Tiempo total haciendo BCrypt. */
+        public double getHashSegundos() {
+            return hashNanos.sum() / 1e9;
+        }
+
+        public double getHashSegundosMax() {
+            return hashMaxNanos.get() / 1e9;
+        }
+    }
+}
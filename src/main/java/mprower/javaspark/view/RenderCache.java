@@ -0,0 +1,124 @@
+package mprower.javaspark.view;
+
+import mprower.javaspark.cache.CatalogoCache;
+import mprower.javaspark.cache.CatalogoSnapshot;
+import mprower.javaspark.config.AppConfig;
+import mprower.javaspark.util.Compresion;
+import spark.ModelAndView;
+import spark.template.mustache.MustacheTemplateEngine;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Caché de renderizado de las páginas HTML.
+ * <ul>
+ *   <li>Un solo MustacheTemplateEngine para todas las rutas, así cada plantilla se compila una vez.</li>
+ *   <li>Los modelos de vista de los productos (con precios ya formateados) se construyen una vez por
+ *       versión de contenido del catálogo: las plantillas no muestran el stock, así que un refresco
+ *       de cantidades no los invalida.</li>
+ *   <li>Las páginas renderizadas se guardan como bytes por (versión de contenido, página, búsqueda)
+ *       en un LRU acotado (render.cache.maxEntries), y se vacía cuando cambia el contenido. Cada
+ *       página guarda también su variante gzip, que se comprime una sola vez.</li>
+ *   <li>Si varias peticiones piden a la vez una página que no está, solo una la renderiza y las
+ *       demás esperan su resultado.</li>
+ * </ul>
+ */
+public class RenderCache {
+
+    private static final RenderCache INSTANCE = new RenderCache(AppConfig.getInt("render.cache.maxEntries", 500));
+
+    private final MustacheTemplateEngine engine = new MustacheTemplateEngine();
+    private final AtomicReference<VistasCatalogo> vistas = new AtomicReference<>();
+    private final Map<String, Compresion.Precomprimido> paginas;
+    private final Map<String, CompletableFuture<Compresion.Precomprimido>> enCurso = new ConcurrentHashMap<>();
+    private final AtomicLong contenidoVigente = new AtomicLong(-1);
+
+    private RenderCache(int maxEntradas) {
+        this.paginas = new LinkedHashMap<String, Compresion.Precomprimido>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Compresion.Precomprimido> eldest) {
+                return size() > maxEntradas;
+            }
+        };
+        // Las páginas de versiones de contenido anteriores ya no se van a pedir
+        CatalogoCache.getInstance().suscribir(s -> {
+            if (contenidoVigente.getAndSet(s.getVersionContenido()) != s.getVersionContenido()) {
+                synchronized (paginas) {
+                    paginas.clear();
+                }
+            }
+        });
+    }
+
+    public static RenderCache getInstance() {
+        return INSTANCE;
+    }
+
+    /** El motor de plantillas compartido por todas las rutas HTML. */
+    public MustacheTemplateEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Devuelve los modelos de vista del snapshot dado, construyéndolos solo si cambió su contenido.
+     */
+    public VistasCatalogo vistas(CatalogoSnapshot snapshot) {
+        VistasCatalogo actuales = vistas.get();
+        if (actuales != null && actuales.getVersionContenido() == snapshot.getVersionContenido()) {
+            return actuales;
+        }
+        VistasCatalogo nuevas = new VistasCatalogo(snapshot);
+        vistas.set(nuevas);
+        return nuevas;
+    }
+
+    /**
+     * Devuelve la página ya renderizada para la clave, o la renderiza y la guarda.
+     * @param clave Debe incluir la versión de contenido del catálogo y todo lo que cambie el HTML.
+     * @param modelo Construye el modelo y la plantilla cuando la página no está en caché.
+     */
+    public Compresion.Precomprimido pagina(String clave, Supplier<ModelAndView> modelo) {
+        Compresion.Precomprimido html;
+        synchronized (paginas) {
+            html = paginas.get(clave);
+        }
+        if (html != null) {
+            return html;
+        }
+        CompletableFuture<Compresion.Precomprimido> propio = new CompletableFuture<>();
+        CompletableFuture<Compresion.Precomprimido> otro = enCurso.putIfAbsent(clave, propio);
+        if (otro != null) {
+            try {
+                return otro.join(); // Otra petición ya la está renderizando
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            html = new Compresion.Precomprimido(renderizar(modelo.get()));
+            synchronized (paginas) {
+                paginas.put(clave, html);
+            }
+            propio.complete(html);
+            return html;
+        } catch (RuntimeException | Error e) {
+            propio.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCurso.remove(clave, propio);
+        }
+    }
+
+    /** Renderiza sin guardar en caché (por ejemplo, páginas de error). */
+    public byte[] renderizar(ModelAndView modelAndView) {
+        return engine.render(modelAndView).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,35 @@
+package mprower.javaspark.view;
+
+import mprower.javaspark.assets.Miniaturas;
+import mprower.javaspark.assets.RecursosEstaticos;
+import mprower.javaspark.model.Producto;
+
+/**
+ * Modelo de vista de un producto para las plantillas del catálogo, con los precios
+ * ya formateados. Se construye una vez por versión de contenido del catálogo en lugar de en cada petición.
+ */
+public class VistaProducto {
+    public final int id;
+    public final String nombre;
+    public final String descripcion;
+    public final String foto;
+    public final String fotoUrl;
+    public final String fotoSrcset;
+    public final String prec;
+    public final String precioOriginal;
+    public final boolean oferta;
+
+    public VistaProducto(Producto p, boolean oferta) {
+        this.id = p.getId();
+        this.nombre = p.getNombre();
+        this.descripcion = p.getDescripcion();
+        this.foto = p.getFoto();
+        // URL con huella: el navegador la guarda sin volver a preguntar
+        this.fotoUrl = RecursosEstaticos.getInstance().url("/img/" + p.getFoto());
+        this.fotoSrcset = Miniaturas.getInstance().srcset("/img/" + p.getFoto());
+        this.prec = String.format("%.2f", p.getPrecio());
+        // En oferta se muestra tachado el precio sin descuento (25% más)
+        this.precioOriginal = oferta ? String.format("%.2f", p.getPrecio() * 1.25) : null;
+        this.oferta = oferta;
+    }
+}
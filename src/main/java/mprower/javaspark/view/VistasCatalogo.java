@@ -0,0 +1,56 @@
+package mprower.javaspark.view;
+
+import mprower.javaspark.cache.CatalogoSnapshot;
+import mprower.javaspark.model.Producto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Los modelos de vista de todos los productos de un snapshot del catálogo. No incluyen el stock,
+ * así que sirven para todos los snapshots con la misma versión de contenido.
+ */
+public class VistasCatalogo {
+
+    private final long versionContenido;
+    private final List<VistaProducto> todos;
+    private final List<VistaProducto> ofertas;
+    private final Map<Integer, VistaProducto> porId;
+
+    VistasCatalogo(CatalogoSnapshot snapshot) {
+        this.versionContenido = snapshot.getVersionContenido();
+        List<VistaProducto> lista = new ArrayList<>(snapshot.getProductos().size());
+        List<VistaProducto> enOferta = new ArrayList<>(snapshot.getOfertas().size());
+        Map<Integer, VistaProducto> indice = new HashMap<>(snapshot.getProductos().size() * 2);
+        for (Producto p : snapshot.getProductos()) {
+            VistaProducto vista = new VistaProducto(p, snapshot.getIndiceOfertas().contiene(p.getId()));
+            lista.add(vista);
+            indice.put(vista.id, vista);
+            if (vista.oferta) {
+                enOferta.add(vista);
+            }
+        }
+        this.todos = Collections.unmodifiableList(lista);
+        this.ofertas = Collections.unmodifiableList(enOferta);
+        this.porId = indice;
+    }
+
+    public long getVersionContenido() {
+        return versionContenido;
+    }
+
+    public List<VistaProducto> getTodos() {
+        return todos;
+    }
+
+    public List<VistaProducto> getOfertas() {
+        return ofertas;
+    }
+
+    public VistaProducto get(int id) {
+        return porId.get(id);
+    }
+}
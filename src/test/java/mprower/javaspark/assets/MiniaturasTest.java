@@ -0,0 +1,28 @@
+package mprower.javaspark.assets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MiniaturasTest {
+
+    @Test
+    void reconoceLosNombresDeLasVariantes() {
+        assertTrue(Miniaturas.esVariante("0123456789abcdef012345-320.jpg"));
+        assertTrue(Miniaturas.esVariante("0123456789abcdef012345-160.png"));
+        assertTrue(Miniaturas.esVariante("0123456789abcdef012345-640-png.png"));
+        assertTrue(Miniaturas.esVariante("0123456789abcdef012345-640-jpg.jpg"));
+    }
+
+    @Test
+    void ignoraCualquierOtroArchivo() {
+        assertFalse(Miniaturas.esVariante("fotos-de-la-boda.jpg"));
+        assertFalse(Miniaturas.esVariante("respaldo.sql"));
+        assertFalse(Miniaturas.esVariante(".123456789.tmp"));
+        assertFalse(Miniaturas.esVariante("0123456789abcdef012345-320.jpg.bak"));
+        assertFalse(Miniaturas.esVariante("0123456789ABCDEF012345-320.jpg"));
+        assertFalse(Miniaturas.esVariante("0123456789abcdef01234-320.jpg"));
+        assertFalse(Miniaturas.esVariante("0123456789abcdef012345-320.gif"));
+    }
+}
@@ -0,0 +1,58 @@
+package mprower.javaspark.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FiltroBloomTest {
+
+    @Test
+    void nuncaDaFalsosNegativos() {
+        FiltroBloom filtro = new FiltroBloom(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filtro.agregar("cliente-" + i + "@correo.mx");
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filtro.podriaContener("cliente-" + i + "@correo.mx"), "Falso negativo en " + i);
+        }
+    }
+
+    @Test
+    void laTasaDeFalsosPositivosRespetaElDimensionamiento() {
+        FiltroBloom filtro = new FiltroBloom(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filtro.agregar("cliente-" + i + "@correo.mx");
+        }
+        int falsos = 0;
+        int pruebas = 100_000;
+        for (int i = 0; i < pruebas; i++) {
+            if (filtro.podriaContener("otro-" + i + "@correo.mx")) {
+                falsos++;
+            }
+        }
+        // Margen holgado sobre el 1% pedido para que la prueba no sea frágil.
+        assertTrue(falsos < pruebas * 0.02, "Falsos positivos: " + falsos);
+    }
+
+    @Test
+    void unFiltroVacioNoContieneNada() {
+        FiltroBloom filtro = new FiltroBloom(100, 0.01);
+        assertFalse(filtro.podriaContener("nadie@correo.mx"));
+        assertFalse(filtro.podriaContener(""));
+    }
+
+    @Test
+    void avisaCuandoSeExcedeLaCapacidad() {
+        FiltroBloom filtro = new FiltroBloom(3, 0.01);
+        assertEquals(3, filtro.getCapacidad());
+        for (int i = 0; i < 3; i++) {
+            filtro.agregar("c" + i);
+        }
+        assertFalse(filtro.excedido());
+        filtro.agregar("c3");
+        assertTrue(filtro.excedido());
+        assertEquals(4, filtro.getElementos());
+    }
+}
@@ -0,0 +1,37 @@
+package mprower.javaspark.cache;
+
+import mprower.javaspark.config.BaseDatosPrueba;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NombresClientesTest {
+
+    private static final NombresClientes nombres = NombresClientes.getInstance();
+
+    @BeforeAll
+    static void cargarFiltro() throws Exception {
+        BaseDatosPrueba.crearEsquema();
+        BaseDatosPrueba.ejecutar("INSERT INTO cliente (nombre, password, numero) VALUES ('Rosalía Strasse', 'x', '0')");
+        nombres.iniciar();
+    }
+
+    @Test
+    void descartaNombresQueNoExisten() {
+        assertFalse(nombres.podriaExistir("nadie con este nombre"));
+    }
+
+    @Test
+    void ignoraMayusculasAcentosYEspaciosFinales() {
+        assertTrue(nombres.podriaExistir("ROSALIA STRASSE  "));
+    }
+
+    @Test
+    void losNombresFueraDeAsciiVanALaBaseDeDatos() {
+        // En utf8mb4_0900_ai_ci "ß" = "ss"; normalizar no lo sabe, así que no se descarta
+        assertTrue(nombres.podriaExistir("Rosalía Straße"));
+        assertTrue(nombres.podriaExistir("nadie æ"));
+    }
+}
@@ -0,0 +1,108 @@
+package mprower.javaspark.config;
+
+import mprower.javaspark.inventory.Inventario;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Esquema mínimo de ecommerce_DB.txt sobre el H2 en memoria que configura el pom para las pruebas.
+ * Cada prueba crea sus propios clientes y productos, así que no hace falta limpiar entre pruebas.
+ */
+public final class BaseDatosPrueba {
+
+    private static final String[] ESQUEMA = {
+            "CREATE TABLE IF NOT EXISTS cliente (id INT AUTO_INCREMENT NOT NULL, nombre VARCHAR(40),"
+                    + " password VARCHAR(100), numero VARCHAR(20), PRIMARY KEY (id))",
+            "CREATE TABLE IF NOT EXISTS descripcion (id INT AUTO_INCREMENT, descripcion VARCHAR(200), PRIMARY KEY (id))",
+            "CREATE TABLE IF NOT EXISTS producto (id INT AUTO_INCREMENT NOT NULL, nombre VARCHAR(60), prec DECIMAL(10,2),"
+                    + " foto VARCHAR(100), cantidad INT, id_descr INT, PRIMARY KEY (id),"
+                    + " FOREIGN KEY (id_descr) REFERENCES descripcion(id))",
+            "CREATE TABLE IF NOT EXISTS oferta (id INT AUTO_INCREMENT NOT NULL, id_pro INT, PRIMARY KEY (id),"
+                    + " FOREIGN KEY (id_pro) REFERENCES producto(id))",
+            "CREATE TABLE IF NOT EXISTS carrito (id INT AUTO_INCREMENT, id_cli INT, id_pro INT, cantidad INT, PRIMARY KEY (id),"
+                    + " FOREIGN KEY (id_cli) REFERENCES cliente(id), FOREIGN KEY (id_pro) REFERENCES producto(id))",
+            "CREATE UNIQUE INDEX IF NOT EXISTS uq_carrito_cliente_producto ON carrito (id_cli, id_pro)",
+    };
+
+    private static boolean creado = false;
+    private static boolean inventarioIniciado = false;
+
+    private BaseDatosPrueba() {
+    }
+
+    /** Crea las tablas la primera vez que se llama en la JVM de las pruebas. */
+    public static synchronized void crearEsquema() throws SQLException {
+        if (creado) {
+            return;
+        }
+        try (Connection conn = Database.getConnection(); Statement stmt = conn.createStatement()) {
+            for (String ddl : ESQUEMA) {
+                stmt.execute(ddl);
+            }
+        }
+        creado = true;
+    }
+
+    /**
+     * Inicia el inventario en memoria (una sola vez por JVM) y espera a que termine de cargar.
+     */
+    public static synchronized void iniciarInventario() throws Exception {
+        crearEsquema();
+        Inventario inventario = Inventario.getInstance();
+        if (!inventarioIniciado) {
+            inventario.iniciar();
+            inventarioIniciado = true;
+        }
+        long limite = System.currentTimeMillis() + 10_000;
+        while (!inventario.isActivo() && System.currentTimeMillis() < limite) {
+            Thread.sleep(20);
+        }
+        if (!inventario.isActivo()) {
+            throw new IllegalStateException("El inventario no se cargó");
+        }
+    }
+
+    public static int nuevoCliente() throws SQLException {
+        return insertar("INSERT INTO cliente (nombre, password, numero) VALUES ('prueba', 'x', '0')");
+    }
+
+    public static int nuevoProducto(int cantidad) throws SQLException {
+        int descripcion = insertar("INSERT INTO descripcion (descripcion) VALUES ('Producto de prueba')");
+        return insertar("INSERT INTO producto (nombre, prec, foto, cantidad, id_descr) VALUES ('Producto de prueba', 100.00,"
+                + " 'prueba.jpg', " + cantidad + ", " + descripcion + ")");
+    }
+
+    /** Ejecuta una sentencia cualquiera (para preparar el estado de una prueba). */
+    public static void ejecutar(String sql) throws SQLException {
+        try (Connection conn = Database.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /** Primera columna de la primera fila, o null si la consulta no devuelve filas. */
+    public static Integer consultarEntero(String sql, int... parametros) throws SQLException {
+        try (Connection conn = Database.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < parametros.length; i++) {
+                pstmt.setInt(i + 1, parametros[i]);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    private static int insertar(String sql) throws SQLException {
+        try (Connection conn = Database.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.executeUpdate();
+            try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+}
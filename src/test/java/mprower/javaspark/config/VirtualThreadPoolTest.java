@@ -0,0 +1,79 @@
+package mprower.javaspark.config;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualThreadPoolTest {
+
+    @Test
+    void aceptadoresYSelectoresQuedanEnHilosNormales() throws Exception {
+        // En Java 17 no hay hilos virtuales: un executor con nombre propio hace sus veces
+        AtomicInteger numero = new AtomicInteger();
+        ExecutorService peticiones = Executors.newCachedThreadPool(
+                r -> new Thread(r, "http-vt-" + numero.getAndIncrement()));
+        AtomicReference<String> hiloPeticion = new AtomicReference<>();
+
+        Server server = new Server(new VirtualThreadPool(peticiones, 4));
+        ServerConnector connector = new ServerConnector(server, 1, 1);
+        connector.setPort(0);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request base, HttpServletRequest req, HttpServletResponse res) {
+                hiloPeticion.set(Thread.currentThread().getName());
+                res.setStatus(200);
+                base.setHandled(true);
+            }
+        });
+        server.start();
+        try {
+            HttpURLConnection conexion = (HttpURLConnection)
+                    new URL("http://localhost:" + connector.getLocalPort() + "/").openConnection();
+            assertEquals(200, conexion.getResponseCode());
+            try (InputStream cuerpo = conexion.getInputStream()) {
+                cuerpo.readAllBytes();
+            }
+            assertTrue(hiloPeticion.get().startsWith("http-vt-"), hiloPeticion.get());
+
+            boolean hayAceptador = false;
+            boolean haySelector = false;
+            for (Map.Entry<Thread, StackTraceElement[]> e : Thread.getAllStackTraces().entrySet()) {
+                boolean acepta = Arrays.stream(e.getValue())
+                        .anyMatch(f -> f.getClassName().endsWith("AbstractConnector$Acceptor"));
+                boolean selecciona = Arrays.stream(e.getValue())
+                        .anyMatch(f -> f.getClassName().equals("org.eclipse.jetty.io.ManagedSelector")
+                                && f.getMethodName().equals("nioSelect"));
+                if (acepta || selecciona) {
+                    String nombre = e.getKey().getName();
+                    assertFalse(nombre.startsWith("http-vt-"), nombre);
+                    assertTrue(nombre.startsWith("http-io"), nombre);
+                }
+                hayAceptador |= acepta;
+                haySelector |= selecciona;
+            }
+            assertTrue(hayAceptador);
+            assertTrue(haySelector);
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package mprower.javaspark.inventory;
+
+import mprower.javaspark.config.BaseDatosPrueba;
+import mprower.javaspark.config.Database;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InventarioTest {
+
+    private static final Inventario inventario = Inventario.getInstance();
+    private static int cliente;
+
+    @BeforeAll
+    static void iniciar() throws Exception {
+        BaseDatosPrueba.iniciarInventario();
+        cliente = BaseDatosPrueba.nuevoCliente();
+    }
+
+    @Test
+    void reservarYLiberar() throws Exception {
+        int producto = BaseDatosPrueba.nuevoProducto(5);
+
+        inventario.reservar(cliente, producto, 3);
+        assertEquals(2, inventario.getDisponible(producto));
+
+        StockInsuficienteException e = assertThrows(StockInsuficienteException.class,
+                () -> inventario.reservar(cliente, producto, 3));
+        assertEquals(producto, e.getProductoId());
+        assertEquals(2, e.getDisponible());
+        assertEquals(2, inventario.getDisponible(producto), "Una reserva rechazada no toma unidades");
+
+        inventario.liberar(cliente, producto, 10); // Solo se devuelve lo reservado
+        assertEquals(5, inventario.getDisponible(producto));
+    }
+
+    @Test
+    void confirmarUsaLoReservadoYTomaLoQueFalta() throws Exception {
+        int producto = BaseDatosPrueba.nuevoProducto(10);
+        inventario.reservar(cliente, producto, 2);
+
+        Inventario.Confirmacion confirmacion = inventario.confirmar(cliente, Map.of(producto, 5));
+        assertEquals(5, inventario.getDisponible(producto));
+
+        inventario.revertir(confirmacion);
+        assertEquals(10, inventario.getDisponible(producto));
+    }
+
+    @Test
+    void confirmarDevuelveLoReservadoDeMas() throws Exception {
+        int producto = BaseDatosPrueba.nuevoProducto(10);
+        inventario.reservar(cliente, producto, 6);
+
+        inventario.confirmar(cliente, Map.of(producto, 4));
+        assertEquals(6, inventario.getDisponible(producto));
+    }
+
+    @Test
+    void siUnProductoNoAlcanzaNoSeTomaNada() throws Exception {
+        int suficiente = BaseDatosPrueba.nuevoProducto(10);
+        int escaso = BaseDatosPrueba.nuevoProducto(1);
+        inventario.reservar(cliente, escaso, 1);
+
+        Map<Integer, Integer> compra = new LinkedHashMap<>();
+        compra.put(suficiente, 4);
+        compra.put(escaso, 2);
+        assertThrows(StockInsuficienteException.class, () -> inventario.confirmar(cliente, compra));
+
+        assertEquals(10, inventario.getDisponible(suficiente));
+        assertEquals(1, inventario.getDisponible(escaso), "La reserva previa vuelve al stock");
+    }
+
+    @Test
+    void descontarSoloConStockSuficienteEnLaBase() throws Exception {
+        int producto = BaseDatosPrueba.nuevoProducto(3);
+        try (Connection conn = Database.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                inventario.descontar(conn, Map.of(producto, 2));
+                conn.commit();
+
+                StockInsuficienteException e = assertThrows(StockInsuficienteException.class,
+                        () -> inventario.descontar(conn, Map.of(producto, 2)));
+                assertEquals(1, e.getDisponible());
+                conn.rollback();
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        assertEquals(1, BaseDatosPrueba.consultarEntero("SELECT cantidad FROM producto WHERE id = ?", producto));
+    }
+
+    @Test
+    void compraCompletaConfirmarDescontarYVendido() throws Exception {
+        int producto = BaseDatosPrueba.nuevoProducto(4);
+        inventario.reservar(cliente, producto, 3);
+
+        Inventario.Confirmacion confirmacion = inventario.confirmar(cliente, Map.of(producto, 3));
+        try (Connection conn = Database.getConnection()) {
+            conn.setAutoCommit(false);
+            inventario.descontar(conn, Map.of(producto, 3));
+            conn.commit();
+            conn.setAutoCommit(true);
+        }
+        inventario.vendido(confirmacion);
+
+        assertEquals(1, inventario.getDisponible(producto));
+        assertEquals(1, BaseDatosPrueba.consultarEntero("SELECT cantidad FROM producto WHERE id = ?", producto));
+    }
+}
@@ -0,0 +1,63 @@
+package mprower.javaspark.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistogramaTest {
+
+    @Test
+    void lasCubetasLinealesSonExactas() {
+        for (long micros = 0; micros < 16; micros++) {
+            assertEquals(micros, Histograma.indice(micros));
+            assertEquals(micros + 1, Histograma.limiteSuperior((int) micros));
+        }
+    }
+
+    @Test
+    void cadaValorCaeEnLaCubetaQueLoContiene() {
+        for (long micros = 0; micros < (1L << 36); micros = micros < 4096 ? micros + 1 : micros + micros / 7 + 1) {
+            int i = Histograma.indice(micros);
+            long limite = Histograma.limiteSuperior(i);
+            assertTrue(micros < limite, micros + " no es menor que el límite " + limite);
+            if (i > 0) {
+                assertTrue(Histograma.limiteSuperior(i - 1) <= micros, micros + " debía caer en una cubeta anterior");
+            }
+        }
+    }
+
+    @Test
+    void elErrorRelativoNoPasaDeUnOctavo() {
+        for (long micros = 16; micros < (1L << 36); micros = micros + micros / 5 + 1) {
+            long limite = Histograma.limiteSuperior(Histograma.indice(micros));
+            assertTrue((limite - micros) <= micros / 8.0 + 1, "Error excesivo en " + micros + ": " + limite);
+        }
+    }
+
+    @Test
+    void losLimitesCrecenYLosValoresEnormesVanALaUltimaCubeta() {
+        int ultima = Histograma.indice(Long.MAX_VALUE);
+        for (int i = 1; i <= ultima; i++) {
+            assertTrue(Histograma.limiteSuperior(i) > Histograma.limiteSuperior(i - 1), "Límite no creciente en " + i);
+        }
+        assertEquals(ultima, Histograma.indice(1L << 40));
+        assertEquals(ultima, Histograma.indice((1L << 36) - 1));
+    }
+
+    @Test
+    void percentilesDevuelvenElLimiteDeLaCubeta() {
+        Histograma h = new Histograma();
+        assertArrayEquals(new double[] {0, 0}, h.percentiles(0.5, 0.99));
+        for (int i = 0; i < 99; i++) {
+            h.registrar(5_000); // 5 µs
+        }
+        h.registrar(1_000_000_000L); // 1 s
+        double[] p = h.percentiles(0.5, 0.99, 1.0);
+        assertEquals(6e-6, p[0], 1e-12);
+        assertEquals(6e-6, p[1], 1e-12);
+        assertTrue(p[2] >= 1.0 && p[2] <= 1.125, "p100: " + p[2]);
+        assertEquals(100, h.getCuenta());
+    }
+}
@@ -0,0 +1,158 @@
+package mprower.javaspark.repository;
+
+import mprower.javaspark.config.BaseDatosPrueba;
+import mprower.javaspark.config.Database;
+import mprower.javaspark.inventory.Inventario;
+import mprower.javaspark.model.CarritoItem;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CarritoBufferTest {
+
+    private static final String CANTIDAD = "SELECT cantidad FROM carrito WHERE id_cli = ? AND id_pro = ?";
+    private static final String LINEAS = "SELECT COUNT(*) FROM carrito WHERE id_cli = ?";
+
+    private final CarritoBuffer buffer = CarritoBuffer.getInstance();
+
+    @BeforeAll
+    static void crearEsquema() throws Exception {
+        BaseDatosPrueba.iniciarInventario();
+    }
+
+    @Test
+    void losClicsSeAcumulanEnUnaSolaLinea() throws Exception {
+        int cliente = BaseDatosPrueba.nuevoCliente();
+        int producto = BaseDatosPrueba.nuevoProducto(50);
+
+        buffer.agregar(cliente, producto, 1);
+        buffer.agregar(cliente, producto, 2);
+        assertNull(BaseDatosPrueba.consultarEntero(CANTIDAD, cliente, producto), "Aún no se escribe");
+
+        buffer.vaciar(cliente);
+        assertEquals(3, BaseDatosPrueba.consultarEntero(CANTIDAD, cliente, producto));
+        assertEquals(1, BaseDatosPrueba.consultarEntero(LINEAS, cliente));
+
+        buffer.agregar(cliente, producto, 4);
+        buffer.vaciar(cliente);
+        assertEquals(7, BaseDatosPrueba.consultarEntero(CANTIDAD, cliente, producto));
+        assertEquals(1, BaseDatosPrueba.consultarEntero(LINEAS, cliente), "Suma sobre la línea existente");
+    }
+
+    @Test
+    void vaciarSoloEscribeLosClientesPedidos() throws Exception {
+        int uno = BaseDatosPrueba.nuevoCliente();
+        int otro = BaseDatosPrueba.nuevoCliente();
+        int producto = BaseDatosPrueba.nuevoProducto(50);
+
+        buffer.agregar(uno, producto, 1);
+        buffer.agregar(otro, producto, 2);
+        buffer.vaciar(uno);
+        assertEquals(1, BaseDatosPrueba.consultarEntero(CANTIDAD, uno, producto));
+        assertNull(BaseDatosPrueba.consultarEntero(CANTIDAD, otro, producto));
+
+        buffer.vaciarTodo();
+        assertEquals(2, BaseDatosPrueba.consultarEntero(CANTIDAD, otro, producto));
+    }
+
+    @Test
+    void unaLineaRechazadaPorIntegridadSeDescartaSinDetenerAlResto() throws Exception {
+        int cliente = BaseDatosPrueba.nuevoCliente();
+        int producto = BaseDatosPrueba.nuevoProducto(50);
+        int inexistente = producto + 100_000;
+
+        buffer.agregar(cliente, inexistente, 1);
+        buffer.agregar(cliente, producto, 2);
+        buffer.vaciar(cliente);
+
+        assertEquals(2, BaseDatosPrueba.consultarEntero(CANTIDAD, cliente, producto));
+        assertNull(BaseDatosPrueba.consultarEntero(CANTIDAD, cliente, inexistente));
+        assertEquals(0, buffer.getUnidadesPendientes(), "La línea inválida no vuelve a la cola");
+
+        buffer.vaciar(cliente); // Y no se reintenta
+        assertEquals(2, BaseDatosPrueba.consultarEntero(CANTIDAD, cliente, producto));
+    }
+
+    @Test
+    void unaLineaDescartadaLiberaSuReserva() throws Exception {
+        int inexistente = BaseDatosPrueba.nuevoCliente() + 100_000;
+        int producto = BaseDatosPrueba.nuevoProducto(5);
+        Inventario.getInstance().reservar(inexistente, producto, 2);
+        assertEquals(3, Inventario.getInstance().getDisponible(producto));
+
+        buffer.agregar(inexistente, producto, 2);
+        buffer.vaciar(inexistente);
+
+        assertEquals(0, BaseDatosPrueba.consultarEntero(LINEAS, inexistente));
+        assertEquals(5, Inventario.getInstance().getDisponible(producto));
+    }
+
+    @Test
+    void unClienteEscribiendoNoDetieneAOtro() throws Exception {
+        int lento = BaseDatosPrueba.nuevoCliente();
+        int otro = BaseDatosPrueba.nuevoCliente();
+        int producto = BaseDatosPrueba.nuevoProducto(50);
+        assertTrue(Math.floorMod(lento, 64) != Math.floorMod(otro, 64));
+
+        // Una transacción ajena bloquea la línea del cliente lento mientras su vaciado espera
+        buffer.agregarYGuardar(lento, producto, 1);
+        try (Connection bloqueo = Database.getConnection()) {
+            bloqueo.setAutoCommit(false);
+            try (Statement stmt = bloqueo.createStatement()) {
+                stmt.executeUpdate("UPDATE carrito SET cantidad = cantidad WHERE id_cli = " + lento);
+            }
+            buffer.agregar(lento, producto, 1);
+            CountDownLatch termino = new CountDownLatch(1);
+            Thread vaciado = new Thread(() -> {
+                try {
+                    buffer.vaciar(lento);
+                } catch (Exception ignorada) {
+                    // Puede expirar la espera del bloqueo; no es lo que se prueba
+                }
+                termino.countDown();
+            });
+            vaciado.start();
+            Thread.sleep(100);
+
+            long inicio = System.nanoTime();
+            buffer.agregarYGuardar(otro, producto, 3);
+            long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+            assertTrue(ms < 500, "El otro cliente esperó " + ms + " ms al cliente bloqueado");
+            assertEquals(3, BaseDatosPrueba.consultarEntero(CANTIDAD, otro, producto));
+
+            bloqueo.rollback();
+            assertTrue(termino.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void agregarYGuardarIncluyeLoPendienteDelCliente() throws Exception {
+        int cliente = BaseDatosPrueba.nuevoCliente();
+        int primero = BaseDatosPrueba.nuevoProducto(50);
+        int segundo = BaseDatosPrueba.nuevoProducto(50);
+
+        buffer.agregar(cliente, primero, 2);
+        Map<Integer, Integer> cantidades = new LinkedHashMap<>();
+        cantidades.put(segundo, 1);
+        cantidades.put(primero, 3);
+        List<CarritoItem> lineas = buffer.agregarYGuardar(cliente, cantidades);
+
+        assertEquals(2, lineas.size());
+        assertEquals(segundo, lineas.get(0).id_pro);
+        assertEquals(1, lineas.get(0).cantidad);
+        assertEquals(primero, lineas.get(1).id_pro);
+        assertEquals(5, lineas.get(1).cantidad);
+        assertEquals(0, buffer.getUnidadesPendientes());
+    }
+}
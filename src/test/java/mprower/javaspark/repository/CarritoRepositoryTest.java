@@ -0,0 +1,142 @@
+package mprower.javaspark.repository;
+
+import mprower.javaspark.cache.CatalogoCache;
+import mprower.javaspark.config.BaseDatosPrueba;
+import mprower.javaspark.inventory.Inventario;
+import mprower.javaspark.inventory.StockInsuficienteException;
+import mprower.javaspark.model.CarritoItem;
+import mprower.javaspark.repository.CarritoRepository.ResultadoLinea;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CarritoRepositoryTest {
+
+    private static final String CANTIDAD = "SELECT cantidad FROM carrito WHERE id = ?";
+
+    private final CarritoRepository repository = new CarritoRepository();
+
+    @BeforeAll
+    static void crearEsquema() throws Exception {
+        BaseDatosPrueba.iniciarInventario();
+    }
+
+    @Test
+    void agregarVariosValidaCadaItemYEscribeLosValidos() throws Exception {
+        int cliente = BaseDatosPrueba.nuevoCliente();
+        int producto = BaseDatosPrueba.nuevoProducto(50);
+        int otro = BaseDatosPrueba.nuevoProducto(50);
+        CatalogoCache.getInstance().invalidar().get(); // Que el catálogo conozca los productos nuevos
+
+        List<ResultadoLinea> resultados = repository.agregarVarios(cliente, List.of(
+                item(0, producto, 2), item(0, otro, 0), item(0, otro + 100_000, 1), item(0, producto, 3)));
+
+        assertEquals(4, resultados.size());
+        assertEquals(201, resultados.get(0).status);
+        assertEquals(5, resultados.get(0).cantidad, "Las dos apariciones del producto van a la misma línea");
+        assertEquals(400, resultados.get(1).status);
+        assertEquals(404, resultados.get(2).status);
+        assertEquals(201, resultados.get(3).status);
+        assertEquals(resultados.get(0).id, resultados.get(3).id);
+        assertEquals(5, BaseDatosPrueba.consultarEntero(CANTIDAD, resultados.get(0).id));
+        assertEquals(1, BaseDatosPrueba.consultarEntero("SELECT COUNT(*) FROM carrito WHERE id_cli = ?", cliente));
+    }
+
+    @Test
+    void actualizarVariosCambiaYEliminaEnUnaTransaccion() throws Exception {
+        int cliente = BaseDatosPrueba.nuevoCliente();
+        int ajeno = BaseDatosPrueba.nuevoCliente();
+        int primero = repository.agregarAlCarrito(cliente, BaseDatosPrueba.nuevoProducto(50), 2).id;
+        int segundo = repository.agregarAlCarrito(cliente, BaseDatosPrueba.nuevoProducto(50), 4).id;
+        int deOtro = repository.agregarAlCarrito(ajeno, BaseDatosPrueba.nuevoProducto(50), 1).id;
+
+        List<ResultadoLinea> resultados = repository.actualizarVarios(cliente, List.of(
+                item(primero, 0, 7), item(segundo, 0, 0), item(deOtro, 0, 9), item(primero + 100_000, 0, 1)));
+
+        assertTrue(resultados.get(0).isExito());
+        assertEquals(7, resultados.get(0).cantidad);
+        assertEquals(200, resultados.get(1).status);
+        assertEquals(404, resultados.get(2).status, "No se tocan líneas de otro cliente");
+        assertEquals(404, resultados.get(3).status);
+        assertFalse(resultados.get(3).isExito());
+
+        assertEquals(7, BaseDatosPrueba.consultarEntero(CANTIDAD, primero));
+        assertNull(BaseDatosPrueba.consultarEntero(CANTIDAD, segundo));
+        assertEquals(1, BaseDatosPrueba.consultarEntero(CANTIDAD, deOtro));
+    }
+
+    @Test
+    void actualizarVariosEscribePrimeroLosPendientes() throws Exception {
+        int cliente = BaseDatosPrueba.nuevoCliente();
+        int producto = BaseDatosPrueba.nuevoProducto(50);
+        int linea = repository.agregarAlCarrito(cliente, producto, 1).id;
+        repository.agregarDiferido(cliente, producto, 2);
+
+        repository.actualizarVarios(cliente, List.of(item(linea, 0, 5)));
+        CarritoBuffer.getInstance().vaciar(cliente);
+
+        assertEquals(5, BaseDatosPrueba.consultarEntero(CANTIDAD, linea), "Lo pendiente no se suma después");
+    }
+
+    @Test
+    void laUltimaCantidadDeUnaLineaRepetidaEsLaQueQueda() throws Exception {
+        int cliente = BaseDatosPrueba.nuevoCliente();
+        int linea = repository.agregarAlCarrito(cliente, BaseDatosPrueba.nuevoProducto(50), 3).id;
+
+        List<ResultadoLinea> resultados = repository.actualizarVarios(cliente, List.of(item(linea, 0, 6), item(linea, 0, 2)));
+
+        assertEquals(6, resultados.get(0).cantidad);
+        assertEquals(2, resultados.get(1).cantidad);
+        assertEquals(2, BaseDatosPrueba.consultarEntero(CANTIDAD, linea));
+    }
+
+    @Test
+    void cambiarOEliminarUnaLineaAjustaSuReserva() throws Exception {
+        Inventario inventario = Inventario.getInstance();
+        int cliente = BaseDatosPrueba.nuevoCliente();
+        int producto = BaseDatosPrueba.nuevoProducto(5);
+        int linea = repository.agregarAlCarrito(cliente, producto, 3).id;
+        assertEquals(2, inventario.getDisponible(producto));
+
+        assertTrue(repository.actualizarCantidad(linea, 1));
+        assertEquals(4, inventario.getDisponible(producto));
+
+        assertTrue(repository.actualizarCantidad(linea, 4));
+        assertEquals(1, inventario.getDisponible(producto));
+
+        assertThrows(StockInsuficienteException.class, () -> repository.actualizarCantidad(linea, 6));
+        assertEquals(4, BaseDatosPrueba.consultarEntero(CANTIDAD, linea));
+        assertEquals(1, inventario.getDisponible(producto));
+
+        assertTrue(repository.eliminarDelCarrito(linea));
+        assertNull(BaseDatosPrueba.consultarEntero(CANTIDAD, linea));
+        assertEquals(5, inventario.getDisponible(producto));
+        assertFalse(repository.eliminarDelCarrito(linea));
+    }
+
+    @Test
+    void agregarYEliminarRepetidamenteNoAgotaElStock() throws Exception {
+        int cliente = BaseDatosPrueba.nuevoCliente();
+        int producto = BaseDatosPrueba.nuevoProducto(2);
+        for (int i = 0; i < 5; i++) {
+            int linea = repository.agregarAlCarrito(cliente, producto, 2).id;
+            assertTrue(repository.eliminarDelCarrito(linea));
+        }
+        assertEquals(2, Inventario.getInstance().getDisponible(producto));
+    }
+
+    private static CarritoItem item(int id, int idProducto, int cantidad) {
+        CarritoItem item = new CarritoItem();
+        item.id = id;
+        item.id_pro = idProducto;
+        item.cantidad = cantidad;
+        return item;
+    }
+}
@@ -0,0 +1,102 @@
+package mprower.javaspark.repository;
+
+import mprower.javaspark.model.Producto;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsultaProductosTest {
+
+    @Test
+    void valoresPorDefecto() {
+        ConsultaProductos c = ConsultaProductos.desdeParametros(null, null, null, null);
+        assertEquals(ConsultaProductos.Campo.ID, c.orden);
+        assertFalse(c.descendente);
+        assertEquals(ConsultaProductos.LIMITE_POR_DEFECTO, c.limite);
+        assertEquals(EnumSet.allOf(ConsultaProductos.Campo.class), c.campos);
+        assertNull(c.despuesDeValor);
+    }
+
+    @Test
+    void elCursorLlevaAlSiguienteProductoConElMismoOrden() {
+        ConsultaProductos primera = ConsultaProductos.desdeParametros("20", null, "-precio", null);
+        String cursor = primera.cursorDespuesDe(producto(42, "Gorra", 621.34, 10));
+
+        ConsultaProductos siguiente = ConsultaProductos.desdeParametros("20", cursor, "-precio", null);
+        assertEquals(ConsultaProductos.Campo.PRECIO, siguiente.orden);
+        assertTrue(siguiente.descendente);
+        assertEquals(42, siguiente.despuesDeId);
+        assertEquals("621.34", siguiente.despuesDeValor);
+    }
+
+    @Test
+    void unNombreConBarrasSobreviveAlCursor() {
+        ConsultaProductos c = ConsultaProductos.desdeParametros(null, null, "nombre", null);
+        String cursor = c.cursorDespuesDe(producto(7, "Playera | edición «Rosalía»", 1, 1));
+
+        ConsultaProductos siguiente = ConsultaProductos.desdeParametros(null, cursor, "nombre", null);
+        assertEquals(7, siguiente.despuesDeId);
+        assertEquals("Playera | edición «Rosalía»", siguiente.despuesDeValor);
+        assertFalse(cursor.contains("=") || cursor.contains("+") || cursor.contains("/"), "Debe ser seguro para URL");
+    }
+
+    @Test
+    void rechazaUnCursorDeOtroOrden() {
+        String cursor = ConsultaProductos.desdeParametros(null, null, "precio", null)
+                .cursorDespuesDe(producto(1, "a", 10, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> ConsultaProductos.desdeParametros(null, cursor, "-precio", null));
+        assertThrows(IllegalArgumentException.class,
+                () -> ConsultaProductos.desdeParametros(null, cursor, "cantidad", null));
+    }
+
+    @Test
+    void rechazaCursoresMalFormados() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ConsultaProductos.desdeParametros(null, "no es base64!", null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> ConsultaProductos.desdeParametros(null, cursor("id+|abc|3"), null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> ConsultaProductos.desdeParametros(null, cursor("precio+|3|barato"), "precio", null));
+        assertThrows(IllegalArgumentException.class,
+                () -> ConsultaProductos.desdeParametros(null, cursor("id+|3"), null, null));
+    }
+
+    @Test
+    void validaLimiteOrdenYCampos() {
+        assertThrows(IllegalArgumentException.class, () -> ConsultaProductos.desdeParametros("0", null, null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> ConsultaProductos.desdeParametros(String.valueOf(ConsultaProductos.LIMITE_MAXIMO + 1), null, null, null));
+        assertThrows(IllegalArgumentException.class, () -> ConsultaProductos.desdeParametros(null, null, "foto", null));
+        assertThrows(IllegalArgumentException.class, () -> ConsultaProductos.desdeParametros(null, null, null, "id,color"));
+    }
+
+    @Test
+    void losCamposSiempreIncluyenElId() {
+        ConsultaProductos c = ConsultaProductos.desdeParametros(null, null, null, "nombre, precio");
+        assertEquals(EnumSet.of(ConsultaProductos.Campo.ID, ConsultaProductos.Campo.NOMBRE, ConsultaProductos.Campo.PRECIO),
+                c.campos);
+        assertFalse(c.necesitaDescripcion());
+    }
+
+    private static String cursor(String plano) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plano.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Producto producto(int id, String nombre, double precio, int cantidad) {
+        Producto p = new Producto();
+        p.id = id;
+        p.nombre = nombre;
+        p.precio = precio;
+        p.cantidad = cantidad;
+        return p;
+    }
+}
@@ -0,0 +1,89 @@
+package mprower.javaspark.search;
+
+import mprower.javaspark.model.Producto;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndiceBusquedaTest {
+
+    private static final List<Producto> CATALOGO = List.of(
+            producto(1, "Gorra autografiada por Peso Pluma", "Una gorra autografiada."),
+            producto(2, "Casco autografiado por Rosalía", "Un casco de la cantante, una verdadera MOTOMAMI!"),
+            producto(3, "Guitarra de Fernando Delgadillo", "Una guitarra acústica."),
+            producto(4, "Guitarra autografiada por Coldplay", "Una guitarra eléctrica."),
+            producto(5, "Jersey firmado por Snoop Dogg", "Incluye una gorra de regalo."));
+
+    private final IndiceBusqueda indice = IndiceBusqueda.VACIO.actualizar(CATALOGO, 1);
+
+    @Test
+    void coincidenciaEnElNombreValeMasQueEnLaDescripcion() {
+        assertEquals(List.of(1, 5), ids(indice.buscar("gorra", 10)));
+    }
+
+    @Test
+    void ignoraAcentosYMayusculas() {
+        assertEquals(List.of(2), ids(indice.buscar("ROSALIA", 10)));
+        assertEquals(List.of(4), ids(indice.buscar("eléctrica", 10)));
+    }
+
+    @Test
+    void encuentraPorPrefijoYPorSubcadena() {
+        assertEquals(List.of(3, 4), ids(indice.buscar("guit", 10)));
+        assertEquals(List.of(3, 4), ids(indice.buscar("itarr", 10)));
+    }
+
+    @Test
+    void todosLosTerminosDebenAparecer() {
+        assertEquals(List.of(4), ids(indice.buscar("guitarra coldplay", 10)));
+        assertTrue(indice.buscar("guitarra rosalia", 10).isEmpty());
+    }
+
+    @Test
+    void respetaElLimiteYConsultasVacias() {
+        assertEquals(1, indice.buscar("guitarra", 1).size());
+        assertTrue(indice.buscar("  ¡! ", 10).isEmpty());
+        assertTrue(indice.buscar("guitarra", 0).isEmpty());
+    }
+
+    @Test
+    void actualizarReindexaSoloLoQueCambio() {
+        List<Producto> cambiado = List.of(
+                CATALOGO.get(0),
+                producto(2, "Casco de Bad Bunny", "Un casco firmado."),
+                CATALOGO.get(2),
+                CATALOGO.get(4));
+        IndiceBusqueda nuevo = indice.actualizar(cambiado, 2);
+
+        assertEquals(2, nuevo.getVersion());
+        assertEquals(4, nuevo.getTotalDocumentos());
+        assertTrue(nuevo.buscar("rosalia", 10).isEmpty());
+        assertEquals(List.of(2), ids(nuevo.buscar("bunny", 10)));
+        assertEquals(List.of(3), ids(nuevo.buscar("guitarra", 10))); // El 4 ya no está
+        // El índice anterior no cambia
+        assertEquals(List.of(2), ids(indice.buscar("rosalia", 10)));
+    }
+
+    @Test
+    void sinCambiosConservaLosTerminos() {
+        IndiceBusqueda mismo = indice.actualizar(CATALOGO, 2);
+        assertEquals(indice.getTotalTerminos(), mismo.getTotalTerminos());
+        assertEquals(ids(indice.buscar("gorra", 10)), ids(mismo.buscar("gorra", 10)));
+    }
+
+    private static List<Integer> ids(List<IndiceBusqueda.Coincidencia> coincidencias) {
+        return coincidencias.stream().map(IndiceBusqueda.Coincidencia::getId).collect(Collectors.toList());
+    }
+
+    private static Producto producto(int id, String nombre, String descripcion) {
+        Producto p = new Producto();
+        p.id = id;
+        p.nombre = nombre;
+        p.descripcion = descripcion;
+        return p;
+    }
+}
@@ -0,0 +1,42 @@
+package mprower.javaspark.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompresionTest {
+
+    @Test
+    void aceptaGzipPorNombre() {
+        assertTrue(Compresion.aceptaGzip("gzip"));
+        assertTrue(Compresion.aceptaGzip("deflate, gzip, br"));
+        assertTrue(Compresion.aceptaGzip("GZIP"));
+        assertTrue(Compresion.aceptaGzip("x-gzip"));
+        assertTrue(Compresion.aceptaGzip("br;q=1.0, gzip;q=0.8"));
+    }
+
+    @Test
+    void respetaUnPesoCero() {
+        assertFalse(Compresion.aceptaGzip("gzip;q=0"));
+        assertFalse(Compresion.aceptaGzip("gzip; q=0.0, deflate"));
+        assertFalse(Compresion.aceptaGzip("*, gzip;q=0"));
+        assertFalse(Compresion.aceptaGzip("gzip;q=basura"));
+    }
+
+    @Test
+    void elComodinSoloCuentaSiGzipNoAparece() {
+        assertTrue(Compresion.aceptaGzip("*"));
+        assertTrue(Compresion.aceptaGzip("br, *;q=0.1"));
+        assertFalse(Compresion.aceptaGzip("*;q=0"));
+        assertTrue(Compresion.aceptaGzip("*;q=0, gzip"));
+    }
+
+    @Test
+    void sinEncabezadoOSinGzipNoComprime() {
+        assertFalse(Compresion.aceptaGzip(null));
+        assertFalse(Compresion.aceptaGzip(""));
+        assertFalse(Compresion.aceptaGzip("identity"));
+        assertFalse(Compresion.aceptaGzip("deflate, br"));
+    }
+}